@@ -7,12 +7,22 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContexts;
 import org.apache.http.ssl.TrustStrategy;
+import com.identicum.connectors.services.DefaultHttpClientAdapter;
+import com.identicum.connectors.services.EndpointBalancer;
+import com.identicum.connectors.services.HttpClientAdapter;
+import com.identicum.connectors.services.JdkHttpClientAdapter;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 import org.identityconnectors.common.StringUtil;
@@ -23,21 +33,33 @@ import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Gestiona la autenticación para la API de Koha.
  * Puede crear un cliente HTTP pre-autenticado usando Basic Auth o OAuth2.
+ * <p>
+ * El cliente principal y el cliente del token OAuth2 comparten un único SSLContext (con su caché de
+ * sesiones TLS, para reanudar sesiones en lugar de repetir el handshake completo) y un único pool
+ * de conexiones. El cliente del token se construye una sola vez.
  */
 public class KohaAuthenticator {
 
     private static final Log LOG = Log.getLog(KohaAuthenticator.class);
     private static final String API_BASE_PATH = "/api/v1";
     private static final int TOKEN_EXPIRY_BUFFER_SECONDS = 60;
+    private static final int TLS_SESSION_CACHE_SIZE = 1024;
+    private static final int TLS_SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
     private final Object tokenLock = new Object();
 
     private final KohaConfiguration configuration;
@@ -46,11 +68,58 @@ public class KohaAuthenticator {
     private volatile String oauthAccessToken;
     private volatile long oauthTokenExpiryEpoch = 0L;
 
+    // Recursos TLS y de conexión compartidos (se construyen una vez, bajo demanda)
+    private SSLContext sslContext;
+    private boolean sslContextBuilt;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient tokenClient;
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
 
     public KohaAuthenticator(KohaConfiguration configuration) {
         this.configuration = configuration;
     }
 
+    /**
+     * Crea el transporte HTTP seleccionado en {@code transportBackend}: APACHE4 (por defecto)
+     * o JDK (java.net.http.HttpClient con HTTP/2, requiere Java 11+).
+     */
+    public HttpClientAdapter createTransport() {
+        String backend = configuration.getTransportBackend();
+        if ("JDK".equalsIgnoreCase(backend)) {
+            LOG.ok("AUTH: Usando transporte java.net.http.HttpClient (HTTP/2).");
+            return new JdkHttpClientAdapter(this, configuration, sharedSslContext());
+        }
+        return new DefaultHttpClientAdapter(createAuthenticatedClient());
+    }
+
+    /**
+     * Valor de la cabecera Authorization según la estrategia configurada, o null si no se autentica.
+     * Lo usan los transportes que no se construyen sobre Apache HttpClient.
+     */
+    public String getAuthorizationHeader() throws IOException {
+        String authMethod = configuration.getAuthenticationMethodStrategy();
+        if (useOAuth2()) {
+            return "Bearer " + getValidOAuthToken();
+        }
+        if ("BASIC".equalsIgnoreCase(authMethod)) {
+            return basicAuthorization(configuration.getUsername(), configuration.getPassword());
+        }
+        return null;
+    }
+
+    private boolean useOAuth2() {
+        boolean hasClientCredentials = StringUtil.isNotBlank(configuration.getClientId()) && configuration.getClientSecret() != null;
+        return hasClientCredentials && !"BASIC".equalsIgnoreCase(configuration.getAuthenticationMethodStrategy());
+    }
+
+    private static String basicAuthorization(String username, GuardedString password) {
+        final StringBuilder passBuilder = new StringBuilder();
+        password.access(passBuilder::append);
+        String auth = username + ":" + passBuilder.toString();
+        return "Basic " + Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
+    }
+
     /**
      * Crea un CloseableHttpClient que añade automáticamente la cabecera de autenticación
      * apropiada (Basic o Bearer) a cada petición.
@@ -60,9 +129,8 @@ public class KohaAuthenticator {
     public CloseableHttpClient createAuthenticatedClient() {
         HttpRequestInterceptor authInterceptor;
         String authMethod = configuration.getAuthenticationMethodStrategy();
-        boolean useOAuth2 = StringUtil.isNotBlank(configuration.getClientId()) && configuration.getClientSecret() != null;
 
-        if (useOAuth2 && !"BASIC".equalsIgnoreCase(authMethod)) {
+        if (useOAuth2()) {
             // Configurar interceptor para OAuth2
             LOG.ok("AUTH: Configurando cliente HTTP para autenticación OAuth2.");
             authInterceptor = (request, context) -> {
@@ -82,13 +150,7 @@ public class KohaAuthenticator {
                 throw new ConfigurationException("El método de autenticación es BASIC pero el usuario/contraseña no están configurados.");
             }
 
-            authInterceptor = (request, context) -> {
-                final StringBuilder passBuilder = new StringBuilder();
-                password.access(passBuilder::append);
-                String auth = username + ":" + passBuilder.toString();
-                String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
-                request.setHeader("Authorization", "Basic " + encodedAuth);
-            };
+            authInterceptor = (request, context) -> request.setHeader("Authorization", basicAuthorization(username, password));
         } else {
             // Sin autenticación específica
             LOG.ok("AUTH: No se configuró un método de autenticación específico. El cliente HTTP no añadirá cabeceras de Auth.");
@@ -97,23 +159,78 @@ public class KohaAuthenticator {
             };
         }
 
-        RequestConfig requestConfig = RequestConfig.custom()
+        // El cliente principal es el dueño del pool compartido: al cerrarlo se cierra también el pool.
+        HttpClientBuilder builder = HttpClients.custom()
+                .setDefaultRequestConfig(defaultRequestConfig())
+                .setConnectionManager(sharedConnectionManager())
+                .addInterceptorLast(authInterceptor);
+
+        return builder.build();
+    }
+
+    /**
+     * Libera el pool compartido. Necesario con el transporte JDK, donde solo lo usa el cliente del token.
+     */
+    public synchronized void close() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+        }
+    }
+
+    /** Handshakes TLS completos realizados por los clientes Apache de esta instancia. */
+    public long getTlsFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    /** Handshakes TLS resueltos reanudando una sesión cacheada. */
+    public long getTlsResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    private static RequestConfig defaultRequestConfig() {
+        return RequestConfig.custom()
                 .setConnectTimeout(10_000)
                 .setSocketTimeout(30_000)
                 .setConnectionRequestTimeout(10_000)
                 .build();
+    }
 
-        HttpClientBuilder builder = HttpClients.custom()
-                .setDefaultRequestConfig(requestConfig)
-                .addInterceptorLast(authInterceptor);
-
-        javax.net.ssl.SSLContext sslContext = buildSslContext();
-        if (sslContext != null) {
-            builder.setSSLContext(sslContext);
-            builder.setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
+    /**
+     * Pool de conexiones compartido por el cliente principal y el del token.
+     * El pool por defecto de HttpClient solo abre 2 conexiones por host, insuficiente para búsquedas concurrentes.
+     * Con varios nodos en serviceAddress o readServiceAddress, maxConnections se aplica a cada uno.
+     */
+    private synchronized PoolingHttpClientConnectionManager sharedConnectionManager() {
+        if (connectionManager == null) {
+            boolean trustAll = Boolean.TRUE.equals(configuration.getTrustAllCertificates());
+            HostnameVerifier verifier = trustAll ? NoopHostnameVerifier.INSTANCE : SSLConnectionSocketFactory.getDefaultHostnameVerifier();
+            Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", new CountingSslSocketFactory(sharedSslContext(), verifier))
+                    .build();
+            int maxConnections = Math.max(1, configuration.getMaxConnections());
+            int nodes = Math.max(1, EndpointBalancer.parseAddresses(configuration.getServiceAddress()).size()
+                    + EndpointBalancer.parseAddresses(configuration.getReadServiceAddress()).size());
+            connectionManager = new PoolingHttpClientConnectionManager(registry);
+            connectionManager.setMaxTotal(maxConnections * nodes);
+            connectionManager.setDefaultMaxPerRoute(maxConnections);
         }
+        return connectionManager;
+    }
 
-        return builder.build();
+    /**
+     * Cliente para el endpoint de token: sin interceptor de autenticación, sobre el pool compartido.
+     * Se invoca con tokenLock tomado.
+     */
+    private CloseableHttpClient tokenClient() {
+        if (tokenClient == null) {
+            tokenClient = HttpClients.custom()
+                    .setDefaultRequestConfig(defaultRequestConfig())
+                    .setConnectionManager(sharedConnectionManager())
+                    .setConnectionManagerShared(true)
+                    .build();
+        }
+        return tokenClient;
     }
 
     /**
@@ -133,62 +250,68 @@ public class KohaAuthenticator {
             }
 
             LOG.ok("OAUTH: Solicitud de nuevo token de acceso...");
-            String tokenUrl = configuration.getServiceAddress() + API_BASE_PATH + "/oauth/token";
+            String tokenUrl = EndpointBalancer.primaryAddress(configuration.getServiceAddress()) + API_BASE_PATH + "/oauth/token";
 
-            // Se necesita un cliente HTTP temporal para esta única petición, respetando SSL config.
-            HttpClientBuilder tokenClientBuilder = HttpClients.custom();
-            javax.net.ssl.SSLContext sslContext = buildSslContext();
-            if (sslContext != null) {
-                tokenClientBuilder.setSSLContext(sslContext);
-                tokenClientBuilder.setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
-            }
-            try (CloseableHttpClient tokenClient = tokenClientBuilder.build()) {
-                HttpPost tokenRequest = new HttpPost(tokenUrl);
-                tokenRequest.setHeader("Content-Type", "application/x-www-form-urlencoded");
-                tokenRequest.setHeader("Accept", "application/json");
-
-                final StringBuilder secretBuilder = new StringBuilder();
-                configuration.getClientSecret().access(secretBuilder::append);
-
-                List<NameValuePair> formParams = new ArrayList<>();
-                formParams.add(new BasicNameValuePair("grant_type", "client_credentials"));
-                formParams.add(new BasicNameValuePair("client_id", configuration.getClientId()));
-                formParams.add(new BasicNameValuePair("client_secret", secretBuilder.toString()));
-
-                tokenRequest.setEntity(new UrlEncodedFormEntity(formParams, StandardCharsets.UTF_8));
-
-                try (CloseableHttpResponse response = tokenClient.execute(tokenRequest)) {
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-
-                    if (statusCode < 200 || statusCode >= 300) {
-                        LOG.error("OAUTH: Error al obtener token. Status: {0}, Body: {1}", statusCode, body);
-                        throw new ConnectorIOException("OAUTH: Falló la solicitud de token. Status: " + statusCode);
-                    }
-
-                    JSONObject json = new JSONObject(body);
-                    oauthAccessToken = json.getString("access_token");
-                    int expiresIn = json.optInt("expires_in", 3600);
-                    oauthTokenExpiryEpoch = nowEpochSeconds + expiresIn;
-
-                    LOG.ok("OAUTH: Nuevo token obtenido. Expira en {0} segundos.", expiresIn);
-                    return oauthAccessToken;
-
-                } catch (JSONException e) {
-                    LOG.error("OAUTH: Error al parsear la respuesta del token: {0}", e.getMessage(), e);
-                    this.oauthAccessToken = null;
-                    this.oauthTokenExpiryEpoch = 0L;
-                    throw new ConnectorIOException("OAUTH: Respuesta de token inválida: " + e.getMessage(), e);
+            HttpPost tokenRequest = new HttpPost(tokenUrl);
+            tokenRequest.setHeader("Content-Type", "application/x-www-form-urlencoded");
+            tokenRequest.setHeader("Accept", "application/json");
+
+            final StringBuilder secretBuilder = new StringBuilder();
+            configuration.getClientSecret().access(secretBuilder::append);
+
+            List<NameValuePair> formParams = new ArrayList<>();
+            formParams.add(new BasicNameValuePair("grant_type", "client_credentials"));
+            formParams.add(new BasicNameValuePair("client_id", configuration.getClientId()));
+            formParams.add(new BasicNameValuePair("client_secret", secretBuilder.toString()));
+
+            tokenRequest.setEntity(new UrlEncodedFormEntity(formParams, StandardCharsets.UTF_8));
+
+            try (CloseableHttpResponse response = tokenClient().execute(tokenRequest)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+
+                if (statusCode < 200 || statusCode >= 300) {
+                    LOG.error("OAUTH: Error al obtener token. Status: {0}, Body: {1}", statusCode, body);
+                    throw new ConnectorIOException("OAUTH: Falló la solicitud de token. Status: " + statusCode);
                 }
+
+                JSONObject json = new JSONObject(body);
+                oauthAccessToken = json.getString("access_token");
+                int expiresIn = json.optInt("expires_in", 3600);
+                oauthTokenExpiryEpoch = nowEpochSeconds + expiresIn;
+
+                LOG.ok("OAUTH: Nuevo token obtenido. Expira en {0} segundos.", expiresIn);
+                return oauthAccessToken;
+
+            } catch (JSONException e) {
+                LOG.error("OAUTH: Error al parsear la respuesta del token: {0}", e.getMessage(), e);
+                this.oauthAccessToken = null;
+                this.oauthTokenExpiryEpoch = 0L;
+                throw new ConnectorIOException("OAUTH: Respuesta de token inválida: " + e.getMessage(), e);
             }
         }
     }
 
     /**
-     * Construye un SSLContext que acepta todos los certificados si trustAllCertificates está habilitado.
-     * Retorna null si trustAllCertificates es false, indicando que se debe usar el contexto SSL por defecto.
+     * SSLContext único de la instancia: acepta todos los certificados si trustAllCertificates está habilitado
+     * y, si no, usa la confianza por defecto. Su caché de sesiones se amplía para reanudar sesiones.
      */
-    private javax.net.ssl.SSLContext buildSslContext() {
+    synchronized SSLContext sharedSslContext() {
+        if (!sslContextBuilt) {
+            sslContext = buildSslContext();
+            if (sslContext != null) {
+                SSLSessionContext sessions = sslContext.getClientSessionContext();
+                if (sessions != null) {
+                    sessions.setSessionCacheSize(TLS_SESSION_CACHE_SIZE);
+                    sessions.setSessionTimeout(TLS_SESSION_TIMEOUT_SECONDS);
+                }
+            }
+            sslContextBuilt = true;
+        }
+        return sslContext;
+    }
+
+    private SSLContext buildSslContext() {
         if (Boolean.TRUE.equals(configuration.getTrustAllCertificates())) {
             try {
                 TrustStrategy acceptingTrustStrategy = (chain, authType) -> true;
@@ -199,6 +322,33 @@ public class KohaAuthenticator {
                 LOG.warn("Error configurando TrustAllCertificates: {0}", e.getMessage());
             }
         }
-        return null;
+        return SSLContexts.createDefault();
+    }
+
+    private void recordHandshake(SSLSession session, long socketPreparedAt) {
+        // Una sesión creada antes de preparar el socket solo puede venir de la caché: handshake reanudado.
+        if (session.getCreationTime() < socketPreparedAt) {
+            long resumed = resumedHandshakes.incrementAndGet();
+            LOG.ok("TLS: sesión reanudada con {0} (reanudados: {1}, completos: {2})", session.getPeerHost(), resumed, fullHandshakes.get());
+        } else {
+            long full = fullHandshakes.incrementAndGet();
+            LOG.ok("TLS: handshake completo con {0} (completos: {1}, reanudados: {2})", session.getPeerHost(), full, resumedHandshakes.get());
+        }
+    }
+
+    /**
+     * Fábrica de sockets TLS que registra cada handshake como completo o reanudado.
+     */
+    private final class CountingSslSocketFactory extends SSLConnectionSocketFactory {
+
+        private CountingSslSocketFactory(SSLContext sslContext, HostnameVerifier hostnameVerifier) {
+            super(sslContext, hostnameVerifier);
+        }
+
+        @Override
+        protected void prepareSocket(SSLSocket socket) throws IOException {
+            long preparedAt = System.currentTimeMillis();
+            socket.addHandshakeCompletedListener(event -> recordHandshake(event.getSession(), preparedAt));
+        }
     }
 }
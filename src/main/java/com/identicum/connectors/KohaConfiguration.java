@@ -1,5 +1,7 @@
 package com.identicum.connectors;
 
+import com.identicum.connectors.services.EndpointBalancer;
+import com.identicum.connectors.services.RateLimitSchedule;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.common.objects.ConnectorMessages; // <-- IMPORT NECESARIO
 import org.identityconnectors.framework.spi.Configuration;
@@ -23,6 +25,38 @@ public class KohaConfiguration implements Configuration {
     private String clientId;
     private GuardedString clientSecret;
     private int pageSize = 100;
+    private int maxConnections = 20;
+    private String transportBackend = "APACHE4";
+    private int maxResponseSizeMB = 64;
+    private boolean requestCoalescingEnabled = true;
+    private String executionMode = "PLATFORM";
+    private int maxConcurrentRequestsPerHost = 0;
+    private boolean fingerprintCacheEnabled = false;
+    private int fingerprintCacheMaxEntries = 100000;
+    private String patronStorePath;
+    private boolean identityIndexEnabled = false;
+    private boolean identityIndexVerify = true;
+    private boolean createPrecheckEnabled = false;
+    private boolean referenceDataValidationEnabled = false;
+    private int referenceDataRefreshMinutes = 60;
+    private boolean referenceDataNormalizeCase = false;
+    private boolean typedExtendedAttributesEnabled = false;
+    private boolean queryPlannerEnabled = true;
+    private int warmUpConnections = 0;
+    private String loadBalancingStrategy = "POWER_OF_TWO";
+    private int endpointEjectionSeconds = 30;
+    private String readServiceAddress;
+    private int readYourWritesSeconds = 10;
+    private int interactiveReservedConnections = 0;
+    private String rateLimitSchedule;
+    private int operationTimeoutSeconds = 0;
+    private int patronWriteLockStripes = 64;
+    private boolean patchMergingEnabled = false;
+    private int parallelMappingThreads = 0;
+    private boolean compactPatronRecordsEnabled = false;
+    private boolean partitionedSearchEnabled = false;
+    private String partitionField = "category_id";
+    private int partitionedSearchThreads = 4;
 
     // Campo para almacenar los mensajes del conector inyectados por el framework
     private ConnectorMessages connectorMessages;
@@ -121,6 +155,463 @@ public class KohaConfiguration implements Configuration {
         this.pageSize = pageSize;
     }
 
+    /**
+     * Tamaño del pool de conexiones HTTP hacia Koha (total y por host).
+     */
+    @ConfigurationProperty(order = 41,
+            displayMessageKey = "koha.config.maxConnections.display",
+            helpMessageKey = "koha.config.maxConnections.help")
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Transporte HTTP: "APACHE4" (Apache HttpClient 4.x, por defecto) o "JDK" (java.net.http, HTTP/2, Java 11+).
+     */
+    @ConfigurationProperty(order = 44,
+            displayMessageKey = "koha.config.transportBackend.display",
+            helpMessageKey = "koha.config.transportBackend.help")
+    public String getTransportBackend() {
+        return transportBackend;
+    }
+
+    public void setTransportBackend(String transportBackend) {
+        this.transportBackend = transportBackend;
+    }
+
+    /**
+     * Tamaño máximo (descomprimido) de una respuesta de Koha, en MB. 0 desactiva el límite.
+     */
+    @ConfigurationProperty(order = 42,
+            displayMessageKey = "koha.config.maxResponseSizeMB.display",
+            helpMessageKey = "koha.config.maxResponseSizeMB.help")
+    public int getMaxResponseSizeMB() {
+        return maxResponseSizeMB;
+    }
+
+    public void setMaxResponseSizeMB(int maxResponseSizeMB) {
+        this.maxResponseSizeMB = maxResponseSizeMB;
+    }
+
+    /**
+     * Si es true, los GET idénticos concurrentes comparten una única petición en curso.
+     */
+    @ConfigurationProperty(order = 43,
+            displayMessageKey = "koha.config.requestCoalescingEnabled.display",
+            helpMessageKey = "koha.config.requestCoalescingEnabled.help")
+    public boolean getRequestCoalescingEnabled() {
+        return requestCoalescingEnabled;
+    }
+
+    public void setRequestCoalescingEnabled(boolean requestCoalescingEnabled) {
+        this.requestCoalescingEnabled = requestCoalescingEnabled;
+    }
+
+    /**
+     * Hilos usados por la concurrencia interna: "PLATFORM" (pool fijo) o "VIRTUAL" (hilos virtuales, Java 21+).
+     */
+    @ConfigurationProperty(order = 45,
+            displayMessageKey = "koha.config.executionMode.display",
+            helpMessageKey = "koha.config.executionMode.help")
+    public String getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(String executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Peticiones simultáneas máximas hacia el host de Koha. 0: sin límite en modo PLATFORM, maxConnections en modo VIRTUAL.
+     */
+    @ConfigurationProperty(order = 46,
+            displayMessageKey = "koha.config.maxConcurrentRequestsPerHost.display",
+            helpMessageKey = "koha.config.maxConcurrentRequestsPerHost.help")
+    public int getMaxConcurrentRequestsPerHost() {
+        return maxConcurrentRequestsPerHost;
+    }
+
+    public void setMaxConcurrentRequestsPerHost(int maxConcurrentRequestsPerHost) {
+        this.maxConcurrentRequestsPerHost = maxConcurrentRequestsPerHost;
+    }
+
+    /**
+     * Si es true, los patrones cuyo JSON no cambió desde la última lectura no se vuelven a mapear.
+     */
+    @ConfigurationProperty(order = 47,
+            displayMessageKey = "koha.config.fingerprintCacheEnabled.display",
+            helpMessageKey = "koha.config.fingerprintCacheEnabled.help")
+    public boolean getFingerprintCacheEnabled() {
+        return fingerprintCacheEnabled;
+    }
+
+    public void setFingerprintCacheEnabled(boolean fingerprintCacheEnabled) {
+        this.fingerprintCacheEnabled = fingerprintCacheEnabled;
+    }
+
+    @ConfigurationProperty(order = 48,
+            displayMessageKey = "koha.config.fingerprintCacheMaxEntries.display",
+            helpMessageKey = "koha.config.fingerprintCacheMaxEntries.help")
+    public int getFingerprintCacheMaxEntries() {
+        return fingerprintCacheMaxEntries;
+    }
+
+    public void setFingerprintCacheMaxEntries(int fingerprintCacheMaxEntries) {
+        this.fingerprintCacheMaxEntries = fingerprintCacheMaxEntries;
+    }
+
+    /**
+     * Fichero del almacén local de patrones (memory-mapped). Vacío desactiva el almacén.
+     */
+    @ConfigurationProperty(order = 49,
+            displayMessageKey = "koha.config.patronStorePath.display",
+            helpMessageKey = "koha.config.patronStorePath.help")
+    public String getPatronStorePath() {
+        return patronStorePath;
+    }
+
+    public void setPatronStorePath(String patronStorePath) {
+        this.patronStorePath = patronStorePath;
+    }
+
+    /**
+     * Si es true, las búsquedas de correlación por userid, cardnumber o email se resuelven con un índice local.
+     */
+    @ConfigurationProperty(order = 53,
+            displayMessageKey = "koha.config.identityIndexEnabled.display",
+            helpMessageKey = "koha.config.identityIndexEnabled.help")
+    public boolean getIdentityIndexEnabled() {
+        return identityIndexEnabled;
+    }
+
+    public void setIdentityIndexEnabled(boolean identityIndexEnabled) {
+        this.identityIndexEnabled = identityIndexEnabled;
+    }
+
+    /**
+     * Si es true (por defecto), cada acierto del índice se verifica leyendo el patrón por UID.
+     * Con false se usa el almacén local de patrones cuando está disponible.
+     */
+    @ConfigurationProperty(order = 54,
+            displayMessageKey = "koha.config.identityIndexVerify.display",
+            helpMessageKey = "koha.config.identityIndexVerify.help")
+    public boolean getIdentityIndexVerify() {
+        return identityIndexVerify;
+    }
+
+    public void setIdentityIndexVerify(boolean identityIndexVerify) {
+        this.identityIndexVerify = identityIndexVerify;
+    }
+
+    /**
+     * Si es true, antes de crear un patrón se descartan localmente los cardnumber/userid duplicados.
+     */
+    @ConfigurationProperty(order = 55,
+            displayMessageKey = "koha.config.createPrecheckEnabled.display",
+            helpMessageKey = "koha.config.createPrecheckEnabled.help")
+    public boolean getCreatePrecheckEnabled() {
+        return createPrecheckEnabled;
+    }
+
+    public void setCreatePrecheckEnabled(boolean createPrecheckEnabled) {
+        this.createPrecheckEnabled = createPrecheckEnabled;
+    }
+
+    /**
+     * Si es true, library_id y category_id se validan localmente contra /libraries y /patron_categories.
+     */
+    @ConfigurationProperty(order = 56,
+            displayMessageKey = "koha.config.referenceDataValidationEnabled.display",
+            helpMessageKey = "koha.config.referenceDataValidationEnabled.help")
+    public boolean getReferenceDataValidationEnabled() {
+        return referenceDataValidationEnabled;
+    }
+
+    public void setReferenceDataValidationEnabled(boolean referenceDataValidationEnabled) {
+        this.referenceDataValidationEnabled = referenceDataValidationEnabled;
+    }
+
+    @ConfigurationProperty(order = 57,
+            displayMessageKey = "koha.config.referenceDataRefreshMinutes.display",
+            helpMessageKey = "koha.config.referenceDataRefreshMinutes.help")
+    public int getReferenceDataRefreshMinutes() {
+        return referenceDataRefreshMinutes;
+    }
+
+    public void setReferenceDataRefreshMinutes(int referenceDataRefreshMinutes) {
+        this.referenceDataRefreshMinutes = referenceDataRefreshMinutes;
+    }
+
+    /**
+     * Si es true, un library_id/category_id que solo difiere en mayúsculas se corrige al valor de Koha.
+     */
+    @ConfigurationProperty(order = 58,
+            displayMessageKey = "koha.config.referenceDataNormalizeCase.display",
+            helpMessageKey = "koha.config.referenceDataNormalizeCase.help")
+    public boolean getReferenceDataNormalizeCase() {
+        return referenceDataNormalizeCase;
+    }
+
+    public void setReferenceDataNormalizeCase(boolean referenceDataNormalizeCase) {
+        this.referenceDataNormalizeCase = referenceDataNormalizeCase;
+    }
+
+    /**
+     * Si es true, cada tipo de /extended_attribute_types se expone como atributo {@code ext_<código>}.
+     * Las definiciones se refrescan con referenceDataRefreshMinutes.
+     */
+    @ConfigurationProperty(order = 59,
+            displayMessageKey = "koha.config.typedExtendedAttributesEnabled.display",
+            helpMessageKey = "koha.config.typedExtendedAttributesEnabled.help")
+    public boolean getTypedExtendedAttributesEnabled() {
+        return typedExtendedAttributesEnabled;
+    }
+
+    public void setTypedExtendedAttributesEnabled(boolean typedExtendedAttributesEnabled) {
+        this.typedExtendedAttributesEnabled = typedExtendedAttributesEnabled;
+    }
+
+    /**
+     * Si es true, los filtros de cuentas se dividen en una parte enviada a Koha y un residuo
+     * evaluado sobre el JSON antes de mapear, en lugar de recorrer todo y dejar el filtrado al framework.
+     */
+    @ConfigurationProperty(order = 60,
+            displayMessageKey = "koha.config.queryPlannerEnabled.display",
+            helpMessageKey = "koha.config.queryPlannerEnabled.help")
+    public boolean getQueryPlannerEnabled() {
+        return queryPlannerEnabled;
+    }
+
+    public void setQueryPlannerEnabled(boolean queryPlannerEnabled) {
+        this.queryPlannerEnabled = queryPlannerEnabled;
+    }
+
+    /**
+     * Conexiones que se abren en segundo plano tras init() (junto con DNS, token OAuth2 y esquema).
+     * 0 desactiva el calentamiento; el valor se limita a maxConnections.
+     */
+    @ConfigurationProperty(order = 61,
+            displayMessageKey = "koha.config.warmUpConnections.display",
+            helpMessageKey = "koha.config.warmUpConnections.help")
+    public int getWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    public void setWarmUpConnections(int warmUpConnections) {
+        this.warmUpConnections = warmUpConnections;
+    }
+
+    /**
+     * Reparto entre los nodos de serviceAddress cuando hay más de uno: POWER_OF_TWO (por defecto)
+     * o LEAST_OUTSTANDING.
+     */
+    @ConfigurationProperty(order = 62,
+            displayMessageKey = "koha.config.loadBalancingStrategy.display",
+            helpMessageKey = "koha.config.loadBalancingStrategy.help")
+    public String getLoadBalancingStrategy() {
+        return loadBalancingStrategy;
+    }
+
+    public void setLoadBalancingStrategy(String loadBalancingStrategy) {
+        this.loadBalancingStrategy = loadBalancingStrategy;
+    }
+
+    /**
+     * Segundos que un nodo con fallos queda fuera del reparto antes de la sonda de readmisión.
+     */
+    @ConfigurationProperty(order = 63,
+            displayMessageKey = "koha.config.endpointEjectionSeconds.display",
+            helpMessageKey = "koha.config.endpointEjectionSeconds.help")
+    public int getEndpointEjectionSeconds() {
+        return endpointEjectionSeconds;
+    }
+
+    public void setEndpointEjectionSeconds(int endpointEjectionSeconds) {
+        this.endpointEjectionSeconds = endpointEjectionSeconds;
+    }
+
+    /**
+     * Nodos de solo lectura (réplicas) separados por comas. Si se indica, GET y HEAD van a estos nodos
+     * y las escrituras a serviceAddress; vacío envía todo a serviceAddress.
+     */
+    @ConfigurationProperty(order = 64,
+            displayMessageKey = "koha.config.readServiceAddress.display",
+            helpMessageKey = "koha.config.readServiceAddress.help")
+    public String getReadServiceAddress() {
+        return readServiceAddress;
+    }
+
+    public void setReadServiceAddress(String readServiceAddress) {
+        this.readServiceAddress = readServiceAddress;
+    }
+
+    /**
+     * Segundos durante los que las lecturas de un patrón recién escrito van al principal en lugar de a las réplicas.
+     * 0 desactiva la ventana.
+     */
+    @ConfigurationProperty(order = 65,
+            displayMessageKey = "koha.config.readYourWritesSeconds.display",
+            helpMessageKey = "koha.config.readYourWritesSeconds.help")
+    public int getReadYourWritesSeconds() {
+        return readYourWritesSeconds;
+    }
+
+    public void setReadYourWritesSeconds(int readYourWritesSeconds) {
+        this.readYourWritesSeconds = readYourWritesSeconds;
+    }
+
+    /**
+     * Peticiones simultáneas reservadas a operaciones interactivas (lecturas por UID, altas, modificaciones,
+     * bajas, búsquedas de correlación) frente a los recorridos paginados. 0 desactiva el planificador por carriles.
+     */
+    @ConfigurationProperty(order = 66,
+            displayMessageKey = "koha.config.interactiveReservedConnections.display",
+            helpMessageKey = "koha.config.interactiveReservedConnections.help")
+    public int getInteractiveReservedConnections() {
+        return interactiveReservedConnections;
+    }
+
+    public void setInteractiveReservedConnections(int interactiveReservedConnections) {
+        this.interactiveReservedConnections = interactiveReservedConnections;
+    }
+
+    /**
+     * Límites de tasa por franja horaria y clase de endpoint, p. ej.
+     * {@code 06:00-22:00=search:2,read:10,write:5;22:00-06:00=search:50}. Vacío desactiva el limitador.
+     */
+    @ConfigurationProperty(order = 67,
+            displayMessageKey = "koha.config.rateLimitSchedule.display",
+            helpMessageKey = "koha.config.rateLimitSchedule.help")
+    public String getRateLimitSchedule() {
+        return rateLimitSchedule;
+    }
+
+    public void setRateLimitSchedule(String rateLimitSchedule) {
+        this.rateLimitSchedule = rateLimitSchedule;
+    }
+
+    /**
+     * Plazo de cada operación del conector (búsqueda, alta, modificación, baja, test), en segundos.
+     * Al vencer se abortan las peticiones en curso y se lanza OperationTimeoutException. 0 sin plazo.
+     */
+    @ConfigurationProperty(order = 68,
+            displayMessageKey = "koha.config.operationTimeoutSeconds.display",
+            helpMessageKey = "koha.config.operationTimeoutSeconds.help")
+    public int getOperationTimeoutSeconds() {
+        return operationTimeoutSeconds;
+    }
+
+    public void setOperationTimeoutSeconds(int operationTimeoutSeconds) {
+        this.operationTimeoutSeconds = operationTimeoutSeconds;
+    }
+
+    /**
+     * Franjas de la tabla de locks que serializa las escrituras sobre un mismo patrón (compartida por
+     * todas las instancias del conector hacia el mismo Koha). 0 desactiva la serialización.
+     */
+    @ConfigurationProperty(order = 69,
+            displayMessageKey = "koha.config.patronWriteLockStripes.display",
+            helpMessageKey = "koha.config.patronWriteLockStripes.help")
+    public int getPatronWriteLockStripes() {
+        return patronWriteLockStripes;
+    }
+
+    public void setPatronWriteLockStripes(int patronWriteLockStripes) {
+        this.patronWriteLockStripes = patronWriteLockStripes;
+    }
+
+    /**
+     * Fusiona en un solo PATCH los PATCH que esperan turno para el mismo patrón. Requiere patronWriteLockStripes > 0.
+     */
+    @ConfigurationProperty(order = 70,
+            displayMessageKey = "koha.config.patchMergingEnabled.display",
+            helpMessageKey = "koha.config.patchMergingEnabled.help")
+    public boolean getPatchMergingEnabled() {
+        return patchMergingEnabled;
+    }
+
+    public void setPatchMergingEnabled(boolean patchMergingEnabled) {
+        this.patchMergingEnabled = patchMergingEnabled;
+    }
+
+    /**
+     * Hilos del ForkJoinPool que convierte en paralelo los patrones de cada página de una búsqueda;
+     * la entrega al handler mantiene el orden. 0 convierte en el hilo de la búsqueda.
+     */
+    @ConfigurationProperty(order = 71,
+            displayMessageKey = "koha.config.parallelMappingThreads.display",
+            helpMessageKey = "koha.config.parallelMappingThreads.help")
+    public int getParallelMappingThreads() {
+        return parallelMappingThreads;
+    }
+
+    public void setParallelMappingThreads(int parallelMappingThreads) {
+        this.parallelMappingThreads = parallelMappingThreads;
+    }
+
+    /**
+     * Lee los patrones de las búsquedas a registros compactos (un array de ranuras por patrón) en lugar de
+     * JSONObject, para reducir memoria y presión de GC en los recorridos completos.
+     */
+    @ConfigurationProperty(order = 72,
+            displayMessageKey = "koha.config.compactPatronRecordsEnabled.display",
+            helpMessageKey = "koha.config.compactPatronRecordsEnabled.help")
+    public boolean getCompactPatronRecordsEnabled() {
+        return compactPatronRecordsEnabled;
+    }
+
+    public void setCompactPatronRecordsEnabled(boolean compactPatronRecordsEnabled) {
+        this.compactPatronRecordsEnabled = compactPatronRecordsEnabled;
+    }
+
+    /**
+     * Peticiones simultáneas que reparte el planificador por carriles: maxConcurrentRequestsPerHost
+     * si es positivo, si no maxConnections.
+     */
+    public int laneCapacity() {
+        return maxConcurrentRequestsPerHost > 0 ? maxConcurrentRequestsPerHost : maxConnections;
+    }
+
+    @ConfigurationProperty(order = 50,
+            displayMessageKey = "koha.config.partitionedSearchEnabled.display",
+            helpMessageKey = "koha.config.partitionedSearchEnabled.help")
+    public boolean getPartitionedSearchEnabled() {
+        return partitionedSearchEnabled;
+    }
+
+    public void setPartitionedSearchEnabled(boolean partitionedSearchEnabled) {
+        this.partitionedSearchEnabled = partitionedSearchEnabled;
+    }
+
+    /**
+     * Campo usado para particionar la búsqueda completa: "category_id" o "library_id".
+     */
+    @ConfigurationProperty(order = 51,
+            displayMessageKey = "koha.config.partitionField.display",
+            helpMessageKey = "koha.config.partitionField.help")
+    public String getPartitionField() {
+        return partitionField;
+    }
+
+    public void setPartitionField(String partitionField) {
+        this.partitionField = partitionField;
+    }
+
+    @ConfigurationProperty(order = 52,
+            displayMessageKey = "koha.config.partitionedSearchThreads.display",
+            helpMessageKey = "koha.config.partitionedSearchThreads.help")
+    public int getPartitionedSearchThreads() {
+        return partitionedSearchThreads;
+    }
+
+    public void setPartitionedSearchThreads(int partitionedSearchThreads) {
+        this.partitionedSearchThreads = partitionedSearchThreads;
+    }
+
     /**
      * Valida que la configuración proporcionada sea coherente y completa.
      */
@@ -129,6 +620,9 @@ public class KohaConfiguration implements Configuration {
         if (serviceAddress == null || serviceAddress.trim().isEmpty()) {
             throw new IllegalArgumentException("La dirección del servicio (serviceAddress) no puede estar vacía.");
         }
+        if (EndpointBalancer.parseAddresses(serviceAddress).isEmpty()) {
+            throw new IllegalArgumentException("serviceAddress no contiene ninguna dirección válida: '" + serviceAddress + "'.");
+        }
         if (authenticationMethodStrategy == null || authenticationMethodStrategy.trim().isEmpty()) {
             throw new IllegalArgumentException("La estrategia de autenticación (authenticationMethodStrategy) es obligatoria.");
         }
@@ -146,6 +640,67 @@ public class KohaConfiguration implements Configuration {
         } else {
             throw new IllegalArgumentException("El valor de authenticationMethodStrategy no es reconocido: '" + authenticationMethodStrategy + "'. Valores válidos: BASIC, OAUTH2.");
         }
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections debe ser mayor que cero.");
+        }
+        if (maxResponseSizeMB < 0) {
+            throw new IllegalArgumentException("maxResponseSizeMB no puede ser negativo.");
+        }
+        if (transportBackend != null && !"APACHE4".equalsIgnoreCase(transportBackend) && !"JDK".equalsIgnoreCase(transportBackend)) {
+            throw new IllegalArgumentException("El valor de transportBackend no es reconocido: '" + transportBackend + "'. Valores válidos: APACHE4, JDK.");
+        }
+        if (executionMode != null && !"PLATFORM".equalsIgnoreCase(executionMode) && !"VIRTUAL".equalsIgnoreCase(executionMode)) {
+            throw new IllegalArgumentException("El valor de executionMode no es reconocido: '" + executionMode + "'. Valores válidos: PLATFORM, VIRTUAL.");
+        }
+        if (maxConcurrentRequestsPerHost < 0) {
+            throw new IllegalArgumentException("maxConcurrentRequestsPerHost no puede ser negativo.");
+        }
+        if (loadBalancingStrategy != null && !EndpointBalancer.POWER_OF_TWO.equalsIgnoreCase(loadBalancingStrategy)
+                && !EndpointBalancer.LEAST_OUTSTANDING.equalsIgnoreCase(loadBalancingStrategy)) {
+            throw new IllegalArgumentException("El valor de loadBalancingStrategy no es reconocido: '" + loadBalancingStrategy + "'. Valores válidos: POWER_OF_TWO, LEAST_OUTSTANDING.");
+        }
+        RateLimitSchedule.parse(rateLimitSchedule); // lanza IllegalArgumentException si no es válida
+        if (interactiveReservedConnections < 0) {
+            throw new IllegalArgumentException("interactiveReservedConnections no puede ser negativo.");
+        }
+        if (interactiveReservedConnections > 0 && interactiveReservedConnections >= laneCapacity()) {
+            throw new IllegalArgumentException("interactiveReservedConnections debe ser menor que la capacidad ("
+                    + laneCapacity() + "), o las búsquedas paginadas no tendrían ninguna conexión.");
+        }
+        if (parallelMappingThreads < 0 || parallelMappingThreads > 256) {
+            throw new IllegalArgumentException("parallelMappingThreads debe estar entre 0 y 256.");
+        }
+        if (patronWriteLockStripes < 0) {
+            throw new IllegalArgumentException("patronWriteLockStripes no puede ser negativo.");
+        }
+        if (operationTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("operationTimeoutSeconds no puede ser negativo.");
+        }
+        if (readYourWritesSeconds < 0) {
+            throw new IllegalArgumentException("readYourWritesSeconds no puede ser negativo.");
+        }
+        boolean balanced = EndpointBalancer.parseAddresses(serviceAddress).size() > 1
+                || !EndpointBalancer.parseAddresses(readServiceAddress).isEmpty();
+        if (balanced && endpointEjectionSeconds < 1) {
+            throw new IllegalArgumentException("endpointEjectionSeconds debe ser mayor que cero.");
+        }
+        if (warmUpConnections < 0) {
+            throw new IllegalArgumentException("warmUpConnections no puede ser negativo.");
+        }
+        if (fingerprintCacheEnabled && fingerprintCacheMaxEntries < 1) {
+            throw new IllegalArgumentException("fingerprintCacheMaxEntries debe ser mayor que cero.");
+        }
+        if ((referenceDataValidationEnabled || typedExtendedAttributesEnabled) && referenceDataRefreshMinutes < 1) {
+            throw new IllegalArgumentException("referenceDataRefreshMinutes debe ser mayor que cero.");
+        }
+        if (partitionedSearchEnabled) {
+            if (!"category_id".equals(partitionField) && !"library_id".equals(partitionField)) {
+                throw new IllegalArgumentException("El valor de partitionField no es reconocido: '" + partitionField + "'. Valores válidos: category_id, library_id.");
+            }
+            if (partitionedSearchThreads < 1) {
+                throw new IllegalArgumentException("partitionedSearchThreads debe ser mayor que cero.");
+            }
+        }
     }
 
     /**
@@ -1,45 +1,92 @@
 package com.identicum.connectors;
 
 import com.identicum.connectors.mappers.CategoryMapper;
+import com.identicum.connectors.mappers.ExtendedAttributeSchema;
+import com.identicum.connectors.mappers.ParallelPageMapper;
+import com.identicum.connectors.mappers.PatronFingerprintCache;
 import com.identicum.connectors.mappers.PatronMapper;
+import com.identicum.connectors.mappers.PatronRecord;
 import com.identicum.connectors.model.AttributeMetadata;
 import com.identicum.connectors.services.CategoryService;
+import com.identicum.connectors.services.ConnectionWarmUp;
+import com.identicum.connectors.services.EndpointBalancer;
+import com.identicum.connectors.services.ExtendedAttributeTypeService;
+import com.identicum.connectors.services.LaneScheduler;
+import com.identicum.connectors.services.LibraryService;
+import com.identicum.connectors.services.LoadBalancingHttpClientAdapter;
+import com.identicum.connectors.services.OperationDeadline;
+import com.identicum.connectors.services.PartitionedPatronSearch;
+import com.identicum.connectors.services.PatronBloomFilter;
+import com.identicum.connectors.services.PatronIdentityIndex;
 import com.identicum.connectors.services.PatronService;
+import com.identicum.connectors.services.PatronStore;
+import com.identicum.connectors.services.PriorityHttpClientAdapter;
+import com.identicum.connectors.services.RateGovernor;
+import com.identicum.connectors.services.RateLimitingHttpClientAdapter;
+import com.identicum.connectors.services.RecentWrites;
+import com.identicum.connectors.services.ReferenceDataCache;
 import com.identicum.connectors.services.HttpClientAdapter;
-import com.identicum.connectors.services.DefaultHttpClientAdapter;
-import org.apache.http.impl.client.CloseableHttpClient;
+import com.identicum.connectors.services.KohaExecutors;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
 import org.identityconnectors.framework.common.exceptions.ConfigurationException;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.exceptions.UnknownUidException;
 import org.identityconnectors.framework.common.objects.*;
 import org.identityconnectors.framework.common.objects.OperationalAttributeInfos;
 import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.ConnectorClass;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
 import org.identityconnectors.framework.spi.operations.*;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @ConnectorClass(displayNameKey = "connector.identicum.rest.display", configurationClass = KohaConfiguration.class)
-public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, SearchOp<KohaFilter>, DeleteOp, TestOp {
+public class KohaConnector implements Connector, CreateOp, UpdateOp, UpdateAttributeValuesOp, SchemaOp, SearchOp<KohaFilter>, DeleteOp, TestOp {
 
 	private static final Log LOG = Log.getLog(KohaConnector.class);
 
 	private KohaConfiguration configuration;
-	private CloseableHttpClient httpClient;
+	private KohaAuthenticator authenticator;
 	private HttpClientAdapter httpAdapter;
 	private PatronService patronService;
 	private CategoryService categoryService;
+	private LibraryService libraryService;
+	private ExtendedAttributeTypeService extendedAttributeTypeService;
+	private PatronFingerprintCache patronCache;
+	private PatronStore patronStore;
+	private PatronIdentityIndex identityIndex;
+	private PatronBloomFilter bloomFilter;
+	private ReferenceDataCache referenceData;
+	private Future<?> warmUp;
+	private Future<?> storeWarmUp;
+	/** Opción de operación con el plazo en segundos; prevalece sobre operationTimeoutSeconds. */
+	public static final String OPTION_TIMEOUT_SECONDS = "timeoutSeconds";
+	/** Dimensionado inicial de las estructuras por patrón (índice de identidad, filtro de Bloom). */
+	private static final int EXPECTED_PATRONS = 100_000;
 	private final PatronMapper patronMapper = new PatronMapper();
 	private final CategoryMapper categoryMapper = new CategoryMapper();
 	private final AtomicReference<Schema> connectorSchema = new AtomicReference<>();
@@ -55,14 +102,64 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 		this.configuration.validate(); // Validar la configuración al iniciar
 
 		LOG.ok("Inicializando componentes del conector...");
-		KohaAuthenticator authenticator = new KohaAuthenticator(getConfiguration());
-		this.httpClient = authenticator.createAuthenticatedClient();
-		this.httpAdapter = new DefaultHttpClientAdapter(this.httpClient);
+		this.authenticator = new KohaAuthenticator(getConfiguration());
+		this.httpAdapter = authenticator.createTransport();
 
 		try {
-			String serviceAddress = getConfiguration().getServiceAddress();
+			List<String> nodes = EndpointBalancer.parseAddresses(getConfiguration().getServiceAddress());
+			List<String> readNodes = EndpointBalancer.parseAddresses(getConfiguration().getReadServiceAddress());
+			String serviceAddress = nodes.get(0);
+			if (nodes.size() > 1 || !readNodes.isEmpty()) {
+				String strategy = this.configuration.getLoadBalancingStrategy();
+				int ejectionSeconds = this.configuration.getEndpointEjectionSeconds();
+				EndpointBalancer balancer = EndpointBalancer.forInstance(nodes, strategy, ejectionSeconds);
+				EndpointBalancer readBalancer = readNodes.isEmpty() ? null : EndpointBalancer.forInstance(readNodes, strategy, ejectionSeconds);
+				RecentWrites recentWrites = readBalancer != null && this.configuration.getReadYourWritesSeconds() > 0
+						? RecentWrites.forInstance(serviceAddress, this.configuration.getReadYourWritesSeconds()) : null;
+				this.httpAdapter = new LoadBalancingHttpClientAdapter(this.httpAdapter, balancer, readBalancer, recentWrites,
+						this.configuration.getExecutionMode());
+				LOG.info("Balanceo {0}: escrituras en {1}, lecturas en {2}", strategy, nodes, readNodes.isEmpty() ? nodes : readNodes);
+			}
+			if (this.configuration.getInteractiveReservedConnections() > 0) {
+				LaneScheduler scheduler = LaneScheduler.forInstance(serviceAddress, this.configuration.laneCapacity(),
+						this.configuration.getInteractiveReservedConnections());
+				this.httpAdapter = new PriorityHttpClientAdapter(this.httpAdapter, scheduler);
+			}
+			if (StringUtil.isNotBlank(this.configuration.getRateLimitSchedule())) {
+				// Por fuera del planificador: una petición frenada por tasa no ocupa turno de carril
+				RateGovernor governor = RateGovernor.forInstance(serviceAddress, this.configuration.getRateLimitSchedule().trim());
+				this.httpAdapter = new RateLimitingHttpClientAdapter(this.httpAdapter, governor);
+			}
 			this.patronService = new PatronService(this.httpAdapter, serviceAddress, this.configuration);
 			this.categoryService = new CategoryService(this.httpAdapter, serviceAddress, this.configuration);
+			this.libraryService = new LibraryService(this.httpAdapter, serviceAddress, this.configuration);
+			String identity = StringUtil.isNotBlank(this.configuration.getUsername()) ? this.configuration.getUsername() : this.configuration.getClientId();
+			if (this.configuration.getFingerprintCacheEnabled()) {
+				this.patronCache = PatronFingerprintCache.forInstance(serviceAddress + "|" + identity, this.configuration.getFingerprintCacheMaxEntries());
+			}
+			if (this.configuration.getIdentityIndexEnabled()) {
+				this.identityIndex = PatronIdentityIndex.forInstance(serviceAddress + "|" + identity, EXPECTED_PATRONS);
+			}
+			if (this.configuration.getReferenceDataValidationEnabled()) {
+				this.referenceData = ReferenceDataCache.forInstance(serviceAddress + "|" + identity, this.configuration.getReferenceDataRefreshMinutes());
+			}
+			if (this.configuration.getTypedExtendedAttributesEnabled()) {
+				this.extendedAttributeTypeService = new ExtendedAttributeTypeService(this.httpAdapter, serviceAddress, this.configuration);
+				this.patronMapper.setExtendedAttributeSchema(ExtendedAttributeSchema.forInstance(serviceAddress + "|" + identity,
+						this.configuration.getReferenceDataRefreshMinutes(), this.extendedAttributeTypeService::listTypes));
+			}
+			if (this.configuration.getCreatePrecheckEnabled()) {
+				this.bloomFilter = PatronBloomFilter.forInstance(serviceAddress + "|" + identity, EXPECTED_PATRONS);
+			}
+			if (StringUtil.isNotBlank(this.configuration.getPatronStorePath())) {
+				this.patronStore = PatronStore.open(Paths.get(this.configuration.getPatronStorePath()));
+				this.storeWarmUp = warmFingerprintCacheFromStore();
+			}
+			if (this.configuration.getWarmUpConnections() > 0) {
+				int connections = Math.min(this.configuration.getWarmUpConnections(), Math.max(1, this.configuration.getMaxConnections()));
+				this.warmUp = new ConnectionWarmUp(serviceAddress, connections, this.configuration.getExecutionMode(),
+						authenticator::getAuthorizationHeader, this.libraryService::warmUpConnection, this::schema).start();
+			}
 			LOG.ok("Conector Koha inicializado con éxito.");
 		} catch (Exception e) {
 			LOG.error(e, "Error durante la inicialización de los servicios del conector.");
@@ -74,6 +171,17 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 	@Override
 	public void dispose() {
 		LOG.ok("Liberando recursos del Conector Koha...");
+		if (warmUp != null) {
+			warmUp.cancel(true);
+		}
+		if (storeWarmUp != null) {
+			storeWarmUp.cancel(true);
+		}
+		if (authenticator != null) {
+			LOG.info("TLS: {0} handshakes completos y {1} sesiones reanudadas en esta instancia",
+					authenticator.getTlsFullHandshakes(), authenticator.getTlsResumedHandshakes());
+		}
+		flushPatronStore();
 		try {
 			if (httpAdapter != null) {
 				httpAdapter.close();
@@ -94,16 +202,24 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 		ObjectClassInfo accountInfo = buildObjectClassInfo(ObjectClass.ACCOUNT_NAME,
 				PatronMapper.KOHA_PATRON_ID_NATIVE_NAME,
 				PatronMapper.ATTRIBUTE_METADATA_MAP,
-				"userid"); // "userid" is the ConnId Name for Patrons
+				"userid", // "userid" is the ConnId Name for Patrons
+				typedExtendedAttributeInfos());
 		schemaBuilder.defineObjectClass(accountInfo);
 
 		// --- Esquema para Grupos (Categorías) ---
 		ObjectClassInfo groupInfo = buildObjectClassInfo(ObjectClass.GROUP_NAME,
 				CategoryMapper.KOHA_CATEGORY_ID_NATIVE_NAME,
 				CategoryMapper.ATTRIBUTE_METADATA_MAP,
-				"name"); // "name" is the ConnId Name for Categories
+				"name", // "name" is the ConnId Name for Categories
+				Collections.emptyList());
 		schemaBuilder.defineObjectClass(groupInfo);
 
+		// Paginación por offset/cookie soportada en búsquedas de cuentas
+		schemaBuilder.defineOperationOption(OperationOptionInfoBuilder.buildPageSize(), SearchOp.class);
+		schemaBuilder.defineOperationOption(OperationOptionInfoBuilder.buildPagedResultsOffset(), SearchOp.class);
+		schemaBuilder.defineOperationOption(OperationOptionInfoBuilder.buildPagedResultsCookie(), SearchOp.class);
+		schemaBuilder.defineOperationOption(OperationOptionInfoBuilder.buildSortKeys(), SearchOp.class);
+
 		Schema built = schemaBuilder.build();
 		this.connectorSchema.compareAndSet(null, built);
 		LOG.ok("Esquema construido con éxito.");
@@ -114,7 +230,7 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 	public Uid create(ObjectClass oClass, Set<Attribute> attrs, OperationOptions options) {
 		LOG.ok("Iniciando Create para ObjectClass {0}, Atributos: {1}", oClass, attrs != null ? attrs.stream().map(Attribute::getName).collect(Collectors.toSet()) : "null");
 		String newUidValue = null;
-		try {
+		try (OperationDeadline.Scope ignored = startDeadline(options)) {
 			if (ObjectClass.ACCOUNT.is(oClass.getObjectClassValue())) {
 				JSONObject payload = patronMapper.buildPatronJson(attrs, true);
 				// Apply __ENABLE__ if present
@@ -123,8 +239,16 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 					Boolean enabled = AttributeUtil.getBooleanValue(enableAttr);
 					patronMapper.applyEnableAttribute(payload, enabled);
 				}
+				validateReferenceData(payload);
+				precheckDuplicates(payload);
 				JSONObject response = patronService.createPatron(payload);
 				newUidValue = String.valueOf(response.get(PatronMapper.KOHA_PATRON_ID_NATIVE_NAME));
+				if (identityIndex != null) {
+					identityIndex.index(response);
+				}
+				if (bloomFilter != null) {
+					bloomFilter.add(payload);
+				}
 			} else if (ObjectClass.GROUP.is(oClass.getObjectClassValue())) {
 				throw new UnsupportedOperationException("Patron categories are read-only in Koha API");
 			} else {
@@ -151,7 +275,7 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 			LOG.ok("Update para ObjectClass {0}, Uid: {1} no requiere cambios (atributos vacíos).", oClass, uid.getUidValue());
 			return uid;
 		}
-		try {
+		try (OperationDeadline.Scope ignored = startDeadline(options)) {
 			if (ObjectClass.ACCOUNT.is(oClass.getObjectClassValue())) {
 				JSONObject changes = patronMapper.buildPatronJson(attrs, false);
 				Attribute enableAttr = AttributeUtil.find(OperationalAttributes.ENABLE_NAME, attrs);
@@ -159,7 +283,24 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 					Boolean enabled = AttributeUtil.getBooleanValue(enableAttr);
 					patronMapper.applyEnableAttribute(changes, enabled);
 				}
-				patronService.updatePatron(uid.getUidValue(), changes);
+				validateReferenceData(changes);
+				List<Attribute> typedExtended = typedExtendedAttributes(attrs);
+				if (changes.length() > 0 || typedExtended.isEmpty()) {
+					patronService.updatePatron(uid.getUidValue(), changes);
+				}
+				for (Attribute attr : typedExtended) {
+					ExtendedAttributeSchema.Converter converter = patronMapper.getExtendedAttributeSchema().forAttribute(attr.getName());
+					int count = patronService.replaceExtendedAttributeValues(uid.getUidValue(), converter.getCode(), converter.toKohaValues(attr.getValue()));
+					LOG.ok("Update: {0} cambios en el atributo extendido {1} del Uid {2}", count, converter.getCode(), uid.getUidValue());
+				}
+				if (bloomFilter != null) {
+					bloomFilter.add(changes);
+				}
+				if (identityIndex != null) {
+					// Los valores anteriores quedan en el índice y se descartan al verificarlos en la próxima búsqueda.
+					identityIndex.index(new JSONObject(changes, PatronIdentityIndex.USERID, PatronIdentityIndex.CARDNUMBER)
+							.put(PatronMapper.KOHA_PATRON_ID_NATIVE_NAME, uid.getUidValue()));
+				}
 			} else if (ObjectClass.GROUP.is(oClass.getObjectClassValue())) {
 				throw new UnsupportedOperationException("Patron categories are read-only in Koha API");
 			} else {
@@ -179,12 +320,118 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 		}
 	}
 
+	/**
+	 * Agrega valores sin reemplazar el conjunto completo. Los extended_attributes se envían uno a uno
+	 * al sub-recurso /patrons/{id}/extended_attributes; el resto (monovaluados) se actualiza vía PATCH.
+	 */
+	@Override
+	public Uid addAttributeValues(ObjectClass oClass, Uid uid, Set<Attribute> valuesToAdd, OperationOptions options) {
+		LOG.ok("Iniciando AddAttributeValues para ObjectClass {0}, Uid: {1}, Atributos: {2}", oClass, uid.getUidValue(), valuesToAdd != null ? valuesToAdd.stream().map(Attribute::getName).collect(Collectors.toSet()) : "null");
+		if (valuesToAdd == null || valuesToAdd.isEmpty()) {
+			return uid;
+		}
+		try (OperationDeadline.Scope ignored = startDeadline(options)) {
+			if (!ObjectClass.ACCOUNT.is(oClass.getObjectClassValue())) {
+				throw new UnsupportedOperationException("Operación AddAttributeValues no soportada para: " + oClass.getObjectClassValue());
+			}
+			Set<Attribute> others = new HashSet<>();
+			ExtendedAttributeSchema extSchema = patronMapper.getExtendedAttributeSchema();
+			for (Attribute attr : valuesToAdd) {
+				ExtendedAttributeSchema.Converter converter = extSchema != null ? extSchema.forAttribute(attr.getName()) : null;
+				if (converter != null && converter.isRepeatable()) {
+					List<JSONObject> added = converter.toKoha(attr.getValue());
+					for (JSONObject element : added) {
+						patronService.addExtendedAttribute(uid.getUidValue(), element);
+					}
+					LOG.ok("AddAttributeValues: {0} valores agregados a {1} del Uid {2}", added.size(), attr.getName(), uid.getUidValue());
+				} else if (PatronMapper.ATTR_EXTENDED_ATTRIBUTES.equals(attr.getName())) {
+					JSONArray added = patronMapper.convertExtendedAttributesToKoha(nonNullValues(attr));
+					for (int i = 0; i < added.length(); i++) {
+						patronService.addExtendedAttribute(uid.getUidValue(), added.getJSONObject(i));
+					}
+					LOG.ok("AddAttributeValues: {0} extended_attributes agregados al Uid {1}", added.length(), uid.getUidValue());
+				} else {
+					others.add(attr);
+				}
+			}
+			if (!others.isEmpty()) {
+				// Para atributos monovaluados, agregar un valor equivale a reemplazarlo.
+				update(oClass, uid, others, options);
+			}
+			return uid;
+		} catch (ConnectorException e) {
+			LOG.error(e, "Error de ConnectorException en AddAttributeValues para ObjectClass {0}, Uid {1}", oClass.getObjectClassValue(), uid.getUidValue());
+			throw e;
+		} catch (IOException e) {
+			LOG.error(e, "Error de IOException en AddAttributeValues para ObjectClass {0}, Uid {1}", oClass.getObjectClassValue(), uid.getUidValue());
+			throw new ConnectorIOException("Error de IO en AddAttributeValues para " + oClass.getObjectClassValue() + ", Uid: " + uid.getUidValue() + ": " + e.getMessage(), e);
+		} catch (Exception e) {
+			LOG.error(e, "Error inesperado en AddAttributeValues para ObjectClass {0}, Uid {1}", oClass.getObjectClassValue(), uid.getUidValue());
+			throw ConnectorException.wrap(e);
+		}
+	}
+
+	/**
+	 * Elimina valores puntuales. Los extended_attributes se borran por extended_attribute_id;
+	 * quitar el valor de un atributo monovaluado lo deja en NULL.
+	 */
+	@Override
+	public Uid removeAttributeValues(ObjectClass oClass, Uid uid, Set<Attribute> valuesToRemove, OperationOptions options) {
+		LOG.ok("Iniciando RemoveAttributeValues para ObjectClass {0}, Uid: {1}, Atributos: {2}", oClass, uid.getUidValue(), valuesToRemove != null ? valuesToRemove.stream().map(Attribute::getName).collect(Collectors.toSet()) : "null");
+		if (valuesToRemove == null || valuesToRemove.isEmpty()) {
+			return uid;
+		}
+		try (OperationDeadline.Scope ignored = startDeadline(options)) {
+			if (!ObjectClass.ACCOUNT.is(oClass.getObjectClassValue())) {
+				throw new UnsupportedOperationException("Operación RemoveAttributeValues no soportada para: " + oClass.getObjectClassValue());
+			}
+			Set<Attribute> cleared = new HashSet<>();
+			ExtendedAttributeSchema extSchema = patronMapper.getExtendedAttributeSchema();
+			for (Attribute attr : valuesToRemove) {
+				ExtendedAttributeSchema.Converter converter = extSchema != null ? extSchema.forAttribute(attr.getName()) : null;
+				if (converter != null) {
+					int count = patronService.removeExtendedAttributes(uid.getUidValue(), converter.toKoha(attr.getValue()));
+					LOG.ok("RemoveAttributeValues: {0} valores eliminados de {1} del Uid {2}", count, attr.getName(), uid.getUidValue());
+				} else if (PatronMapper.ATTR_EXTENDED_ATTRIBUTES.equals(attr.getName())) {
+					JSONArray removed = patronMapper.convertExtendedAttributesToKoha(nonNullValues(attr));
+					List<JSONObject> targets = new ArrayList<>();
+					for (int i = 0; i < removed.length(); i++) {
+						targets.add(removed.getJSONObject(i));
+					}
+					int count = patronService.removeExtendedAttributes(uid.getUidValue(), targets);
+					LOG.ok("RemoveAttributeValues: {0} extended_attributes eliminados del Uid {1}", count, uid.getUidValue());
+				} else if (!OperationalAttributes.ENABLE_NAME.equals(attr.getName())) {
+					cleared.add(AttributeBuilder.build(attr.getName()));
+				}
+			}
+			if (!cleared.isEmpty()) {
+				update(oClass, uid, cleared, options);
+			}
+			return uid;
+		} catch (ConnectorException e) {
+			LOG.error(e, "Error de ConnectorException en RemoveAttributeValues para ObjectClass {0}, Uid {1}", oClass.getObjectClassValue(), uid.getUidValue());
+			throw e;
+		} catch (IOException e) {
+			LOG.error(e, "Error de IOException en RemoveAttributeValues para ObjectClass {0}, Uid {1}", oClass.getObjectClassValue(), uid.getUidValue());
+			throw new ConnectorIOException("Error de IO en RemoveAttributeValues para " + oClass.getObjectClassValue() + ", Uid: " + uid.getUidValue() + ": " + e.getMessage(), e);
+		} catch (Exception e) {
+			LOG.error(e, "Error inesperado en RemoveAttributeValues para ObjectClass {0}, Uid {1}", oClass.getObjectClassValue(), uid.getUidValue());
+			throw ConnectorException.wrap(e);
+		}
+	}
+
 	@Override
 	public void delete(ObjectClass oClass, Uid uid, OperationOptions options) {
 		LOG.ok("Iniciando Delete para ObjectClass {0}, Uid: {1}", oClass, uid.getUidValue());
-		try {
+		try (OperationDeadline.Scope ignored = startDeadline(options)) {
 			if (ObjectClass.ACCOUNT.is(oClass.getObjectClassValue())) {
 				patronService.deletePatron(uid.getUidValue());
+				if (patronCache != null) {
+					patronCache.invalidate(uid.getUidValue());
+				}
+				if (patronStore != null) {
+					patronStore.remove(uid.getUidValue());
+				}
 			} else if (ObjectClass.GROUP.is(oClass.getObjectClassValue())) {
 				throw new UnsupportedOperationException("Patron categories are read-only in Koha API");
 			} else {
@@ -212,21 +459,52 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 				(filter != null ? filter.getByEmail() : "N/A"),
 				(filter != null ? filter.getByCardNumber() : "N/A"),
 				options);
-		try {
+		try (OperationDeadline.Scope ignored = startDeadline(options)) {
 			if (ObjectClass.ACCOUNT.is(oClass.getObjectClassValue())) {
 				if (filter != null && filter.getByUid() != null) {
 					JSONObject patronJson = patronService.getPatron(filter.getByUid());
-					if (patronJson != null && patronJson.length() > 0) { // Check if patronJson is not null or empty
-						handler.handle(patronMapper.convertJsonToPatronObject(patronJson));
+					if (patronJson != null && patronJson.length() > 0 && filter.matchesResidual(patronJson)) { // Check if patronJson is not null or empty
+						handler.handle(toPatronObject(patronJson));
 						LOG.info("Resultados de búsqueda por UID para {0}: 1", oClass);
 					} else {
 						LOG.info("Resultados de búsqueda por UID para {0}: 0 (Patrón no encontrado o vacío)", oClass);
 					}
+					reportSearchResult(handler, new SearchResult(null, 0));
+				} else if (isCountOnly(options)) {
+					int total = filter != null && filter.getResidual() != null ? countWithResidual(filter) : patronService.countPatrons(filter);
+					LOG.info("Conteo de {0}: {1}", oClass, total);
+					reportSearchResult(handler, new SearchResult(null, total));
+				} else if (identityIndex != null && resolvedByIdentityIndex(filter, options, handler)) {
+					LOG.info("Resultado de correlación para {0} resuelto con el índice de identidad", oClass);
+				} else if (usePartitionedSearch(filter, options)) {
+					PatronFingerprintCache.Stats before = patronCache != null ? patronCache.stats() : null;
+					long bloomGeneration = bloomFilter != null ? bloomFilter.generation() : 0;
+					AtomicBoolean stopped = new AtomicBoolean();
+					String partitionField = configuration.getPartitionField();
+					List<String> partitions = listPartitionValues(partitionField);
+					new PartitionedPatronSearch(patronService, configuration.getPartitionedSearchThreads(),
+							configuration.getPageSize() * configuration.getPartitionedSearchThreads(), configuration.getExecutionMode())
+							.search(partitionField, partitions, filter, options, patronConsumer(filter, handler, stopped));
+					afterPatronSearch(filter, options, before, bloomGeneration, stopped.get());
+					reportSearchResult(handler, new SearchResult());
 				} else {
-					patronService.searchPatrons(filter, options, patronJson -> {
-						ConnectorObject co = patronMapper.convertJsonToPatronObject(patronJson);
-						return co == null || handler.handle(co);
-					});
+					PatronFingerprintCache.Stats before = patronCache != null ? patronCache.stats() : null;
+					long bloomGeneration = bloomFilter != null ? bloomFilter.generation() : 0;
+					AtomicBoolean stopped = new AtomicBoolean();
+					SearchResult result;
+					if (configuration.getCompactPatronRecordsEnabled()) {
+						result = patronService.searchPatronRecords(filter, options, compactPatronConsumer(filter, handler, stopped));
+					} else if (configuration.getParallelMappingThreads() > 0) {
+						result = patronService.searchPatronPages(filter, options, parallelPatronConsumer(filter, handler, stopped));
+					} else {
+						result = patronService.searchPatrons(filter, options, patronConsumer(filter, handler, stopped));
+					}
+					afterPatronSearch(filter, options, before, bloomGeneration, stopped.get());
+					if (result != null && filter != null && filter.getResidual() != null) {
+						// El filtro residual descarta filas de cada página: el total restante de Koha ya no es exacto.
+						result = new SearchResult(result.getPagedResultsCookie(), -1);
+					}
+					reportSearchResult(handler, result);
 				}
 			} else if (ObjectClass.GROUP.is(oClass.getObjectClassValue())) {
 				if (filter != null && filter.getByUid() != null) {
@@ -237,6 +515,7 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 					} else {
 						LOG.info("Resultados de búsqueda por UID para {0}: 0 (Categoría no encontrada o vacía)", oClass);
 					}
+					reportSearchResult(handler, new SearchResult(null, 0));
 				} else {
 					JSONArray results = categoryService.searchCategories(filter, options);
 					LOG.info("Resultados de búsqueda para {0}: {1}", oClass, results != null ? results.length() : 0);
@@ -246,6 +525,7 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 							if (co != null && !handler.handle(co)) break;
 						}
 					}
+					reportSearchResult(handler, new SearchResult(null, 0));
 				}
 			}
 			LOG.ok("executeQuery para ObjectClass {0} completado.", oClass);
@@ -261,10 +541,280 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 		}
 	}
 
+	/**
+	 * Convierte el JSON de un patrón, reutilizando el ConnectorObject anterior si su huella no cambió.
+	 */
+	private ConnectorObject toPatronObject(JSONObject patronJson) {
+		recordPatron(patronJson);
+		return convertPatron(patronJson);
+	}
+
+	/**
+	 * Registra el patrón visto en el almacén local, el índice de identidad y el filtro de Bloom.
+	 */
+	private void recordPatron(JSONObject patronJson) {
+		storePatron(patronJson);
+		if (identityIndex != null) {
+			identityIndex.index(patronJson);
+		}
+		if (bloomFilter != null) {
+			bloomFilter.add(patronJson);
+		}
+	}
+
+	/**
+	 * El almacén, el índice y el filtro de Bloom trabajan sobre JSON: el registro compacto solo se expande si alguno está activo.
+	 */
+	private void recordPatron(PatronRecord patron) {
+		if (patronStore != null || identityIndex != null || bloomFilter != null) {
+			recordPatron(patron.toJSONObject());
+		}
+	}
+
+	/**
+	 * Conversión pura a ConnectorObject (con la caché de huellas si está activa); se puede llamar en paralelo.
+	 */
+	private ConnectorObject convertPatron(JSONObject patronJson) {
+		if (patronCache == null) {
+			return patronMapper.convertJsonToPatronObject(patronJson);
+		}
+		return patronCache.toConnectorObject(patronJson, patronMapper.getMappingVersion(), patronMapper::convertJsonToPatronObject);
+	}
+
+	private ConnectorObject convertPatron(PatronRecord patron) {
+		if (patronCache == null) {
+			return patronMapper.convertRecordToPatronObject(patron);
+		}
+		return patronCache.toConnectorObject(patron, patronMapper.getMappingVersion(), patronMapper::convertRecordToPatronObject);
+	}
+
+	/**
+	 * Resuelve con el índice de identidad una búsqueda de correlación: igualdad exacta sobre userid o
+	 * cardnumber, únicos en Koha. Un filtro con email va siempre a Koha, que devuelve todos sus titulares. El candidato se comprueba contra el patrón leído por UID
+	 * (o contra el almacén local si identityIndexVerify es false); si no coincide, la entrada se descarta
+	 * y la búsqueda sigue su curso normal contra Koha.
+	 *
+	 * @return true si el resultado se entregó al handler.
+	 */
+	private boolean resolvedByIdentityIndex(KohaFilter filter, OperationOptions options, ResultsHandler handler) throws IOException {
+		if (filter == null || isPagedRequest(options) || filter.getByCategoryId() != null || filter.getByLibraryId() != null
+				|| StringUtil.isNotBlank(filter.getByEmail())
+				|| (filter.getMatchType() != null && !"exact".equals(filter.getMatchType()))) {
+			return false;
+		}
+		String field = null;
+		String value = null;
+		int criteria = 0;
+		if (StringUtil.isNotBlank(filter.getByName())) {
+			field = PatronIdentityIndex.USERID;
+			value = filter.getByName();
+			criteria++;
+		}
+		if (StringUtil.isNotBlank(filter.getByCardNumber())) {
+			field = PatronIdentityIndex.CARDNUMBER;
+			value = filter.getByCardNumber();
+			criteria++;
+		}
+		if (criteria != 1) {
+			return false;
+		}
+		String patronId = identityIndex.lookup(field, value);
+		if (patronId == null) {
+			return false;
+		}
+
+		JSONObject patronJson = null;
+		if (!configuration.getIdentityIndexVerify() && patronStore != null) {
+			patronJson = patronStore.get(patronId);
+		}
+		if (patronJson == null) {
+			try {
+				patronJson = patronService.getPatron(patronId);
+			} catch (UnknownUidException e) {
+				LOG.ok("IDENTITY_INDEX: el patrón {0} ya no existe", patronId);
+			}
+		}
+		if (!PatronIdentityIndex.matches(patronJson, field, value)) {
+			LOG.ok("IDENTITY_INDEX: entrada desactualizada para {0}={1}; se consulta a Koha", field, value);
+			identityIndex.forget(field, value);
+			return false;
+		}
+		if (filter.matchesResidual(patronJson)) {
+			ConnectorObject co = toPatronObject(patronJson);
+			if (co != null) {
+				handler.handle(co);
+			}
+		}
+		reportSearchResult(handler, new SearchResult(null, 0));
+		return true;
+	}
+
+	/**
+	 * Guarda la última versión vista del patrón en el almacén local. Un fallo del almacén no
+	 * interrumpe la búsqueda.
+	 */
+	private void storePatron(JSONObject patronJson) {
+		if (patronStore == null) {
+			return;
+		}
+		try {
+			patronStore.put(patronJson);
+		} catch (IOException e) {
+			LOG.warn(e, "PATRON_STORE: no se pudo guardar el patrón: {0}", e.getMessage());
+		}
+	}
+
+	private void flushPatronStore() {
+		if (patronStore == null) {
+			return;
+		}
+		try {
+			patronStore.flush();
+		} catch (IOException e) {
+			LOG.warn(e, "PATRON_STORE: error al persistir el almacén: {0}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Tras un reinicio la caché de huellas está vacía: se rellena desde el almacén local para que la
+	 * primera reconciliación ya reutilice los objetos de los patrones sin cambios. Se hace en un hilo
+	 * daemon para no bloquear {@code init()}; el Future devuelto (o null) se cancela en {@code dispose()}.
+	 */
+	private Future<?> warmFingerprintCacheFromStore() {
+		if (patronCache == null || patronCache.size() > 0 || patronStore.size() == 0) {
+			return null;
+		}
+		ExecutorService executor = KohaExecutors.newExecutor(configuration.getExecutionMode(), "koha-store-warmup", 1);
+		try {
+			return executor.submit(() -> {
+				try {
+					patronStore.forEach(patronJson -> patronCache.toConnectorObject(patronJson, patronMapper.getMappingVersion(), patronMapper::convertJsonToPatronObject));
+					LOG.info("PATRON_STORE: caché de huellas precargada con {0} patrones", patronCache.size());
+				} catch (IOException | RuntimeException e) {
+					LOG.warn(e, "PATRON_STORE: no se pudo precargar la caché de huellas: {0}", e.getMessage());
+				}
+			});
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Convierte cada patrón recibido y lo entrega al handler; {@code stopped} registra si el handler detuvo la búsqueda.
+	 * Las filas que no cumplen el filtro residual se descartan antes de mapearlas.
+	 */
+	private Predicate<JSONObject> patronConsumer(KohaFilter filter, ResultsHandler handler, AtomicBoolean stopped) {
+		return patronJson -> {
+			if (filter != null && !filter.matchesResidual(patronJson)) {
+				return true;
+			}
+			ConnectorObject co = toPatronObject(patronJson);
+			if (co == null || handler.handle(co)) {
+				return true;
+			}
+			stopped.set(true);
+			return false;
+		};
+	}
+
+	/**
+	 * Variante de {@link #patronConsumer} por páginas: el filtro residual y la conversión se hacen en paralelo
+	 * (parallelMappingThreads) y el registro y la entrega al handler siguen en serie y en el orden de Koha.
+	 */
+	private PatronService.PageConsumer<JSONObject> parallelPatronConsumer(KohaFilter filter, ResultsHandler handler, AtomicBoolean stopped) {
+		ParallelPageMapper<JSONObject, ConnectorObject> mapper = ParallelPageMapper.forParallelism(configuration.getParallelMappingThreads(),
+				patronJson -> filter == null || filter.matchesResidual(patronJson) ? convertPatron(patronJson) : null);
+		return page -> mapper.mapInOrder(page, (patronJson, co) -> {
+			if (co == null) {
+				return true;
+			}
+			recordPatron(patronJson);
+			if (handler.handle(co)) {
+				return true;
+			}
+			stopped.set(true);
+			return false;
+		});
+	}
+
+	/**
+	 * Consumidor de páginas de registros compactos (compactPatronRecordsEnabled), en serie o, con
+	 * parallelMappingThreads, con el filtro residual y la conversión en paralelo como {@link #parallelPatronConsumer}.
+	 */
+	private PatronService.PageConsumer<PatronRecord> compactPatronConsumer(KohaFilter filter, ResultsHandler handler, AtomicBoolean stopped) {
+		Function<PatronRecord, ConnectorObject> convert = patron -> filter == null || filter.matchesResidual(patron) ? convertPatron(patron) : null;
+		BiPredicate<PatronRecord, ConnectorObject> deliver = (patron, co) -> {
+			if (co == null) {
+				return true;
+			}
+			recordPatron(patron);
+			if (handler.handle(co)) {
+				return true;
+			}
+			stopped.set(true);
+			return false;
+		};
+		if (configuration.getParallelMappingThreads() > 0) {
+			ParallelPageMapper<PatronRecord, ConnectorObject> mapper = ParallelPageMapper.forParallelism(configuration.getParallelMappingThreads(), convert);
+			return page -> mapper.mapInOrder(page, deliver);
+		}
+		return page -> {
+			for (int i = 0; i < page.size(); i++) {
+				if (!deliver.test(page.get(i), convert.apply(page.get(i)))) {
+					return i;
+				}
+			}
+			return page.size();
+		};
+	}
+
+	/**
+	 * Cierre común de las búsquedas de patrones: estadísticas de huellas, persistencia del almacén local
+	 * y, si se recorrieron todos los patrones, el filtro de Bloom pasa a ser fiable para descartar duplicados
+	 * (salvo que se haya reconstruido durante la búsqueda o esté saturado; ver {@link PatronBloomFilter#markComplete}).
+	 */
+	private void afterPatronSearch(KohaFilter filter, OperationOptions options, PatronFingerprintCache.Stats before, long bloomGeneration, boolean stopped) {
+		if (patronCache != null && before != null) {
+			LOG.info("FINGERPRINT: {0} (patrones en caché: {1})", patronCache.stats().since(before), patronCache.size());
+		}
+		flushPatronStore();
+		if (bloomFilter != null && !stopped && (filter == null || (!filter.hasCriteria() && filter.getResidual() == null)) && !isPagedRequest(options)
+				&& !bloomFilter.isComplete() && bloomFilter.markComplete(bloomGeneration)) {
+			LOG.info("CREATE_PRECHECK: filtro de Bloom completo tras una búsqueda completa");
+		}
+	}
+
+	/**
+	 * Antes de un alta, descarta localmente los duplicados de cardnumber o userid: si el filtro de Bloom
+	 * dice que el valor podría existir se confirma con una consulta de conteo exacta ({@code _match=exact},
+	 * sin la cual Koha buscaría por subcadena) y se lanza AlreadyExistsException sin enviar el POST.
+	 */
+	private void precheckDuplicates(JSONObject payload) throws IOException {
+		if (bloomFilter == null || !bloomFilter.isComplete()) {
+			return;
+		}
+		for (String field : new String[]{PatronBloomFilter.CARDNUMBER, PatronBloomFilter.USERID}) {
+			String value = payload.optString(field, null);
+			if (StringUtil.isBlank(value) || !bloomFilter.mightContain(field, value)) {
+				continue;
+			}
+			KohaFilter probe = new KohaFilter();
+			probe.setMatchType("exact");
+			if (PatronBloomFilter.CARDNUMBER.equals(field)) {
+				probe.setByCardNumber(value);
+			} else {
+				probe.setByName(value);
+			}
+			if (patronService.countPatrons(probe) > 0) {
+				throw new AlreadyExistsException("Koha patron with " + field + " '" + value + "' already exists (create pre-check).");
+			}
+		}
+	}
+
 	@Override
 	public void test() {
 		LOG.ok("Iniciando prueba de conexión...");
-		try {
+		try (OperationDeadline.Scope ignored = startDeadline(null)) {
 			// Paso 1: Probar la obtención y validación del esquema
 			LOG.ok("Paso 1/2: Probando la obtención del esquema...");
 			Schema schema = schema(); // Llama al método schema() de esta clase
@@ -301,15 +851,104 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 
 	@Override
 	public FilterTranslator<KohaFilter> createFilterTranslator(ObjectClass oClass, OperationOptions options) {
+		if (ObjectClass.ACCOUNT.equals(oClass) && configuration != null && configuration.getQueryPlannerEnabled()) {
+			return new KohaQueryPlanner();
+		}
 		return new KohaFilterTranslator();
 	}
 
+	/**
+	 * Conteo con filtro residual: Koha no puede contar lo que no evalúa, así que se recorren
+	 * los candidatos y se cuentan los que cumplen el residuo (sin mapearlos).
+	 */
+	private int countWithResidual(KohaFilter filter) throws IOException {
+		int[] matches = new int[1];
+		patronService.searchPatrons(filter, new OperationOptionsBuilder().build(), patronJson -> {
+			if (filter.matchesResidual(patronJson)) {
+				matches[0]++;
+			}
+			return true;
+		});
+		return matches[0];
+	}
+
 	// --- Métodos de ayuda ---
 
+	/**
+	 * La búsqueda particionada solo aplica a recorridos completos (sin criterios de filtro ni paginación).
+	 */
+	private boolean usePartitionedSearch(KohaFilter filter, OperationOptions options) {
+		// Con orden no se particiona: cada partición vendría ordenada por separado.
+		return configuration.getPartitionedSearchEnabled() && (filter == null || !filter.hasCriteria())
+				&& !isPagedRequest(options) && (options == null || options.getSortKeys() == null || options.getSortKeys().length == 0);
+	}
+
+	/**
+	 * Abre el plazo de la operación: la opción {@link #OPTION_TIMEOUT_SECONDS} o, si no viene, operationTimeoutSeconds.
+	 * Las operaciones anidadas (update desde addAttributeValues) conservan el plazo exterior si es más cercano.
+	 */
+	private OperationDeadline.Scope startDeadline(OperationOptions options) {
+		int seconds = configuration != null ? configuration.getOperationTimeoutSeconds() : 0;
+		Object option = options != null && options.getOptions() != null ? options.getOptions().get(OPTION_TIMEOUT_SECONDS) : null;
+		if (option != null) {
+			try {
+				seconds = option instanceof Number ? ((Number) option).intValue() : Integer.parseInt(option.toString().trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("La opción " + OPTION_TIMEOUT_SECONDS + " debe ser un número de segundos: '" + option + "'.", e);
+			}
+		}
+		return OperationDeadline.start(TimeUnit.SECONDS.toMillis(seconds));
+	}
+
+	private static boolean isPagedRequest(OperationOptions options) {
+		return options != null && (options.getPagedResultsOffset() != null || options.getPagedResultsCookie() != null);
+	}
+
+	/**
+	 * PageSize = 0 se interpreta como una consulta de solo conteo (X-Total-Count, sin transferir patrones).
+	 */
+	private static boolean isCountOnly(OperationOptions options) {
+		return options != null && options.getPageSize() != null && options.getPageSize() == 0;
+	}
+
+	private static void reportSearchResult(ResultsHandler handler, SearchResult result) {
+		if (handler instanceof SearchResultsHandler && result != null) {
+			((SearchResultsHandler) handler).handleResult(result);
+		}
+	}
+
+	private List<String> listPartitionValues(String partitionField) throws IOException {
+		if ("library_id".equals(partitionField)) {
+			return libraryService.listLibraryIds();
+		}
+		return categoryService.listCategoryIds();
+	}
+
+	/**
+	 * Valida library_id y category_id contra las tablas de referencia cacheadas, antes de llamar a Koha.
+	 */
+	private void validateReferenceData(JSONObject payload) {
+		if (referenceData != null) {
+			referenceData.validate(payload, libraryService::listLibraryIds, categoryService::listCategoryIds,
+					configuration.getReferenceDataNormalizeCase());
+		}
+	}
+
+	private static List<Object> nonNullValues(Attribute attr) {
+		List<Object> values = new ArrayList<>();
+		if (attr.getValue() != null) {
+			for (Object v : attr.getValue()) {
+				if (v != null) values.add(v);
+			}
+		}
+		return values;
+	}
+
 	private ObjectClassInfo buildObjectClassInfo(String objectClassType,
 												 String nativeIdAttributeName,
 												 java.util.Map<String, AttributeMetadata> attributeMetadataMap,
-												 String connIdNameAttribute) {
+												 String connIdNameAttribute,
+												 List<AttributeInfo> extraAttributes) {
 		ObjectClassInfoBuilder ociBuilder = new ObjectClassInfoBuilder();
 		ociBuilder.setType(objectClassType);
 
@@ -336,6 +975,9 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 				ociBuilder.addAttributeInfo(createAttributeInfo(meta)); // Uses existing helper
 			}
 		}
+		for (AttributeInfo extra : extraAttributes) {
+			ociBuilder.addAttributeInfo(extra);
+		}
 		// Add __ENABLE__ operational attribute for ACCOUNT type
 		if (ObjectClass.ACCOUNT_NAME.equals(objectClassType)) {
 			ociBuilder.addAttributeInfo(OperationalAttributeInfos.ENABLE);
@@ -343,6 +985,29 @@ public class KohaConnector implements Connector, CreateOp, UpdateOp, SchemaOp, S
 		return ociBuilder.build();
 	}
 
+	/**
+	 * Atributos {@code ext_<código>} del esquema de cuentas; vacío si la opción está desactivada
+	 * o Koha no devolvió los tipos.
+	 */
+	private List<AttributeInfo> typedExtendedAttributeInfos() {
+		ExtendedAttributeSchema extSchema = patronMapper.getExtendedAttributeSchema();
+		return extSchema != null ? extSchema.attributeInfos() : Collections.emptyList();
+	}
+
+	private List<Attribute> typedExtendedAttributes(Set<Attribute> attrs) {
+		ExtendedAttributeSchema extSchema = patronMapper.getExtendedAttributeSchema();
+		if (extSchema == null) {
+			return Collections.emptyList();
+		}
+		List<Attribute> typed = new ArrayList<>();
+		for (Attribute attr : attrs) {
+			if (extSchema.forAttribute(attr.getName()) != null) {
+				typed.add(attr);
+			}
+		}
+		return typed;
+	}
+
 	private AttributeInfo createAttributeInfo(AttributeMetadata meta) {
 		AttributeInfoBuilder builder = new AttributeInfoBuilder(meta.getConnIdName());
 		builder.setNativeName(meta.getKohaNativeName());
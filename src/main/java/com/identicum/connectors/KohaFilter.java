@@ -1,6 +1,10 @@
 package com.identicum.connectors;
 
+import com.identicum.connectors.mappers.PatronRecord;
+import org.json.JSONObject;
+
 import java.util.StringJoiner;
+import java.util.function.Predicate;
 
 public class KohaFilter {
 
@@ -11,6 +15,7 @@ public class KohaFilter {
     private String matchType; // "exact" (default), "contains", "starts_with"
     private String byCategoryId;
     private String byLibraryId;
+    private Predicate<JSONObject> residual; // Condiciones no enviables a Koha, evaluadas sobre el JSON antes de mapear
 
     // --- Getters ---
     public String getByUid() { return byUid; }
@@ -20,6 +25,7 @@ public class KohaFilter {
     public String getMatchType() { return matchType; }
     public String getByCategoryId() { return byCategoryId; }
     public String getByLibraryId() { return byLibraryId; }
+    public Predicate<JSONObject> getResidual() { return residual; }
 
     // --- Setters ---
     void setByUid(String byUid) { this.byUid = byUid; }
@@ -29,12 +35,43 @@ public class KohaFilter {
     public void setMatchType(String matchType) { this.matchType = matchType; }
     public void setByCategoryId(String byCategoryId) { this.byCategoryId = byCategoryId; }
     public void setByLibraryId(String byLibraryId) { this.byLibraryId = byLibraryId; }
+    void setResidual(Predicate<JSONObject> residual) { this.residual = residual; }
 
     public boolean hasCriteria() {
         return byUid != null || byName != null || byEmail != null || byCardNumber != null
                 || byCategoryId != null || byLibraryId != null;
     }
 
+    /**
+     * Indica si el patrón cumple las condiciones que Koha no pudo evaluar (true si no hay residuo).
+     */
+    public boolean matchesResidual(JSONObject patronJson) {
+        return residual == null || residual.test(patronJson);
+    }
+
+    /**
+     * Como {@link #matchesResidual(JSONObject)} para un registro compacto; solo construye su JSONObject si hay residuo.
+     */
+    public boolean matchesResidual(PatronRecord patron) {
+        return residual == null || residual.test(patron.toJSONObject());
+    }
+
+    /**
+     * Copia superficial, usada para derivar sub-filtros (p. ej. un filtro por partición).
+     */
+    public KohaFilter copy() {
+        KohaFilter copy = new KohaFilter();
+        copy.byUid = this.byUid;
+        copy.byName = this.byName;
+        copy.byEmail = this.byEmail;
+        copy.byCardNumber = this.byCardNumber;
+        copy.matchType = this.matchType;
+        copy.byCategoryId = this.byCategoryId;
+        copy.byLibraryId = this.byLibraryId;
+        copy.residual = this.residual;
+        return copy;
+    }
+
     @Override
     public String toString() {
         StringJoiner joiner = new StringJoiner(", ", KohaFilter.class.getSimpleName() + "[", "]");
@@ -45,6 +82,7 @@ public class KohaFilter {
         if (matchType != null) joiner.add("matchType='" + matchType + "'");
         if (byCategoryId != null) joiner.add("byCategoryId='" + byCategoryId + "'");
         if (byLibraryId != null) joiner.add("byLibraryId='" + byLibraryId + "'");
+        if (residual != null) joiner.add("residual=" + residual);
         return joiner.toString();
     }
 }
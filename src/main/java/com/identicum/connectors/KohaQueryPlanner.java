@@ -0,0 +1,129 @@
+package com.identicum.connectors;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Planificador de consultas de patrones: divide el filtro en una parte que Koha puede resolver
+ * (un único {@link KohaFilter}) y un residuo que se evalúa localmente sobre el JSON antes de mapear.
+ * <p>
+ * Los conjuntos de primer nivel de un AND se traducen uno a uno con {@link KohaFilterTranslator} y se
+ * combinan mientras no se pisen (mismo campo dos veces o distinto tipo de coincidencia). Lo que no se
+ * puede enviar (NOT, OR, atributos sin parámetro de consulta, comparaciones) pasa al residuo, compilado
+ * con {@link ResidualFilterCompiler}. Si una parte tampoco se puede compilar se omite y, como antes,
+ * la filtra el framework sobre los ConnectorObject.
+ */
+public class KohaQueryPlanner implements FilterTranslator<KohaFilter> {
+
+    private static final Log LOG = Log.getLog(KohaQueryPlanner.class);
+
+    private final KohaFilterTranslator leafTranslator = new KohaFilterTranslator();
+
+    @Override
+    public List<KohaFilter> translate(Filter filter) {
+        if (filter == null) {
+            return Collections.emptyList();
+        }
+        List<Filter> conjuncts = new ArrayList<>();
+        flattenAnd(filter, conjuncts);
+
+        KohaFilter pushed = new KohaFilter();
+        List<Filter> residualParts = new ArrayList<>();
+        for (Filter conjunct : conjuncts) {
+            KohaFilter translated = translateLeaf(conjunct);
+            if (translated == null || !merge(pushed, translated)) {
+                residualParts.add(conjunct);
+            }
+        }
+
+        Predicate<JSONObject> residual = null;
+        for (Filter part : residualParts) {
+            Predicate<JSONObject> compiled = ResidualFilterCompiler.compile(part);
+            if (compiled == null) {
+                LOG.ok("QUERY_PLAN: condición sin evaluar en el conector (la aplica el framework): {0}", part);
+                continue;
+            }
+            residual = residual == null ? compiled : and(residual, compiled);
+        }
+        pushed.setResidual(residual);
+
+        LOG.ok("QUERY_PLAN: filtro {0} -> enviado a Koha {1}, {2} condiciones residuales", filter, pushed, residualParts.size());
+        if (!pushed.hasCriteria() && residual == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(pushed);
+    }
+
+    private static void flattenAnd(Filter filter, List<Filter> conjuncts) {
+        if (filter instanceof AndFilter) {
+            flattenAnd(((AndFilter) filter).getLeft(), conjuncts);
+            flattenAnd(((AndFilter) filter).getRight(), conjuncts);
+        } else {
+            conjuncts.add(filter);
+        }
+    }
+
+    private KohaFilter translateLeaf(Filter leaf) {
+        List<KohaFilter> translated = leafTranslator.translate(leaf);
+        return translated == null || translated.size() != 1 ? null : translated.get(0);
+    }
+
+    /**
+     * Incorpora {@code part} a {@code target} si no entra en conflicto con lo ya combinado.
+     * La búsqueda por UID ignora el resto de criterios, así que no se combina con nada.
+     */
+    static boolean merge(KohaFilter target, KohaFilter part) {
+        if (target.hasCriteria()) {
+            if (target.getByUid() != null || part.getByUid() != null) {
+                return false;
+            }
+            if (!Objects.equals(effectiveMatch(target), effectiveMatch(part))) {
+                return false;
+            }
+        }
+        if ((part.getByName() != null && target.getByName() != null)
+                || (part.getByEmail() != null && target.getByEmail() != null)
+                || (part.getByCardNumber() != null && target.getByCardNumber() != null)
+                || (part.getByCategoryId() != null && target.getByCategoryId() != null)
+                || (part.getByLibraryId() != null && target.getByLibraryId() != null)) {
+            return false;
+        }
+        if (part.getByUid() != null) target.setByUid(part.getByUid());
+        if (part.getByName() != null) target.setByName(part.getByName());
+        if (part.getByEmail() != null) target.setByEmail(part.getByEmail());
+        if (part.getByCardNumber() != null) target.setByCardNumber(part.getByCardNumber());
+        if (part.getByCategoryId() != null) target.setByCategoryId(part.getByCategoryId());
+        if (part.getByLibraryId() != null) target.setByLibraryId(part.getByLibraryId());
+        if (part.getMatchType() != null) target.setMatchType(part.getMatchType());
+        return true;
+    }
+
+    private static String effectiveMatch(KohaFilter filter) {
+        return filter.getMatchType() != null ? filter.getMatchType() : "exact";
+    }
+
+    private static Predicate<JSONObject> and(Predicate<JSONObject> left, Predicate<JSONObject> right) {
+        Predicate<JSONObject> combined = left.and(right);
+        String description = left + " AND " + right;
+        return new Predicate<JSONObject>() {
+            @Override
+            public boolean test(JSONObject json) {
+                return combined.test(json);
+            }
+
+            @Override
+            public String toString() {
+                return description;
+            }
+        };
+    }
+}
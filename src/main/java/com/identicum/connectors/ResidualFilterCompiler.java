@@ -0,0 +1,206 @@
+package com.identicum.connectors;
+
+import com.identicum.connectors.mappers.PatronMapper;
+import com.identicum.connectors.model.AttributeMetadata;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsFilter;
+import org.identityconnectors.framework.common.objects.filter.EndsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Compila un filtro de ConnId en un predicado sobre el JSON de patrón de Koha, para descartar
+ * filas antes de convertirlas en ConnectorObject.
+ * <p>
+ * Sigue la semántica de los filtros de ConnId (comparaciones de texto sensibles a mayúsculas,
+ * un atributo ausente no cumple ninguna comparación y NOT niega el resultado). Los atributos
+ * multivaluados o sin metadatos no se compilan: {@link #compile(Filter)} devuelve null y el
+ * filtrado queda a cargo del framework, como hasta ahora.
+ */
+public final class ResidualFilterCompiler {
+
+    private static final Log LOG = Log.getLog(ResidualFilterCompiler.class);
+    private static final PatronMapper PATRON_MAPPER = new PatronMapper();
+
+    private ResidualFilterCompiler() {
+    }
+
+    /**
+     * @return Predicado equivalente al filtro, o null si contiene algo que no se puede evaluar sobre el JSON.
+     */
+    public static Predicate<JSONObject> compile(Filter filter) {
+        Predicate<JSONObject> compiled = compileInternal(filter);
+        if (compiled == null) {
+            LOG.ok("Filtro no evaluable localmente: {0}", filter);
+            return null;
+        }
+        return new Described(compiled, String.valueOf(filter));
+    }
+
+    private static Predicate<JSONObject> compileInternal(Filter filter) {
+        if (filter instanceof AndFilter) {
+            Predicate<JSONObject> left = compileInternal(((AndFilter) filter).getLeft());
+            Predicate<JSONObject> right = compileInternal(((AndFilter) filter).getRight());
+            return left == null || right == null ? null : left.and(right);
+        }
+        if (filter instanceof OrFilter) {
+            Predicate<JSONObject> left = compileInternal(((OrFilter) filter).getLeft());
+            Predicate<JSONObject> right = compileInternal(((OrFilter) filter).getRight());
+            return left == null || right == null ? null : left.or(right);
+        }
+        if (filter instanceof NotFilter) {
+            Predicate<JSONObject> inner = compileInternal(((NotFilter) filter).getFilter());
+            return inner == null ? null : inner.negate();
+        }
+        if (!(filter instanceof AttributeFilter)) {
+            return null;
+        }
+        Attribute attribute = ((AttributeFilter) filter).getAttribute();
+        Function<JSONObject, Object> accessor = accessor(attribute.getName());
+        if (accessor == null) {
+            return null;
+        }
+        List<Object> values = attribute.getValue();
+        Object expected = values == null || values.isEmpty() ? null : values.get(0);
+
+        if (filter instanceof EqualsFilter) {
+            if (expected == null) {
+                return json -> accessor.apply(json) == null;
+            }
+            if (values.size() > 1) {
+                return null;
+            }
+            return json -> sameValue(accessor.apply(json), expected);
+        }
+        if (expected == null) {
+            return null;
+        }
+        String text = expected.toString();
+        if (filter instanceof ContainsFilter) {
+            return json -> {
+                Object actual = accessor.apply(json);
+                return actual != null && actual.toString().contains(text);
+            };
+        }
+        if (filter instanceof StartsWithFilter) {
+            return json -> {
+                Object actual = accessor.apply(json);
+                return actual != null && actual.toString().startsWith(text);
+            };
+        }
+        if (filter instanceof EndsWithFilter) {
+            return json -> {
+                Object actual = accessor.apply(json);
+                return actual != null && actual.toString().endsWith(text);
+            };
+        }
+        if (filter instanceof GreaterThanFilter) {
+            return json -> compare(accessor.apply(json), expected) > 0;
+        }
+        if (filter instanceof GreaterThanOrEqualFilter) {
+            return json -> compare(accessor.apply(json), expected) >= 0;
+        }
+        if (filter instanceof LessThanFilter) {
+            return json -> {
+                Object actual = accessor.apply(json);
+                return actual != null && compare(actual, expected) < 0;
+            };
+        }
+        if (filter instanceof LessThanOrEqualFilter) {
+            return json -> {
+                Object actual = accessor.apply(json);
+                return actual != null && compare(actual, expected) <= 0;
+            };
+        }
+        return null;
+    }
+
+    /**
+     * Lectura del valor de un atributo ConnId desde el JSON de Koha; null si no es evaluable.
+     */
+    private static Function<JSONObject, Object> accessor(String connIdName) {
+        if (OperationalAttributes.ENABLE_NAME.equals(connIdName)) {
+            return PATRON_MAPPER::computeEnabled;
+        }
+        String nativeName;
+        if (Uid.NAME.equals(connIdName)) {
+            nativeName = PatronMapper.KOHA_PATRON_ID_NATIVE_NAME;
+        } else {
+            AttributeMetadata meta = PatronMapper.ATTRIBUTE_METADATA_MAP.get(Name.NAME.equals(connIdName) ? "userid" : connIdName);
+            if (meta == null || meta.isMultivalued() || meta.isNotReadable()) {
+                return null;
+            }
+            nativeName = meta.getKohaNativeName();
+        }
+        return json -> {
+            Object raw = json.opt(nativeName);
+            return JSONObject.NULL.equals(raw) ? null : raw;
+        };
+    }
+
+    private static boolean sameValue(Object actual, Object expected) {
+        if (actual == null) {
+            return false;
+        }
+        if (actual instanceof Number && expected instanceof Number) {
+            return new BigDecimal(actual.toString()).compareTo(new BigDecimal(expected.toString())) == 0;
+        }
+        if (actual instanceof Boolean || expected instanceof Boolean) {
+            return actual.toString().equalsIgnoreCase(expected.toString());
+        }
+        return actual.toString().equals(expected.toString());
+    }
+
+    /**
+     * Orden numérico si ambos valores son números; si no, orden lexicográfico (válido para fechas ISO).
+     * Un valor ausente se considera menor que cualquier otro.
+     */
+    private static int compare(Object actual, Object expected) {
+        if (actual == null) {
+            return -1;
+        }
+        if (actual instanceof Number && expected instanceof Number) {
+            return new BigDecimal(actual.toString()).compareTo(new BigDecimal(expected.toString()));
+        }
+        return actual.toString().compareTo(expected.toString());
+    }
+
+    private static final class Described implements Predicate<JSONObject> {
+        private final Predicate<JSONObject> delegate;
+        private final String description;
+
+        private Described(Predicate<JSONObject> delegate, String description) {
+            this.delegate = delegate;
+            this.description = description;
+        }
+
+        @Override
+        public boolean test(JSONObject json) {
+            return delegate.test(json);
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
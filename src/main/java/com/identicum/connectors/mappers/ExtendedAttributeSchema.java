@@ -0,0 +1,233 @@
+package com.identicum.connectors.mappers;
+
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.AttributeInfo;
+import org.identityconnectors.framework.common.objects.AttributeInfoBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Atributos extendidos de Koha expuestos como atributos ConnId tipados: cada tipo definido en
+ * /extended_attribute_types se publica como {@code ext_<código>} (multivaluado si el tipo es repetible).
+ * <p>
+ * Cada tipo tiene su {@link Converter} precalculado (nombre ConnId, código y cardinalidad), de modo que
+ * leer o escribir un valor no pasa por el JSON-en-texto del atributo {@code extended_attributes}.
+ * Las definiciones se cachean por instancia de Koha y se recargan al superar su antigüedad máxima.
+ */
+public final class ExtendedAttributeSchema {
+
+    private static final Log LOG = Log.getLog(ExtendedAttributeSchema.class);
+
+    public static final String ATTRIBUTE_PREFIX = "ext_";
+
+    private static final ConcurrentMap<String, Cached> INSTANCES = new ConcurrentHashMap<>();
+
+    /** Carga las definiciones de tipos de atributo extendido desde Koha. */
+    @FunctionalInterface
+    public interface Loader {
+        List<JSONObject> load() throws IOException;
+    }
+
+    private final Map<String, Converter> byAttributeName;
+    private final Map<String, Converter> byCode;
+    private final long version;
+
+    ExtendedAttributeSchema(Collection<JSONObject> types) {
+        Map<String, Converter> attributes = new LinkedHashMap<>();
+        Map<String, Converter> codes = new HashMap<>();
+        JSONObject definitions = new JSONObject();
+        for (JSONObject type : types) {
+            String code = type.optString("extended_attribute_type_id", type.optString("code", null));
+            if (StringUtil.isBlank(code)) {
+                continue;
+            }
+            Converter converter = new Converter(code, type.optBoolean("repeatable", false));
+            attributes.put(converter.attributeName, converter);
+            codes.put(code, converter);
+            definitions.put(code, converter.repeatable);
+        }
+        this.byAttributeName = Collections.unmodifiableMap(attributes);
+        this.byCode = Collections.unmodifiableMap(codes);
+        long hash = PatronFingerprintCache.fingerprint(definitions);
+        this.version = hash != 0 ? hash : 1;
+    }
+
+    /**
+     * Definiciones compartidas por toda la JVM para una instancia de Koha (dirección del servicio y credencial).
+     * Si Koha no responde se reutiliza la copia anterior; sin copia se devuelve null y el conector
+     * sigue solo con {@code extended_attributes}.
+     */
+    public static ExtendedAttributeSchema forInstance(String scope, int refreshMinutes, Loader loader) {
+        long maxAgeMs = Math.max(1, refreshMinutes) * 60_000L;
+        Cached cached = INSTANCES.get(scope);
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt < maxAgeMs) {
+            return cached.schema;
+        }
+        synchronized (INSTANCES) {
+            cached = INSTANCES.get(scope);
+            if (cached != null && System.currentTimeMillis() - cached.loadedAt < maxAgeMs) {
+                return cached.schema;
+            }
+            try {
+                ExtendedAttributeSchema schema = new ExtendedAttributeSchema(loader.load());
+                INSTANCES.put(scope, new Cached(schema, System.currentTimeMillis()));
+                LOG.ok("EXTENDED_ATTRIBUTE_TYPES: {0} tipos cargados para {1}", schema.byCode.size(), scope);
+                return schema;
+            } catch (Exception e) {
+                LOG.warn(e, "No se pudieron cargar los tipos de atributo extendido de {0}", scope);
+                return cached != null ? cached.schema : null;
+            }
+        }
+    }
+
+    /** Definiciones del esquema ConnId, una por tipo. */
+    public List<AttributeInfo> attributeInfos() {
+        List<AttributeInfo> infos = new ArrayList<>(byAttributeName.size());
+        for (Converter converter : byAttributeName.values()) {
+            infos.add(converter.attributeInfo);
+        }
+        return infos;
+    }
+
+    /** Conversor del atributo ConnId {@code ext_<código>}, o null si no es un atributo extendido tipado. */
+    public Converter forAttribute(String connIdName) {
+        return byAttributeName.get(connIdName);
+    }
+
+    public boolean isEmpty() {
+        return byCode.isEmpty();
+    }
+
+    /**
+     * Huella de las definiciones (códigos y cardinalidad), nunca 0: dos cargas con los mismos tipos dan la
+     * misma versión y los ConnectorObjects convertidos con una siguen valiendo con la otra.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Agrega al builder un atributo por tipo presente en {@code kohaAttrs} en una única pasada.
+     *
+     * @return Los elementos cuyo tipo no está en el esquema (p. ej. creados en Koha tras la carga),
+     *         para que sigan llegando por {@code extended_attributes}.
+     */
+    public List<JSONObject> addAttributes(ConnectorObjectBuilder builder, JSONArray kohaAttrs) {
+        Map<Converter, List<Object>> values = new LinkedHashMap<>();
+        List<JSONObject> unknown = new ArrayList<>(0);
+        for (int i = 0; i < kohaAttrs.length(); i++) {
+            JSONObject attr = kohaAttrs.optJSONObject(i);
+            if (attr == null) continue;
+            Converter converter = byCode.get(attr.optString("type", null));
+            if (converter == null) {
+                unknown.add(attr);
+                continue;
+            }
+            values.computeIfAbsent(converter, c -> new ArrayList<>(c.repeatable ? 2 : 1)).add(converter.fromKoha(attr.opt("value")));
+        }
+        for (Map.Entry<Converter, List<Object>> entry : values.entrySet()) {
+            Converter converter = entry.getKey();
+            List<Object> attrValues = entry.getValue();
+            if (!converter.repeatable && attrValues.size() > 1) {
+                LOG.warn("El tipo no repetible {0} tiene {1} valores en Koha; se expone el primero", converter.code, attrValues.size());
+                attrValues = attrValues.subList(0, 1);
+            }
+            builder.addAttribute(AttributeBuilder.build(converter.attributeName, attrValues));
+        }
+        return unknown;
+    }
+
+    /**
+     * Conversor precalculado de un tipo de atributo extendido.
+     */
+    public static final class Converter {
+        private final String code;
+        private final String attributeName;
+        private final boolean repeatable;
+        private final AttributeInfo attributeInfo;
+
+        Converter(String code, boolean repeatable) {
+            this.code = code;
+            this.attributeName = ATTRIBUTE_PREFIX + code;
+            this.repeatable = repeatable;
+            this.attributeInfo = new AttributeInfoBuilder(attributeName)
+                    .setNativeName(code)
+                    .setType(String.class)
+                    .setMultiValued(repeatable)
+                    .build();
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getAttributeName() {
+            return attributeName;
+        }
+
+        public boolean isRepeatable() {
+            return repeatable;
+        }
+
+        Object fromKoha(Object kohaValue) {
+            return kohaValue == null || JSONObject.NULL.equals(kohaValue) ? "" : kohaValue.toString();
+        }
+
+        /** Elemento {"type":código,"value":valor} listo para la API de Koha. */
+        public JSONObject toKoha(Object connIdValue) {
+            return new JSONObject().put("type", code).put("value", connIdValue == null ? "" : connIdValue.toString());
+        }
+
+        /** Elementos para la API de Koha de una lista de valores ConnId (los nulos se omiten). */
+        public List<JSONObject> toKoha(List<Object> connIdValues) {
+            List<JSONObject> result = new ArrayList<>();
+            if (connIdValues == null) {
+                return result;
+            }
+            for (Object value : connIdValues) {
+                if (value != null) {
+                    result.add(toKoha(value));
+                }
+            }
+            return result;
+        }
+
+        /** Valores como texto, en el formato en que Koha los almacena. */
+        public List<String> toKohaValues(List<Object> connIdValues) {
+            List<String> result = new ArrayList<>();
+            if (connIdValues == null) {
+                return result;
+            }
+            for (Object value : connIdValues) {
+                if (value != null) {
+                    result.add(value.toString());
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class Cached {
+        private final ExtendedAttributeSchema schema;
+        private final long loadedAt;
+
+        private Cached(ExtendedAttributeSchema schema, long loadedAt) {
+            this.schema = schema;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.identicum.connectors.mappers;
+
+import com.identicum.connectors.services.OperationDeadline;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Mapea los elementos de una página en paralelo sobre un ForkJoinPool y los entrega en el orden original
+ * a un consumidor serie (el ResultsHandler de ConnId no es concurrente).
+ * <p>
+ * La página se parte en tramos que se mapean a la vez; la entrega empieza con el primer tramo mientras los
+ * siguientes aún se calculan. Si el consumidor detiene la búsqueda, los tramos pendientes se cancelan.
+ * Un pool por paralelismo, compartido por toda la JVM: sus hilos son daemon y solo hacen trabajo de CPU.
+ */
+public final class ParallelPageMapper<T, R> {
+
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+    /** Elementos mínimos por tramo: por debajo, repartir cuesta más que mapear. */
+    static final int MIN_CHUNK = 16;
+
+    private final ForkJoinPool pool;
+    private final Function<T, R> mapper;
+
+    ParallelPageMapper(ForkJoinPool pool, Function<T, R> mapper) {
+        this.pool = pool;
+        this.mapper = mapper;
+    }
+
+    public static <T, R> ParallelPageMapper<T, R> forParallelism(int parallelism, Function<T, R> mapper) {
+        return new ParallelPageMapper<>(POOLS.computeIfAbsent(parallelism, ForkJoinPool::new), mapper);
+    }
+
+    /**
+     * Mapea {@code items} y entrega cada par (elemento, resultado) en orden hasta que {@code consumer} devuelva false.
+     *
+     * @return Cuántos elementos aceptó el consumidor.
+     */
+    public int mapInOrder(List<T> items, BiPredicate<T, R> consumer) {
+        int chunk = Math.max(MIN_CHUNK, (items.size() + pool.getParallelism() * 4 - 1) / (pool.getParallelism() * 4));
+        if (items.size() <= chunk) {
+            return deliver(items, map(items), consumer);
+        }
+        List<ForkJoinTask<List<R>>> tasks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += chunk) {
+            List<T> slice = items.subList(from, Math.min(items.size(), from + chunk));
+            tasks.add(pool.submit(() -> map(slice)));
+        }
+        try {
+            int accepted = 0;
+            for (int i = 0; i < tasks.size(); i++) {
+                List<T> slice = items.subList(i * chunk, Math.min(items.size(), (i + 1) * chunk));
+                int delivered = deliver(slice, await(tasks.get(i)), consumer);
+                accepted += delivered;
+                if (delivered < slice.size()) {
+                    break;
+                }
+            }
+            return accepted;
+        } finally {
+            for (ForkJoinTask<List<R>> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private List<R> map(List<T> slice) {
+        List<R> results = new ArrayList<>(slice.size());
+        for (T item : slice) {
+            results.add(mapper.apply(item));
+        }
+        return results;
+    }
+
+    private static <T, R> int deliver(List<T> items, List<R> results, BiPredicate<T, R> consumer) {
+        for (int i = 0; i < items.size(); i++) {
+            if (!consumer.test(items.get(i), results.get(i))) {
+                return i;
+            }
+        }
+        return items.size();
+    }
+
+    private static <R> R await(ForkJoinTask<R> task) {
+        try {
+            long remaining = OperationDeadline.remainingNanos();
+            return remaining == Long.MAX_VALUE ? task.get() : task.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrumpido esperando el mapeo de una página", e);
+        } catch (TimeoutException e) {
+            throw OperationDeadline.expired("terminar el mapeo de una página");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ConnectorException(cause);
+        }
+    }
+}
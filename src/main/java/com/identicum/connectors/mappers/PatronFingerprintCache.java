@@ -0,0 +1,226 @@
+package com.identicum.connectors.mappers;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Caché de ConnectorObjects de patrones indexada por patron_id y validada por una huella de 64 bits
+ * (FNV-1a) del JSON de Koha canonicalizado (claves ordenadas). Si la huella no cambió desde la última
+ * conversión se reutiliza el ConnectorObject y se evita {@link PatronMapper#convertJsonToPatronObject}.
+ * <p>
+ * La conversión depende del JSON y de la configuración del mapper: con los atributos {@code ext_<código>}
+ * tipados, del esquema de tipos cargado. Cada entrada guarda la versión de esa configuración
+ * ({@link PatronMapper#getMappingVersion()}) y solo se reutiliza con la misma huella y la misma versión,
+ * así que activar los atributos tipados o recargar un esquema distinto vuelve a convertir.
+ * <p>
+ * Hay una caché por instancia de Koha compartida por toda la JVM, ya que ConnId recrea las instancias
+ * del conector entre ejecuciones.
+ */
+public class PatronFingerprintCache {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final ConcurrentMap<String, PatronFingerprintCache> INSTANCES = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong changed = new AtomicLong();
+    private final AtomicLong added = new AtomicLong();
+
+    PatronFingerprintCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param scope      Identifica la instancia de Koha (dirección del servicio y credencial).
+     * @param maxEntries Máximo de patrones en caché; al alcanzarlo los nuevos patrones se convierten sin cachear.
+     */
+    public static PatronFingerprintCache forInstance(String scope, int maxEntries) {
+        return INSTANCES.computeIfAbsent(scope + "#" + maxEntries, key -> new PatronFingerprintCache(maxEntries));
+    }
+
+    /**
+     * Devuelve el ConnectorObject del patrón, reutilizando el anterior si su huella no cambió y se convirtió
+     * con la misma {@code mappingVersion} ({@link PatronMapper#getMappingVersion()} del mapper).
+     */
+    public ConnectorObject toConnectorObject(JSONObject patronJson, long mappingVersion, Function<JSONObject, ConnectorObject> mapper) {
+        return toConnectorObject(patronJson, patronJson.opt(PatronMapper.KOHA_PATRON_ID_NATIVE_NAME), mappingVersion, mapper);
+    }
+
+    /**
+     * Igual que {@link #toConnectorObject(JSONObject, long, Function)} para un {@link PatronRecord}; la huella
+     * coincide con la del JSONObject equivalente, así que ambas representaciones comparten las entradas de la caché.
+     */
+    public ConnectorObject toConnectorObject(PatronRecord patron, long mappingVersion, Function<PatronRecord, ConnectorObject> mapper) {
+        return toConnectorObject(patron, patron.opt(PatronMapper.KOHA_PATRON_ID_NATIVE_NAME), mappingVersion, mapper);
+    }
+
+    private <P> ConnectorObject toConnectorObject(P patron, Object rawId, long mappingVersion, Function<P, ConnectorObject> mapper) {
+        if (rawId == null || rawId == JSONObject.NULL) {
+            return mapper.apply(patron);
+        }
+        String patronId = String.valueOf(rawId);
+        long fingerprint = fingerprint(patron);
+
+        Entry previous = entries.get(patronId);
+        if (previous != null && previous.fingerprint == fingerprint && previous.mappingVersion == mappingVersion) {
+            unchanged.incrementAndGet();
+            return previous.object;
+        }
+
+        ConnectorObject object = mapper.apply(patron);
+        if (previous != null) {
+            changed.incrementAndGet();
+        } else {
+            added.incrementAndGet();
+        }
+        if (object != null && (previous != null || entries.size() < maxEntries)) {
+            entries.put(patronId, new Entry(fingerprint, mappingVersion, object));
+        }
+        return object;
+    }
+
+    /** Olvida un patrón (por ejemplo, tras eliminarlo). */
+    public void invalidate(String patronId) {
+        entries.remove(patronId);
+    }
+
+    /** Huella registrada para el patrón, o null si no está en caché. */
+    public Long getFingerprint(String patronId) {
+        Entry entry = entries.get(patronId);
+        return entry != null ? entry.fingerprint : null;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Contadores acumulados; la diferencia entre dos instantáneas da los cambios de una ejecución. */
+    public Stats stats() {
+        return new Stats(unchanged.get(), changed.get(), added.get());
+    }
+
+    /**
+     * Huella FNV-1a de 64 bits del JSON canonicalizado: claves de objetos en orden, arrays en su
+     * orden y un prefijo de tipo para que "1" y 1 no coincidan. Acepta también un {@link PatronRecord}.
+     */
+    public static long fingerprint(Object json) {
+        return update(FNV_OFFSET_BASIS, json);
+    }
+
+    private static long update(long hash, Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> keys = new ArrayList<>(object.keySet());
+            Collections.sort(keys);
+            hash = mix(hash, '{');
+            for (String key : keys) {
+                hash = mix(hash, key);
+                hash = mix(hash, ':');
+                hash = update(hash, object.opt(key));
+                hash = mix(hash, ',');
+            }
+            return mix(hash, '}');
+        }
+        if (value instanceof PatronRecord) {
+            PatronRecord patron = (PatronRecord) value;
+            hash = mix(hash, '{');
+            for (int slot : patron.sortedSlots()) {
+                Object field = patron.valueAt(slot);
+                if (field == null) {
+                    continue;
+                }
+                hash = mix(hash, patron.nameAt(slot));
+                hash = mix(hash, ':');
+                hash = update(hash, field);
+                hash = mix(hash, ',');
+            }
+            return mix(hash, '}');
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            hash = mix(hash, '[');
+            for (int i = 0; i < array.length(); i++) {
+                hash = update(hash, array.opt(i));
+                hash = mix(hash, ',');
+            }
+            return mix(hash, ']');
+        }
+        if (value == null || value == JSONObject.NULL) {
+            return mix(hash, 'n');
+        }
+        if (value instanceof String) {
+            return mix(mix(hash, '"'), (String) value);
+        }
+        if (value instanceof Boolean) {
+            return mix(hash, ((Boolean) value) ? 't' : 'f');
+        }
+        return mix(mix(hash, '#'), value.toString());
+    }
+
+    private static long mix(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash = mix(hash, text.charAt(i));
+        }
+        return mix(hash, '\u0000');
+    }
+
+    private static long mix(long hash, char c) {
+        hash ^= c & 0xff;
+        hash *= FNV_PRIME;
+        hash ^= c >>> 8;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+
+    private static final class Entry {
+        private final long fingerprint;
+        private final long mappingVersion;
+        private final ConnectorObject object;
+
+        Entry(long fingerprint, long mappingVersion, ConnectorObject object) {
+            this.fingerprint = fingerprint;
+            this.mappingVersion = mappingVersion;
+            this.object = object;
+        }
+    }
+
+    /**
+     * Contadores de la caché: patrones sin cambios (reutilizados), modificados y nuevos.
+     */
+    public static final class Stats {
+        private final long unchanged;
+        private final long changed;
+        private final long added;
+
+        Stats(long unchanged, long changed, long added) {
+            this.unchanged = unchanged;
+            this.changed = changed;
+            this.added = added;
+        }
+
+        public long getUnchanged() { return unchanged; }
+        public long getChanged() { return changed; }
+        public long getAdded() { return added; }
+
+        public Stats since(Stats earlier) {
+            return new Stats(unchanged - earlier.unchanged, changed - earlier.changed, added - earlier.added);
+        }
+
+        @Override
+        public String toString() {
+            return "unchanged=" + unchanged + ", changed=" + changed + ", new=" + added;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
 import org.json.JSONException;
 
 import org.identityconnectors.common.logging.Log;
@@ -33,8 +34,12 @@ public class PatronMapper extends BaseMapper {
 
     // --- Definiciones de Atributos de PATRONES ---
     public static final String KOHA_PATRON_ID_NATIVE_NAME = "patron_id";
+    public static final String ATTR_EXTENDED_ATTRIBUTES = "extended_attributes";
     public static final Map<String, AttributeMetadata> ATTRIBUTE_METADATA_MAP = new LinkedHashMap<>();
 
+    /** Tipos de atributo extendido expuestos como {@code ext_<código>}; null si la opción está desactivada. */
+    private volatile ExtendedAttributeSchema extendedAttributeSchema;
+
     static {
         final String ATTR_USERID = "userid";
         final String ATTR_CARDNUMBER = "cardnumber";
@@ -74,7 +79,6 @@ public class PatronMapper extends BaseMapper {
         final String ATTR_LOGIN_ATTEMPTS = "login_attempts";
         final String ATTR_PRIVACY = "privacy";
         final String ATTR_LANG = "lang";
-        final String ATTR_EXTENDED_ATTRIBUTES = "extended_attributes";
 
         ATTRIBUTE_METADATA_MAP.put(ATTR_USERID, new AttributeMetadata(ATTR_USERID, "userid", String.class, AttributeMetadata.Flags.REQUIRED));
         ATTRIBUTE_METADATA_MAP.put(ATTR_CARDNUMBER, new AttributeMetadata(ATTR_CARDNUMBER, "cardnumber", String.class, AttributeMetadata.Flags.REQUIRED));
@@ -140,14 +144,50 @@ public class PatronMapper extends BaseMapper {
         ATTRIBUTE_METADATA_MAP.put("altaddress_phone", new AttributeMetadata("altaddress_phone", "altaddress_phone", String.class));
     }
 
+    /**
+     * Campo de Koha por el que se ordena un atributo ConnId (_order_by), o null si no es ordenable
+     * (multivaluado, no legible o sin equivalente directo en Koha).
+     */
+    public static String sortFieldFor(String connIdName) {
+        if (Uid.NAME.equals(connIdName)) {
+            return KOHA_PATRON_ID_NATIVE_NAME;
+        }
+        AttributeMetadata meta = ATTRIBUTE_METADATA_MAP.get(Name.NAME.equals(connIdName) ? "userid" : connIdName);
+        if (meta == null || meta.isMultivalued() || meta.isNotReadable()) {
+            return null;
+        }
+        return meta.getKohaNativeName();
+    }
+
+    public ExtendedAttributeSchema getExtendedAttributeSchema() {
+        return extendedAttributeSchema;
+    }
+
+    public void setExtendedAttributeSchema(ExtendedAttributeSchema extendedAttributeSchema) {
+        this.extendedAttributeSchema = extendedAttributeSchema;
+    }
+
+    /**
+     * Versión de la configuración que afecta a {@link #convertJsonToPatronObject}: 0 sin atributos
+     * {@code ext_<código>} tipados, o la {@link ExtendedAttributeSchema#version()} del esquema cargado.
+     */
+    public long getMappingVersion() {
+        ExtendedAttributeSchema extSchema = this.extendedAttributeSchema;
+        return extSchema != null ? extSchema.version() : 0;
+    }
+
     /**
      * Construye un objeto JSON para un Patrón a partir de atributos de ConnId.
+     * Los atributos {@code ext_<código>} solo se incluyen en altas; en modificaciones el conector
+     * los aplica por tipo sobre el sub-recurso /patrons/{id}/extended_attributes.
      */
     public JSONObject buildPatronJson(Set<Attribute> attributes, boolean isCreate) {
         LOG.ok("Construyendo JSON de Patrón para {0}. Atributos ConnId: {1}", (isCreate ? "CREATE" : "UPDATE"), attributes);
         JSONObject jo = new JSONObject();
         Set<String> processedKohaAttrs = new HashSet<>();
         final String nameAttribute = "userid"; // ConnId Name attribute for Patrons
+        final ExtendedAttributeSchema extSchema = this.extendedAttributeSchema;
+        JSONArray typedExtended = new JSONArray();
 
         for (Attribute attr : attributes) {
             String connIdAttrName = attr.getName();
@@ -156,6 +196,16 @@ public class PatronMapper extends BaseMapper {
                 continue;
             }
 
+            ExtendedAttributeSchema.Converter extConverter = extSchema != null ? extSchema.forAttribute(connIdAttrName) : null;
+            if (extConverter != null) {
+                if (isCreate) {
+                    for (JSONObject element : extConverter.toKoha(attr.getValue())) {
+                        typedExtended.put(element);
+                    }
+                }
+                continue;
+            }
+
             AttributeMetadata meta = Name.NAME.equals(connIdAttrName) ?
                     ATTRIBUTE_METADATA_MAP.get(nameAttribute) : ATTRIBUTE_METADATA_MAP.get(connIdAttrName);
 
@@ -205,6 +255,14 @@ public class PatronMapper extends BaseMapper {
             jo.put(meta.getKohaNativeName(), kohaValue);
             processedKohaAttrs.add(meta.getKohaNativeName());
         }
+        if (!typedExtended.isEmpty()) {
+            JSONArray merged = jo.optJSONArray("extended_attributes");
+            if (merged == null) {
+                jo.put("extended_attributes", typedExtended);
+            } else {
+                typedExtended.forEach(merged::put);
+            }
+        }
         LOG.ok("Patron JSON built with {0} fields", jo.length());
         return jo;
     }
@@ -219,15 +277,35 @@ public class PatronMapper extends BaseMapper {
             LOG.warn("El JSON de Koha proporcionado es nulo. Retornando nulo.");
             return null;
         }
+        return convertPatron(kohaJson::opt, kohaJson);
+    }
 
+    /**
+     * Convierte un patrón leído como {@link PatronRecord}: mismo resultado que {@link #convertJsonToPatronObject}
+     * para el mismo cuerpo, sin construir el JSONObject.
+     */
+    public ConnectorObject convertRecordToPatronObject(PatronRecord record) {
+        if (record == null) {
+            LOG.warn("El registro de patrón proporcionado es nulo. Retornando nulo.");
+            return null;
+        }
+        LOG.ok("Converting Koha patron record to ConnectorObject, fields: {0}", record.length());
+        return convertPatron(record::opt, record);
+    }
+
+    /**
+     * @param fields Lectura de un campo de Koha con la semántica de {@link JSONObject#opt} (null si no está).
+     * @param source Patrón original, solo para el log.
+     */
+    private ConnectorObject convertPatron(Function<String, Object> fields, Object source) {
         ConnectorObjectBuilder builder = new ConnectorObjectBuilder().setObjectClass(ObjectClass.ACCOUNT);
 
         // UID es mandatorio. Koha usa 'patron_id'.
-        Object rawUid = kohaJson.opt(KOHA_PATRON_ID_NATIVE_NAME);
+        Object rawUid = fields.apply(KOHA_PATRON_ID_NATIVE_NAME);
         String uidVal = (rawUid != null) ? String.valueOf(rawUid) : null;
 
         if (StringUtil.isBlank(uidVal)) {
-            LOG.error("Patrón JSON no tiene UID ({0}). JSON: {1}", KOHA_PATRON_ID_NATIVE_NAME, kohaJson.toString(2));
+            LOG.error("Patrón JSON no tiene UID ({0}). JSON: {1}", KOHA_PATRON_ID_NATIVE_NAME, source);
             return null; // No se puede construir un ConnectorObject sin UID
         }
         builder.setUid(new Uid(uidVal));
@@ -235,8 +313,9 @@ public class PatronMapper extends BaseMapper {
         // Name attribute - ConnId 'Name' (que mapea a 'userid' de Koha)
         AttributeMetadata nameAttributeMeta = ATTRIBUTE_METADATA_MAP.get("userid");
         String nameVal = null;
-        if (nameAttributeMeta != null && kohaJson.has(nameAttributeMeta.getKohaNativeName())) {
-            nameVal = kohaJson.optString(nameAttributeMeta.getKohaNativeName(), null);
+        if (nameAttributeMeta != null) {
+            Object rawName = fields.apply(nameAttributeMeta.getKohaNativeName());
+            nameVal = rawName == null || JSONObject.NULL.equals(rawName) ? null : rawName.toString();
         }
         builder.setName(new Name(nameVal != null ? nameVal : uidVal)); // Fallback a UID si 'userid' no está o es nulo.
 
@@ -248,10 +327,16 @@ public class PatronMapper extends BaseMapper {
             }
 
             // Special handling for extended_attributes
-            if ("extended_attributes".equals(meta.getConnIdName()) && kohaJson.has("extended_attributes")) {
-                Object raw = kohaJson.get("extended_attributes");
+            if ("extended_attributes".equals(meta.getConnIdName())) {
+                Object raw = fields.apply("extended_attributes");
                 if (raw instanceof JSONArray) {
-                    List<String> converted = convertExtendedAttributesFromKoha((JSONArray) raw);
+                    JSONArray legacy = (JSONArray) raw;
+                    ExtendedAttributeSchema extSchema = this.extendedAttributeSchema;
+                    if (extSchema != null) {
+                        // Los tipos conocidos van a sus atributos ext_<código>; el resto sigue en extended_attributes.
+                        legacy = new JSONArray(extSchema.addAttributes(builder, legacy));
+                    }
+                    List<String> converted = convertExtendedAttributesFromKoha(legacy);
                     if (!converted.isEmpty()) {
                         builder.addAttribute(AttributeBuilder.build("extended_attributes", converted));
                     }
@@ -259,18 +344,18 @@ public class PatronMapper extends BaseMapper {
                 continue;
             }
 
-            if (meta.isNotReadable() || !kohaJson.has(meta.getKohaNativeName()) || kohaJson.isNull(meta.getKohaNativeName())) {
+            Object kohaNativeVal = fields.apply(meta.getKohaNativeName());
+            if (meta.isNotReadable() || kohaNativeVal == null || JSONObject.NULL.equals(kohaNativeVal)) {
                 continue;
             }
 
-            Object kohaNativeVal = kohaJson.get(meta.getKohaNativeName());
             Object connIdVal = convertKohaValueToConnIdValue(kohaNativeVal, meta);
 
             if (connIdVal != null) {
                 builder.addAttribute(AttributeBuilder.build(meta.getConnIdName(), connIdVal));
             }
         }
-        builder.addAttribute(OperationalAttributes.ENABLE_NAME, computeEnabled(kohaJson));
+        builder.addAttribute(OperationalAttributes.ENABLE_NAME, computeEnabled(fields));
         ConnectorObject resultObject = builder.build();
         LOG.ok("Patron ConnectorObject built: {0}", resultObject.getUid());
         return resultObject;
@@ -296,11 +381,20 @@ public class PatronMapper extends BaseMapper {
      * Returns false if patron_card_lost=true OR expired=true.
      */
     public boolean computeEnabled(JSONObject kohaJson) {
-        boolean cardLost = kohaJson.optBoolean("patron_card_lost", false);
-        boolean expired = kohaJson.optBoolean("expired", false);
+        return computeEnabled(kohaJson::opt);
+    }
+
+    private static boolean computeEnabled(Function<String, Object> fields) {
+        boolean cardLost = isTrue(fields.apply("patron_card_lost"));
+        boolean expired = isTrue(fields.apply("expired"));
         return !cardLost && !expired;
     }
 
+    /** Como {@link JSONObject#optBoolean(String, boolean)} con false por defecto: true o "true" (sin mayúsculas). */
+    private static boolean isTrue(Object value) {
+        return Boolean.TRUE.equals(value) || (value instanceof String && "true".equalsIgnoreCase((String) value));
+    }
+
     /**
      * Converts Koha extended_attributes JSONArray to ConnId multivalued String list.
      * Each element is a JSON string: {"type":"X","value":"Y"}
@@ -321,7 +415,7 @@ public class PatronMapper extends BaseMapper {
      * Converts ConnId multivalued String list to Koha extended_attributes JSONArray.
      * Each String element must be a valid JSON: {"type":"X","value":"Y"}
      */
-    private JSONArray convertExtendedAttributesToKoha(List<Object> connIdValues) {
+    public JSONArray convertExtendedAttributesToKoha(List<Object> connIdValues) {
         JSONArray result = new JSONArray();
         for (Object val : connIdValues) {
             if (val == null) continue;
@@ -0,0 +1,246 @@
+package com.identicum.connectors.mappers;
+
+import com.identicum.connectors.model.AttributeMetadata;
+import org.identityconnectors.common.logging.Log;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Patrón de Koha en representación compacta: un único array de ranuras en lugar del HashMap de un JSONObject
+ * (un nodo y una clave String por campo, unos 60 por patrón). Se lee directamente del cuerpo de la respuesta
+ * con {@link #read(JSONTokener)} y lo consumen {@link PatronMapper#convertRecordToPatronObject} y
+ * {@link PatronFingerprintCache} sin construir el JSONObject.
+ * <p>
+ * Las ranuras siguen una forma compartida por toda la JVM: 0 es patron_id, después los campos de
+ * {@link PatronMapper#ATTRIBUTE_METADATA_MAP} en su orden (la ranura de la posición i es i + 1) y detrás los
+ * campos que Koha devuelva sin metadatos, que se registran la primera vez que aparecen. Los valores son los de
+ * org.json (String, Boolean, Number, JSONArray, JSONObject o JSONObject.NULL); null significa campo ausente.
+ * Un registro no se modifica después de leerlo.
+ */
+public final class PatronRecord {
+
+    private static final Log LOG = Log.getLog(PatronRecord.class);
+    /** Tope de campos distintos en la forma; Koha devuelve menos de 100 y el tope solo frena respuestas anómalas. */
+    static final int MAX_FIELDS = 512;
+
+    private static volatile Shape shape = Shape.initial();
+    private static volatile boolean overflowWarned;
+
+    private Object[] values;
+
+    private PatronRecord() {
+        this.values = new Object[shape.names.length];
+    }
+
+    /**
+     * Lee un objeto JSON del tokenizador (posicionado antes de su '{') directamente a un registro.
+     */
+    public static PatronRecord read(JSONTokener x) {
+        if (x.nextClean() != '{') {
+            throw x.syntaxError("A JSONObject text must begin with '{'");
+        }
+        PatronRecord record = new PatronRecord();
+        for (;;) {
+            char c = x.nextClean();
+            if (c == 0) {
+                throw x.syntaxError("A JSONObject text must end with '}'");
+            }
+            if (c == '}') {
+                return record;
+            }
+            x.back();
+            String key = x.nextValue().toString();
+            if (x.nextClean() != ':') {
+                throw x.syntaxError("Expected a ':' after a key");
+            }
+            record.put(key, x.nextValue());
+            switch (x.nextClean()) {
+                case ',':
+                    if (x.nextClean() == '}') {
+                        return record;
+                    }
+                    x.back();
+                    break;
+                case '}':
+                    return record;
+                default:
+                    throw x.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * Lee el cuerpo de una búsqueda: un array de patrones, un objeto que los envuelve bajo {@code wrapperKey}
+     * o un patrón individual. Un cuerpo vacío da una lista vacía.
+     */
+    public static List<PatronRecord> readList(JSONTokener x, String wrapperKey) {
+        char c = x.nextClean();
+        if (c == 0) {
+            return Collections.emptyList();
+        }
+        if (c != '[') {
+            x.back();
+            PatronRecord single = read(x);
+            Object wrapped = single.opt(wrapperKey);
+            if (!(wrapped instanceof JSONArray)) {
+                return Collections.singletonList(single);
+            }
+            JSONArray array = (JSONArray) wrapped;
+            List<PatronRecord> records = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                records.add(of(array.getJSONObject(i)));
+            }
+            return records;
+        }
+        List<PatronRecord> records = new ArrayList<>();
+        if (x.nextClean() == ']') {
+            return records;
+        }
+        x.back();
+        for (;;) {
+            records.add(read(x));
+            switch (x.nextClean()) {
+                case ',':
+                    break;
+                case ']':
+                    return records;
+                default:
+                    throw x.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    /** Copia un JSONObject ya construido (p. ej. un patrón leído por UID). */
+    public static PatronRecord of(JSONObject json) {
+        PatronRecord record = new PatronRecord();
+        for (String key : json.keySet()) {
+            record.put(key, json.opt(key));
+        }
+        return record;
+    }
+
+    /** Valor del campo (con la semántica de {@link JSONObject#opt}), o null si el patrón no lo trae. */
+    public Object opt(String field) {
+        Integer slot = shape.slots.get(field);
+        return slot != null ? valueAt(slot) : null;
+    }
+
+    /** Número de campos presentes. */
+    public int length() {
+        int length = 0;
+        for (Object value : values) {
+            if (value != null) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Vista JSONObject del patrón, para los consumidores que la necesitan (filtro residual, almacén local,
+     * índice de identidad, filtro de Bloom). Se construye en cada llamada.
+     */
+    public JSONObject toJSONObject() {
+        JSONObject json = new JSONObject();
+        String[] names = shape.names;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                json.put(names[slot], values[slot]);
+            }
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toJSONObject().toString();
+    }
+
+    /** Ranuras de la forma actual ordenadas por nombre de campo (orden canónico de la huella). */
+    int[] sortedSlots() {
+        return shape.sorted;
+    }
+
+    String nameAt(int slot) {
+        return shape.names[slot];
+    }
+
+    Object valueAt(int slot) {
+        return slot < values.length ? values[slot] : null;
+    }
+
+    private void put(String field, Object value) {
+        int slot = slotFor(field);
+        if (slot < 0) {
+            return;
+        }
+        if (slot >= values.length) {
+            values = Arrays.copyOf(values, shape.names.length);
+        }
+        values[slot] = value;
+    }
+
+    private static int slotFor(String field) {
+        Integer slot = shape.slots.get(field);
+        return slot != null ? slot : register(field);
+    }
+
+    private static synchronized int register(String field) {
+        Shape current = shape;
+        Integer slot = current.slots.get(field);
+        if (slot != null) {
+            return slot;
+        }
+        if (current.names.length >= MAX_FIELDS) {
+            if (!overflowWarned) {
+                overflowWarned = true;
+                LOG.warn("PATRON_RECORD: más de {0} campos distintos en los patrones; se omite ''{1}'' y los siguientes campos nuevos", MAX_FIELDS, field);
+            }
+            return -1;
+        }
+        String[] names = Arrays.copyOf(current.names, current.names.length + 1);
+        names[current.names.length] = field;
+        shape = new Shape(names);
+        return current.names.length;
+    }
+
+    /**
+     * Nombres de campo por ranura. Solo crece (por copia): una ranura nunca cambia de nombre.
+     */
+    private static final class Shape {
+        private final String[] names;
+        private final Map<String, Integer> slots;
+        private final int[] sorted;
+
+        private Shape(String[] names) {
+            this.names = names;
+            this.slots = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                slots.put(names[i], i);
+            }
+            this.sorted = slots.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .mapToInt(Map.Entry::getValue)
+                    .toArray();
+        }
+
+        private static Shape initial() {
+            Set<String> names = new LinkedHashSet<>();
+            names.add(PatronMapper.KOHA_PATRON_ID_NATIVE_NAME);
+            for (AttributeMetadata meta : PatronMapper.ATTRIBUTE_METADATA_MAP.values()) {
+                names.add(meta.getKohaNativeName());
+            }
+            return new Shape(names.toArray(new String[0]));
+        }
+    }
+}
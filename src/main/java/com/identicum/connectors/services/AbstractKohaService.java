@@ -10,7 +10,6 @@ import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.conn.HttpHostConnectException;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.util.EntityUtils;
-import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
 import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
@@ -20,28 +19,43 @@ import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueE
 import org.identityconnectors.framework.common.exceptions.PermissionDeniedException;
 import org.identityconnectors.framework.common.exceptions.UnknownUidException;
 
-import com.identicum.connectors.services.HttpClientAdapter;
+import com.identicum.connectors.KohaConfiguration;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.SocketTimeoutException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.zip.GZIPInputStream;
 
 public abstract class AbstractKohaService {
 
     private static final Log LOG = Log.getLog(AbstractKohaService.class);
+    private static final long MAX_RETRY_AFTER_MS = 30_000L;
     protected final HttpClientAdapter httpClient;
     protected final String serviceAddress;
+    protected final KohaConfiguration configuration;
 
-    public AbstractKohaService(HttpClientAdapter httpClient, String serviceAddress) {
+    public AbstractKohaService(HttpClientAdapter httpClient, String serviceAddress, KohaConfiguration configuration) {
         this.httpClient = httpClient;
         this.serviceAddress = serviceAddress;
+        this.configuration = configuration;
     }
 
     protected abstract String getEndpoint();
@@ -57,21 +71,138 @@ public abstract class AbstractKohaService {
         if (payload != null) {
             request.setEntity(new ByteArrayEntity(payload.toString().getBytes(StandardCharsets.UTF_8)));
         }
+        Object json = execute(request, this::readJson);
+        // 204 (No Content) o cuerpo vacío: PATCH/DELETE o un POST 201 sin cuerpo devuelven un objeto vacío.
+        return json instanceof JSONObject ? (JSONObject) json : new JSONObject();
+    }
+
+    /**
+     * Ejecuta la petición y devuelve el cuerpo como texto (vacío si no hay entidad).
+     * Para respuestas JSON usar {@link #callRequestJson(HttpRequestBase)}, que no materializa el String.
+     */
+    protected String callRequest(HttpRequestBase request) throws ConnectorException, IOException {
+        request.setHeader("Accept", "application/json");
+        request.setHeader("Accept-Encoding", "gzip");
+        return execute(request, (response, body) -> {
+            if (body == null) {
+                return "";
+            }
+            StringBuilder text = new StringBuilder();
+            try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+                char[] chunk = new char[4096];
+                int n;
+                while ((n = reader.read(chunk)) != -1) {
+                    text.append(chunk, 0, n);
+                }
+            }
+            return text.toString();
+        });
+    }
+
+    /**
+     * Ejecuta la petición y parsea el cuerpo directamente desde el stream (descomprimido si es gzip).
+     *
+     * @return JSONObject, JSONArray o null si la respuesta no tiene cuerpo.
+     */
+    protected Object callRequestJson(HttpRequestBase request) throws ConnectorException, IOException {
+        request.setHeader("Accept", "application/json");
+        request.setHeader("Accept-Encoding", "gzip");
+        return executeCoalesced(request, "json", this::readJson, AbstractKohaService::copyParsed);
+    }
+
+    /**
+     * Como {@link #callRequestJson} pero siempre con una petición propia, sin unirse a un GET idéntico en vuelo:
+     * para las lecturas bajo el lock de escritura de un patrón, que deben ver las escrituras anteriores.
+     */
+    protected Object callRequestJsonUncoalesced(HttpRequestBase request) throws ConnectorException, IOException {
+        request.setHeader("Accept", "application/json");
+        request.setHeader("Accept-Encoding", "gzip");
+        return execute(request, this::readJson);
+    }
 
+    /**
+     * Los GET idempotentes idénticos (misma URL y cabeceras, misma instancia de Koha y credencial)
+     * que coinciden en el tiempo comparten una única petición HTTP; cada hilo que se une recibe
+     * {@code shareCopy} del resultado parseado.
+     */
+    private <T> T executeCoalesced(HttpRequestBase request, String readerKind, ResponseReader<T> reader, UnaryOperator<T> shareCopy)
+            throws ConnectorException, IOException {
+        if (!"GET".equals(request.getMethod()) || configuration == null || !configuration.getRequestCoalescingEnabled()) {
+            return execute(request, reader);
+        }
+        return RequestCoalescer.shared().execute(coalescingKey(request, readerKind), () -> execute(request, reader), shareCopy);
+    }
+
+    /**
+     * Copia de un resultado parseado para otro hilo: JSONObject y JSONArray en profundidad; las listas
+     * (p. ej. de {@link com.identicum.connectors.mappers.PatronRecord}, que no se modifican tras leerse) en superficie.
+     */
+    static Object copyParsed(Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject source = (JSONObject) value;
+            JSONObject copy = new JSONObject();
+            for (String key : source.keySet()) {
+                copy.put(key, copyParsed(source.opt(key)));
+            }
+            return copy;
+        }
+        if (value instanceof JSONArray) {
+            JSONArray source = (JSONArray) value;
+            JSONArray copy = new JSONArray();
+            for (int i = 0; i < source.length(); i++) {
+                copy.put(copyParsed(source.opt(i)));
+            }
+            return copy;
+        }
+        if (value instanceof List) {
+            return new ArrayList<>((List<?>) value);
+        }
+        return value;
+    }
+
+    private String coalescingKey(HttpRequestBase request, String readerKind) {
+        String identity = configuration.getUsername() != null ? configuration.getUsername() : configuration.getClientId();
+        StringBuilder key = new StringBuilder()
+                .append(serviceAddress).append('|').append(identity).append('|').append(readerKind).append('|')
+                .append(request.getMethod()).append(' ').append(request.getURI());
+        Header[] headers = request.getAllHeaders();
+        Arrays.sort(headers, Comparator.comparing(Header::getName, String.CASE_INSENSITIVE_ORDER).thenComparing(Header::getValue));
+        for (Header header : headers) {
+            key.append('|').append(header.getName().toLowerCase()).append('=').append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Capa única de E/S: ejecuta con reintentos, traduce errores HTTP y entrega al lector
+     * el stream de la respuesta ya descomprimido y limitado a maxResponseSizeMB.
+     */
+    private <T> T execute(HttpRequestBase request, ResponseReader<T> reader) throws ConnectorException, IOException {
         LOG.ok("Executing {0} request to {1}", request.getMethod(), request.getURI());
 
-        try (CloseableHttpResponse response = executeWithRetry(() -> httpClient.execute(request))) {
+        Semaphore permits = hostPermits();
+        acquire(permits, request);
+        // Si la tarea se cancela o vence el plazo, el watchdog aborta la petición en lugar de esperar al timeout del socket
+        try (RequestWatchdog.Watch ignored = RequestWatchdog.watch(request)) {
+            return execute(request, reader, permits);
+        } catch (ConnectorException e) {
+            throw OperationDeadline.onFailure(e, request.getMethod() + " " + request.getURI());
+        }
+    }
+
+    private <T> T execute(HttpRequestBase request, ResponseReader<T> reader, Semaphore permits) throws ConnectorException, IOException {
+        try (CloseableHttpResponse response = executeWithRetry(request, () -> httpClient.execute(request))) {
             processResponseErrors(response, request);
-            String result = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-            // If status code is 204 (No Content) or the result is blank, return an empty JSON object.
-            // This handles cases where the API successfully processes a request but doesn't return a body (e.g., PUT/DELETE),
-            // or when a POST might return 201 Created without a body (though often it returns the created resource).
-            if (response.getStatusLine().getStatusCode() == 204 || StringUtil.isBlank(result)) {
+            HttpEntity entity = response.getEntity();
+            if (entity == null || response.getStatusLine().getStatusCode() == 204) {
                 LOG.ok("Response {0} {1}: No Content", request.getMethod(), request.getURI());
-                return new JSONObject();
+                return reader.read(response, null);
+            }
+            try (LimitedInputStream body = openBody(entity)) {
+                T result = reader.read(response, body);
+                LOG.ok("Response {0} {1}: {2} bytes read", request.getMethod(), request.getURI(), body.getBytesRead());
+                return result;
             }
-            LOG.ok("Response {0} {1}: {2} chars", request.getMethod(), request.getURI(), result.length());
-            return new JSONObject(result);
         } catch (HttpHostConnectException e) {
             LOG.error(e, "Connection to Koha service at ''{0}'' failed for {1} {2}.", serviceAddress, request.getMethod(), request.getURI());
             throw new ConnectionFailedException("Connection to Koha service at '" + serviceAddress + "' failed. Details: " + e.getMessage(), e);
@@ -85,92 +216,147 @@ public abstract class AbstractKohaService {
             LOG.error(e, "IO error during {0} {1}.", request.getMethod(), request.getURI());
             throw new ConnectorIOException("IO error during request to '" + request.getURI() + "'. Details: " + e.getMessage(), e);
         } catch (JSONException e) {
+            if (e.getCause() instanceof LimitedInputStream.ResponseTooLargeException) {
+                LOG.error(e, "Response too large for {0} {1}.", request.getMethod(), request.getURI());
+                throw new ConnectorIOException(e.getCause().getMessage() + " Request: " + request.getURI(), e.getCause());
+            }
             LOG.error(e, "Failed to parse JSON response for {0} {1}.", request.getMethod(), request.getURI());
             throw new ConnectorException("Failed to parse JSON response from " + request.getURI() + ". Details: " + e.getMessage(), e);
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
         }
     }
 
-    protected String callRequest(HttpRequestBase request) throws ConnectorException, IOException {
-        request.setHeader("Accept", "application/json");
-        request.setHeader("Accept-Encoding", "gzip");
-
-        LOG.ok("Executing {0} request to {1}", request.getMethod(), request.getURI());
+    /**
+     * Límite de peticiones simultáneas hacia el host: maxConcurrentRequestsPerHost si es positivo;
+     * en modo VIRTUAL, por defecto maxConnections (los hilos virtuales ya no acotan la concurrencia).
+     * Con interactiveReservedConnections el límite lo aplica el planificador por carriles: un semáforo
+     * FIFO delante pondría las peticiones interactivas a la cola de las de una reconciliación.
+     */
+    private Semaphore hostPermits() {
+        if (configuration == null || configuration.getInteractiveReservedConnections() > 0) {
+            return null;
+        }
+        int limit = configuration.getMaxConcurrentRequestsPerHost();
+        if (limit <= 0 && KohaExecutors.isVirtual(configuration.getExecutionMode())) {
+            limit = configuration.getMaxConnections();
+        }
+        return limit > 0 ? KohaExecutors.hostPermits(serviceAddress, limit) : null;
+    }
 
-        try (CloseableHttpResponse response = executeWithRetry(() -> httpClient.execute(request))) {
-            processResponseErrors(response, request);
-            HttpEntity entity = response.getEntity();
-            if (entity == null) {
-                // If there's no entity (e.g. 204 No Content), return empty string.
-                // This is consistent with how EntityUtils.toString(null) would behave if not for our check.
-                LOG.ok("Response {0} {1}: no entity", request.getMethod(), request.getURI());
-                return "";
-            }
-            InputStream inputStream = entity.getContent();
-            Header contentEncoding = entity.getContentEncoding();
-            if (contentEncoding != null && "gzip".equalsIgnoreCase(contentEncoding.getValue())) {
-                inputStream = new GZIPInputStream(inputStream);
+    private void acquire(Semaphore permits, HttpRequestBase request) {
+        if (permits == null) {
+            return;
+        }
+        try {
+            long remaining = OperationDeadline.remainingNanos();
+            if (remaining == Long.MAX_VALUE) {
+                permits.acquire();
+            } else if (!permits.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+                throw OperationDeadline.expired("obtener turno para " + request.getMethod() + " " + request.getURI());
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrumpido esperando turno para " + request.getMethod() + " " + request.getURI(), e);
+        }
+    }
+
+    private LimitedInputStream openBody(HttpEntity entity) throws IOException {
+        long limit = getMaxResponseBytes();
+        if (limit > 0 && entity.getContentLength() > limit) {
+            throw new LimitedInputStream.ResponseTooLargeException(limit);
+        }
+        InputStream inputStream = entity.getContent();
+        Header contentEncoding = entity.getContentEncoding();
+        if (contentEncoding != null && "gzip".equalsIgnoreCase(contentEncoding.getValue())) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
+        // El límite se aplica sobre los bytes descomprimidos
+        return new LimitedInputStream(inputStream, limit);
+    }
+
+    private long getMaxResponseBytes() {
+        return configuration != null ? configuration.getMaxResponseSizeMB() * 1024L * 1024L : 0L;
+    }
+
+    private Object readJson(CloseableHttpResponse response, InputStream body) {
+        return readBody(body, JSONTokener::nextValue);
+    }
+
+    private static Object readBody(InputStream body, Function<JSONTokener, Object> parser) {
+        if (body == null) {
+            return null;
+        }
+        JSONTokener tokener = new JSONTokener(body);
+        if (tokener.nextClean() == 0) {
+            return null; // Cuerpo vacío o solo espacios
+        }
+        tokener.back();
+        return parser.apply(tokener);
+    }
 
-            // Read the input stream into a byte array before converting to string
-            // This avoids issues with character encoding if the stream is read incrementally as chars.
-            java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-            int nRead;
-            byte[] data = new byte[4096]; // Buffer size
-            while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
+    /**
+     * Normaliza un cuerpo JSON de búsqueda a JSONArray: acepta un array, un objeto que envuelve
+     * el array bajo {@code wrapperKey} o un objeto individual.
+     */
+    protected JSONArray toResultArray(Object json, String wrapperKey) {
+        if (json == null) {
+            return new JSONArray();
+        }
+        if (json instanceof JSONArray) {
+            return (JSONArray) json;
+        }
+        if (json instanceof JSONObject) {
+            JSONObject responseObject = (JSONObject) json;
+            if (responseObject.opt(wrapperKey) instanceof JSONArray) {
+                return responseObject.getJSONArray(wrapperKey);
             }
-            buffer.flush();
-            byte[] bytes = buffer.toByteArray();
-            String responseBodyString = new String(bytes, StandardCharsets.UTF_8);
-            LOG.ok("Response {0} {1}: {2} chars", request.getMethod(), request.getURI(), responseBodyString.length());
-            return responseBodyString;
-        } catch (HttpHostConnectException e) {
-            LOG.error(e, "Connection to Koha service at ''{0}'' failed for {1} {2}.", serviceAddress, request.getMethod(), request.getURI());
-            throw new ConnectionFailedException("Connection to Koha service at '" + serviceAddress + "' failed. Details: " + e.getMessage(), e);
-        } catch (SocketTimeoutException e) {
-            LOG.error(e, "Connection to Koha service timed out for {0} {1}.", request.getMethod(), request.getURI());
-            throw new ConnectionFailedException("Connection to Koha service timed out for request to '" + request.getURI() + "'. Details: " + e.getMessage(), e);
-        } catch (ClientProtocolException e) {
-            LOG.error(e, "HTTP protocol error during {0} {1}.", request.getMethod(), request.getURI());
-            throw new ConnectorIOException("HTTP protocol error during request to '" + request.getURI() + "'. Details: " + e.getMessage(), e);
-        } catch (IOException e) {
-            LOG.error(e, "IO error during {0} {1}.", request.getMethod(), request.getURI());
-            throw new ConnectorIOException("IO error during request to '" + request.getURI() + "'. Details: " + e.getMessage(), e);
+            return new JSONArray().put(responseObject);
         }
+        throw new JSONException("Response is neither a JSON object nor a JSON array.");
     }
 
     /**
      * Ejecuta la accion HTTP con hasta 3 intentos y backoff exponencial (1s, 2s).
      * Reintenta en: SocketTimeoutException, ConnectTimeoutException, HttpHostConnectException,
-     * y respuestas HTTP con status 502, 503 o 504.
-     * En el ultimo intento fallido relanza la excepcion original.
+     * y respuestas HTTP con status 429, 502, 503 o 504. Un 429 espera lo que indique Retry-After
+     * (hasta MAX_RETRY_AFTER_MS) en lugar del backoff.
+     * En el ultimo intento fallido relanza la excepcion original. Antes de cada intento se comprueba
+     * el plazo de la operacion y la interrupcion del hilo; una espera que no cabe en el plazo no se hace.
      */
-    private CloseableHttpResponse executeWithRetry(Callable<CloseableHttpResponse> action) throws IOException {
+    private CloseableHttpResponse executeWithRetry(HttpRequestBase request, Callable<CloseableHttpResponse> action) throws IOException {
         final int maxAttempts = 3;
         IOException lastException = null;
 
         for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            OperationDeadline.checkpoint(request.getMethod() + " " + request.getURI());
+            long waitMs;
             try {
                 CloseableHttpResponse response = action.call();
                 int status = response.getStatusLine().getStatusCode();
-                if (status == 502 || status == 503 || status == 504) {
+                if (status == 429 || status == 502 || status == 503 || status == 504) {
+                    long retryAfterNanos = status == 429 ? RateLimitingHttpClientAdapter.retryAfterNanos(response) : -1;
                     response.close();
                     if (attempt < maxAttempts) {
                         LOG.warn("Koha returned HTTP {0} (transient error). Reintento {1} de {2}.", status, attempt + 1, maxAttempts);
-                        sleepBackoff(attempt);
-                        continue;
+                        waitMs = retryAfterNanos >= 0
+                                ? Math.min(MAX_RETRY_AFTER_MS, TimeUnit.NANOSECONDS.toMillis(retryAfterNanos))
+                                : backoffMillis(attempt);
                     } else {
                         // Ultimo intento: devolver la respuesta para que processResponseErrors la maneje
                         // Necesitamos re-ejecutar para obtener una respuesta fresca
                         return action.call();
                     }
+                } else {
+                    return response;
                 }
-                return response;
             } catch (SocketTimeoutException | ConnectTimeoutException | HttpHostConnectException e) {
                 lastException = e;
                 if (attempt < maxAttempts) {
                     LOG.warn("Error transitorio de red ({0}). Reintento {1} de {2}.", e.getClass().getSimpleName(), attempt + 1, maxAttempts);
-                    sleepBackoff(attempt);
+                    waitMs = backoffMillis(attempt);
                 } else {
                     LOG.error(e, "Error transitorio de red persistente tras {0} intentos.", maxAttempts);
                     throw e;
@@ -182,18 +368,31 @@ public abstract class AbstractKohaService {
                 }
                 throw new IOException("Error inesperado ejecutando peticion HTTP: " + e.getMessage(), e);
             }
+            sleepBeforeRetry(waitMs, request);
         }
 
         // No deberia llegar aqui, pero por seguridad
         throw lastException != null ? lastException : new IOException("Fallo inesperado en executeWithRetry.");
     }
 
-    private void sleepBackoff(int attempt) {
-        long waitMs = (long) Math.pow(2, attempt - 1) * 1000L; // 1s, 2s
+    private static long backoffMillis(int attempt) {
+        return (long) Math.pow(2, attempt - 1) * 1000L; // 1s, 2s
+    }
+
+    /**
+     * Espera antes de reintentar. Una interrupcion corta la operacion (sin reintentar) y conserva el estado
+     * de interrupcion; si la espera no cabe en el plazo de la operacion, falla ya en lugar de esperar en vano.
+     */
+    private void sleepBeforeRetry(long waitMs, HttpRequestBase request) {
+        if (TimeUnit.MILLISECONDS.toNanos(waitMs) >= OperationDeadline.remainingNanos()) {
+            throw OperationDeadline.expired("reintentar " + request.getMethod() + " " + request.getURI()
+                    + " (espera de " + waitMs + " ms)");
+        }
         try {
             Thread.sleep(waitMs);
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrumpido esperando para reintentar " + request.getMethod() + " " + request.getURI(), ie);
         }
     }
 
@@ -286,17 +485,21 @@ public abstract class AbstractKohaService {
     }
 
     protected HttpResult callRequestFull(HttpRequestBase request) throws ConnectorException, IOException {
+        return callRequestFull(request, "full", JSONTokener::nextValue);
+    }
+
+    /**
+     * Como {@link #callRequestFull(HttpRequestBase)}, pero el cuerpo lo interpreta {@code parser} directamente
+     * desde el tokenizador (p. ej. a registros compactos, sin JSONObject intermedio). {@code readerKind}
+     * distingue el tipo de resultado al agrupar peticiones idénticas.
+     */
+    protected HttpResult callRequestFull(HttpRequestBase request, String readerKind, Function<JSONTokener, Object> parser) throws ConnectorException, IOException {
         request.setHeader("Accept", "application/json");
         request.setHeader("Accept-Encoding", "gzip");
-
-        LOG.ok("Executing {0} request to {1}", request.getMethod(), request.getURI());
-
-        try (CloseableHttpResponse response = executeWithRetry(() -> httpClient.execute(request))) {
-            processResponseErrors(response, request);
-
+        return executeCoalesced(request, readerKind, (response, body) -> {
             // Extract X-Total-Count header
             Integer totalCount = null;
-            org.apache.http.Header totalCountHeader = response.getFirstHeader("X-Total-Count");
+            Header totalCountHeader = response.getFirstHeader("X-Total-Count");
             if (totalCountHeader != null) {
                 try {
                     totalCount = Integer.parseInt(totalCountHeader.getValue());
@@ -304,50 +507,29 @@ public abstract class AbstractKohaService {
                     LOG.warn("Invalid X-Total-Count header value: {0}", totalCountHeader.getValue());
                 }
             }
+            return new HttpResult(readBody(body, parser), totalCount);
+        }, result -> new HttpResult(copyParsed(result.getJson()), result.getTotalCount()));
+    }
 
-            HttpEntity entity = response.getEntity();
-            if (entity == null) {
-                return new HttpResult("", totalCount);
-            }
-            InputStream inputStream = entity.getContent();
-            Header contentEncoding = entity.getContentEncoding();
-            if (contentEncoding != null && "gzip".equalsIgnoreCase(contentEncoding.getValue())) {
-                inputStream = new GZIPInputStream(inputStream);
-            }
-            java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-            int nRead;
-            byte[] data = new byte[4096];
-            while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
-            }
-            buffer.flush();
-            String responseBodyString = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
-            LOG.ok("Response {0} {1}: {2} chars", request.getMethod(), request.getURI(), responseBodyString.length());
-            return new HttpResult(responseBodyString, totalCount);
-        } catch (HttpHostConnectException e) {
-            throw new ConnectionFailedException("Connection to Koha service at '" + serviceAddress + "' failed. Details: " + e.getMessage(), e);
-        } catch (SocketTimeoutException e) {
-            throw new ConnectionFailedException("Connection to Koha service timed out for request to '" + request.getURI() + "'. Details: " + e.getMessage(), e);
-        } catch (ClientProtocolException e) {
-            throw new ConnectorIOException("HTTP protocol error during request to '" + request.getURI() + "'. Details: " + e.getMessage(), e);
-        } catch (IOException e) {
-            throw new ConnectorIOException("IO error during request to '" + request.getURI() + "'. Details: " + e.getMessage(), e);
-        }
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        /** @param body Cuerpo ya descomprimido y limitado, o null si la respuesta no tiene entidad. */
+        T read(CloseableHttpResponse response, InputStream body) throws IOException;
     }
 
     /**
-     * Wrapper for HTTP response body and selected headers.
+     * Wrapper for the parsed HTTP response body (JSONObject, JSONArray, the custom parser's result or null) and selected headers.
      */
     protected static class HttpResult {
-        private final String body;
+        private final Object json;
         private final Integer totalCount;
 
-        public HttpResult(String body, Integer totalCount) {
-            this.body = body;
+        public HttpResult(Object json, Integer totalCount) {
+            this.json = json;
             this.totalCount = totalCount;
         }
 
-        public String getBody() { return body; }
+        public Object getJson() { return json; }
         public Integer getTotalCount() { return totalCount; }
     }
 }
@@ -24,12 +24,10 @@ import java.util.List;
 public class CategoryService extends AbstractKohaService {
 
     private static final Log LOG = Log.getLog(CategoryService.class);
-    private final KohaConfiguration configuration;
     // API_BASE_PATH and ENDPOINT are handled by AbstractKohaService now
 
     public CategoryService(HttpClientAdapter httpClient, String serviceAddress, KohaConfiguration configuration) {
-        super(httpClient, serviceAddress);
-        this.configuration = configuration;
+        super(httpClient, serviceAddress, configuration);
     }
 
     @Override
@@ -46,21 +44,20 @@ public class CategoryService extends AbstractKohaService {
 
     public JSONObject getCategory(String uid) throws ConnectorException, IOException {
         HttpGet request = new HttpGet(getBaseUrl() + "/" + uid);
-        String responseBody = callRequest(request); // Inherited
-        try {
-            if (StringUtil.isBlank(responseBody)) {
-                 // Consistent with getPatron, if callRequest returns empty for 200/204.
-                return new JSONObject();
-            }
-            return new JSONObject(responseBody);
-        } catch (JSONException e) {
-            throw new ConnectorException("Failed to parse JSON response for getCategory UID " + uid + ". Response: " + responseBody, e);
+        Object json = callRequestJson(request); // Inherited
+        if (json == null) {
+            // Consistent with getPatron, if the response has no body for 200/204.
+            return new JSONObject();
+        }
+        if (!(json instanceof JSONObject)) {
+            throw new ConnectorException("Unexpected JSON response for getCategory UID " + uid + ": expected an object.");
         }
+        return (JSONObject) json;
     }
 
     public JSONArray searchCategories(KohaFilter filter, OperationOptions opts) throws ConnectorException, IOException {
         JSONArray allResults = new JSONArray();
-        int pageSize = (opts != null && opts.getPageSize() != null) ? opts.getPageSize() : configuration.getPageSize();
+        int pageSize = (opts != null && opts.getPageSize() != null && opts.getPageSize() > 0) ? opts.getPageSize() : configuration.getPageSize();
         int currentPage = 1;
         int pageCount = 0;
         final int MAX_PAGES = 1000;
@@ -68,6 +65,7 @@ public class CategoryService extends AbstractKohaService {
         String fullUrl = ""; // For logging
 
         do {
+            OperationDeadline.checkpoint("pedir la página " + currentPage + " de categorías");
             List<String> queryParams = new ArrayList<>();
             queryParams.add("_per_page=" + pageSize);
             queryParams.add("_page=" + currentPage);
@@ -81,33 +79,16 @@ public class CategoryService extends AbstractKohaService {
             HttpGet request = new HttpGet(fullUrl);
             LOG.info("CATEGORY_SEARCH: URL: {0}", request.getURI()); // Changed from LOG.ok
 
-            AbstractKohaService.HttpResult httpResult = callRequestFull(request); // Inherited
-            String response = httpResult.getBody();
+            AbstractKohaService.HttpResult httpResult;
+            try (RequestLane.Scope ignored = RequestLane.enter(RequestLane.BULK)) {
+                httpResult = callRequestFull(request); // Inherited
+            }
             JSONArray pageResults;
-
-            if (StringUtil.isBlank(response)) {
-                pageResults = new JSONArray();
-            } else {
-                try {
-                    // Koha's category search usually returns a direct array.
-                    // However, to be safe and consistent with PatronService's potential single object response:
-                    if (response.trim().startsWith("{")) {
-                         JSONObject responseObject = new JSONObject(response);
-                         // Check if the response has a "patron_categories" array, common in some paginated Koha responses
-                         if (responseObject.has("patron_categories") && responseObject.get("patron_categories") instanceof JSONArray) {
-                            pageResults = responseObject.getJSONArray("patron_categories");
-                         } else {
-                            pageResults = new JSONArray();
-                            pageResults.put(responseObject);
-                         }
-                    } else if (response.trim().startsWith("[")) {
-                        pageResults = new JSONArray(response);
-                    } else {
-                        throw new JSONException("Response is neither a JSON object nor a JSON array.");
-                    }
-                } catch (JSONException e) {
-                     throw new ConnectorException("Respuesta JSON inválida de Koha al buscar categorías. URL: " + fullUrl + ", Response: " + response, e);
-                }
+            try {
+                // Koha's category search usually returns a direct array, but a wrapped or single object is also accepted.
+                pageResults = toResultArray(httpResult.getJson(), "patron_categories");
+            } catch (JSONException e) {
+                throw new ConnectorException("Respuesta JSON inválida de Koha al buscar categorías. URL: " + fullUrl, e);
             }
 
             if (pageResults.length() > 0) {
@@ -139,4 +120,19 @@ public class CategoryService extends AbstractKohaService {
         return allResults;
     }
 
+    /**
+     * Devuelve todos los códigos de categoría (patron_category_id) definidos en Koha.
+     */
+    public List<String> listCategoryIds() throws ConnectorException, IOException {
+        List<String> ids = new ArrayList<>();
+        JSONArray categories = searchCategories(null, null);
+        for (int i = 0; i < categories.length(); i++) {
+            JSONObject category = categories.optJSONObject(i);
+            if (category != null && StringUtil.isNotBlank(category.optString("patron_category_id", null))) {
+                ids.add(category.getString("patron_category_id"));
+            }
+        }
+        return ids;
+    }
+
 }
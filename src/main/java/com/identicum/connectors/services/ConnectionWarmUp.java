@@ -0,0 +1,146 @@
+package com.identicum.connectors.services;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calentamiento de una instancia recién inicializada, en segundo plano para no bloquear {@code init()}:
+ * resuelve el host, obtiene el token OAuth2, abre {@code connections} conexiones keep-alive en el pool
+ * (peticiones mínimas simultáneas, una por conexión) y construye el esquema.
+ * <p>
+ * Cada paso es opcional en la práctica: un fallo se registra y el siguiente paso continúa, porque la
+ * primera operación real repetirá lo que falte.
+ */
+public class ConnectionWarmUp implements Runnable {
+
+    private static final Log LOG = Log.getLog(ConnectionWarmUp.class);
+    private static final long CONNECTIONS_TIMEOUT_SECONDS = 30;
+
+    /** Paso de calentamiento que puede fallar. */
+    @FunctionalInterface
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    /** Petición mínima que ocupa una conexión del pool; {@code index} permite que las peticiones no se agrupen. */
+    @FunctionalInterface
+    public interface ConnectionProbe {
+        void open(int index) throws Exception;
+    }
+
+    private final String serviceAddress;
+    private final int connections;
+    private final String executionMode;
+    private final Step authenticate;
+    private final ConnectionProbe probe;
+    private final Runnable prebuild;
+    private final AtomicInteger openedConnections = new AtomicInteger();
+
+    public ConnectionWarmUp(String serviceAddress, int connections, String executionMode,
+                            Step authenticate, ConnectionProbe probe, Runnable prebuild) {
+        this.serviceAddress = serviceAddress;
+        this.connections = connections;
+        this.executionMode = executionMode;
+        this.authenticate = authenticate;
+        this.probe = probe;
+        this.prebuild = prebuild;
+    }
+
+    /**
+     * Lanza el calentamiento en un hilo daemon y devuelve su Future (cancelable desde {@code dispose()}).
+     */
+    public Future<?> start() {
+        ExecutorService executor = KohaExecutors.newExecutor(executionMode, "koha-warmup", 1);
+        try {
+            return executor.submit(this);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public void run() {
+        long startNanos = System.nanoTime();
+        resolveHost();
+        if (Thread.currentThread().isInterrupted()) return;
+        runStep("token", authenticate);
+        if (Thread.currentThread().isInterrupted()) return;
+        openConnections();
+        if (Thread.currentThread().isInterrupted()) return;
+        if (prebuild != null) {
+            runStep("esquema", prebuild::run);
+        }
+        LOG.info("WARM_UP: {0} de {1} conexiones abiertas en {2} ms", openedConnections.get(), connections,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    public int getOpenedConnections() {
+        return openedConnections.get();
+    }
+
+    private void resolveHost() {
+        try {
+            String host = URI.create(serviceAddress).getHost();
+            if (host != null) {
+                InetAddress[] addresses = InetAddress.getAllByName(host);
+                LOG.ok("WARM_UP: {0} resuelto a {1} direcciones", host, addresses.length);
+            }
+        } catch (Exception e) {
+            LOG.warn("WARM_UP: no se pudo resolver {0}: {1}", serviceAddress, e.getMessage());
+        }
+    }
+
+    private void runStep(String name, Step step) {
+        if (step == null) return;
+        try {
+            step.run();
+            LOG.ok("WARM_UP: paso {0} completado", name);
+        } catch (Exception e) {
+            LOG.warn("WARM_UP: falló el paso {0}: {1}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Las peticiones esperan en una barrera y salen a la vez para que cada una tome su propia conexión.
+     */
+    private void openConnections() {
+        if (connections <= 0 || probe == null) return;
+        ExecutorService executor = KohaExecutors.newExecutor(executionMode, "koha-warmup-conn", connections);
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                final int index = i;
+                futures.add(executor.submit(() -> {
+                    gate.await();
+                    probe.open(index);
+                    openedConnections.incrementAndGet();
+                    return null;
+                }));
+            }
+            gate.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CONNECTIONS_TIMEOUT_SECONDS);
+            for (Future<?> future : futures) {
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    LOG.ok("WARM_UP: conexión no abierta: {0}", e.getMessage());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
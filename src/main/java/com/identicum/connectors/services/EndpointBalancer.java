@@ -0,0 +1,289 @@
+package com.identicum.connectors.services;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Balanceo en el cliente entre los nodos de la API de Koha declarados en serviceAddress (separados por comas).
+ * <p>
+ * Selección: {@link #LEAST_OUTSTANDING} elige el nodo con menos peticiones en vuelo; {@link #POWER_OF_TWO}
+ * (por defecto) compara sólo dos nodos al azar, lo que evita que todas las instancias carguen a la vez el
+ * mismo nodo "menos ocupado". A igualdad de peticiones en vuelo gana la menor latencia media (EWMA).
+ * <p>
+ * Salud pasiva: {@link #FAILURE_THRESHOLD} fallos seguidos (error de E/S o 502/503/504) expulsan el nodo
+ * durante ejectionSeconds, duplicándose en cada sonda fallida. La latencia no expulsa: una única media
+ * mezcla páginas de búsqueda y lecturas puntuales, y un nodo sano que sirve más páginas parecería lento.
+ * <p>
+ * Salud activa: al vencer la expulsión el nodo no vuelve directamente al reparto; {@link #dueForProbe()}
+ * lo entrega para una sonda barata y sólo {@link #probeSucceeded(Node)} lo readmite.
+ * Si todos los nodos están expulsados se usa el que antes sale de la expulsión: mejor intentar que fallar sin probar.
+ */
+public final class EndpointBalancer {
+
+    private static final Log LOG = Log.getLog(EndpointBalancer.class);
+
+    public static final String POWER_OF_TWO = "POWER_OF_TWO";
+    public static final String LEAST_OUTSTANDING = "LEAST_OUTSTANDING";
+
+    static final int FAILURE_THRESHOLD = 3;
+    private static final int MAX_EJECTION_MULTIPLIER = 8;
+    private static final double EWMA_ALPHA = 0.2;
+
+    /** Estado de salud compartido por toda la JVM: ConnId mantiene varias instancias del conector por destino. */
+    private static final ConcurrentMap<String, EndpointBalancer> INSTANCES = new ConcurrentHashMap<>();
+
+    private final List<Node> nodes;
+    private final boolean powerOfTwo;
+    private final long ejectionNanos;
+    private final LongSupplier clock;
+    private final Random random;
+
+    EndpointBalancer(List<String> addresses, String strategy, long ejectionNanos, LongSupplier clock, Random random) {
+        List<Node> built = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            built.add(new Node(address));
+        }
+        this.nodes = Collections.unmodifiableList(built);
+        this.powerOfTwo = !LEAST_OUTSTANDING.equalsIgnoreCase(strategy);
+        this.ejectionNanos = ejectionNanos;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * Balanceador compartido para la misma lista de nodos y los mismos parámetros.
+     */
+    public static EndpointBalancer forInstance(List<String> addresses, String strategy, int ejectionSeconds) {
+        String key = String.join(",", addresses) + "#" + strategy + "#" + ejectionSeconds;
+        return INSTANCES.computeIfAbsent(key, k -> new EndpointBalancer(addresses, strategy,
+                TimeUnit.SECONDS.toNanos(Math.max(1, ejectionSeconds)), System::nanoTime, null));
+    }
+
+    /**
+     * Nodos declarados en serviceAddress, sin espacios ni barra final y sin duplicados.
+     */
+    public static List<String> parseAddresses(String serviceAddress) {
+        List<String> addresses = new ArrayList<>();
+        if (serviceAddress == null) {
+            return addresses;
+        }
+        for (String part : serviceAddress.split(",")) {
+            String address = part.trim();
+            while (address.endsWith("/")) {
+                address = address.substring(0, address.length() - 1);
+            }
+            if (!address.isEmpty() && !addresses.contains(address)) {
+                addresses.add(address);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Primer nodo de serviceAddress: identifica la instancia y sirve el endpoint de token OAuth2.
+     */
+    public static String primaryAddress(String serviceAddress) {
+        List<String> addresses = parseAddresses(serviceAddress);
+        return addresses.isEmpty() ? serviceAddress : addresses.get(0);
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return true si algún nodo está en servicio (no expulsado).
+     */
+    public boolean hasAvailable() {
+        for (Node node : nodes) {
+            if (node.ejectedUntil == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Elige el nodo para la siguiente petición y la cuenta como en vuelo;
+     * el llamador debe cerrarla con {@link #release(Node, long, boolean)}.
+     */
+    public Node choose() {
+        List<Node> available = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node.ejectedUntil == 0) {
+                available.add(node);
+            }
+        }
+        Node chosen;
+        if (available.isEmpty()) {
+            chosen = soonestBack();
+        } else if (available.size() == 1) {
+            chosen = available.get(0);
+        } else if (powerOfTwo) {
+            int first = nextInt(available.size());
+            int second = nextInt(available.size() - 1);
+            if (second >= first) {
+                second++;
+            }
+            chosen = better(available.get(first), available.get(second));
+        } else {
+            chosen = available.get(0);
+            for (int i = 1; i < available.size(); i++) {
+                chosen = better(chosen, available.get(i));
+            }
+        }
+        chosen.outstanding.incrementAndGet();
+        return chosen;
+    }
+
+    /**
+     * Registra el resultado de una petición servida por {@code node}.
+     *
+     * @param elapsedNanos Tiempo hasta recibir la respuesta.
+     * @param failed       true si el nodo no respondió o respondió 502/503/504.
+     */
+    public void release(Node node, long elapsedNanos, boolean failed) {
+        node.outstanding.decrementAndGet();
+        if (failed) {
+            if (node.consecutiveFailures.incrementAndGet() >= FAILURE_THRESHOLD) {
+                eject(node, FAILURE_THRESHOLD + " fallos consecutivos");
+            }
+            return;
+        }
+        node.consecutiveFailures.set(0);
+        long previous = node.ewmaNanos;
+        node.ewmaNanos = previous == 0 ? elapsedNanos : (long) (previous + EWMA_ALPHA * (elapsedNanos - previous));
+    }
+
+    /**
+     * Cierra una petición que no llegó a completarse por causas del llamador (abortada por el watchdog,
+     * hilo interrumpido o plazo de la operación vencido): no dice nada de la salud ni de la latencia del nodo.
+     */
+    public void abandon(Node node) {
+        node.outstanding.decrementAndGet();
+    }
+
+    /**
+     * Nodos cuya expulsión ha vencido y necesitan una sonda; quedan marcados para que sólo un llamador los pruebe.
+     * Una sonda que no informa en ejectionSeconds (p. ej. instancia cerrada a mitad) se vuelve a ofrecer.
+     */
+    public List<Node> dueForProbe() {
+        long now = clock.getAsLong();
+        List<Node> due = new ArrayList<>();
+        for (Node node : nodes) {
+            synchronized (node) {
+                if (node.ejectedUntil == 0 || now - node.ejectedUntil < 0) {
+                    continue;
+                }
+                if (node.probeStartedAt != 0 && now - node.probeStartedAt < ejectionNanos) {
+                    continue;
+                }
+                node.probeStartedAt = now;
+                due.add(node);
+            }
+        }
+        return due;
+    }
+
+    public void probeSucceeded(Node node) {
+        synchronized (node) {
+            node.ejectedUntil = 0;
+            node.probeStartedAt = 0;
+            node.ejections = 0;
+            node.ewmaNanos = 0;
+            node.consecutiveFailures.set(0);
+        }
+        LOG.info("LOAD_BALANCER: nodo {0} readmitido tras la sonda", node.address);
+    }
+
+    public void probeFailed(Node node) {
+        synchronized (node) {
+            node.probeStartedAt = 0;
+            node.ejectedUntil = 0;
+        }
+        eject(node, "sonda fallida");
+    }
+
+    private void eject(Node node, String reason) {
+        long duration;
+        synchronized (node) {
+            if (node.ejectedUntil != 0) {
+                return;
+            }
+            duration = ejectionNanos * Math.min(1L << Math.min(node.ejections, 30), MAX_EJECTION_MULTIPLIER);
+            node.ejections++;
+            long until = clock.getAsLong() + duration;
+            node.ejectedUntil = until == 0 ? 1 : until;
+            node.consecutiveFailures.set(0);
+        }
+        LOG.warn("LOAD_BALANCER: nodo {0} expulsado {1} s ({2})", node.address, TimeUnit.NANOSECONDS.toSeconds(duration), reason);
+    }
+
+    private Node soonestBack() {
+        long now = clock.getAsLong();
+        Node soonest = nodes.get(0);
+        for (Node node : nodes) {
+            if (node.ejectedUntil - now < soonest.ejectedUntil - now) {
+                soonest = node;
+            }
+        }
+        return soonest;
+    }
+
+    private static Node better(Node a, Node b) {
+        int byOutstanding = Integer.compare(a.outstanding.get(), b.outstanding.get());
+        if (byOutstanding != 0) {
+            return byOutstanding < 0 ? a : b;
+        }
+        return b.ewmaNanos < a.ewmaNanos ? b : a;
+    }
+
+    private int nextInt(int bound) {
+        return random != null ? random.nextInt(bound) : ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    /**
+     * Nodo de la API y su estado de salud.
+     */
+    public static final class Node {
+        private final String address;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long ewmaNanos;
+        /** Instante (nanoTime) en que vence la expulsión; 0 si el nodo está en servicio. */
+        private volatile long ejectedUntil;
+        private long probeStartedAt;
+        private int ejections;
+
+        private Node(String address) {
+            this.address = address;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public boolean isEjected() {
+            return ejectedUntil != 0;
+        }
+
+        @Override
+        public String toString() {
+            return address;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.KohaConfiguration;
+import org.apache.http.client.methods.HttpGet;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Servicio de solo lectura para los tipos de atributo extendido de patrones (/extended_attribute_types).
+ * No se expone como ObjectClass; define los atributos ext_&lt;código&gt; del esquema.
+ */
+public class ExtendedAttributeTypeService extends AbstractKohaService {
+
+    private static final Log LOG = Log.getLog(ExtendedAttributeTypeService.class);
+    private static final int PAGE_SIZE = 1000;
+
+    public ExtendedAttributeTypeService(HttpClientAdapter httpClient, String serviceAddress, KohaConfiguration configuration) {
+        super(httpClient, serviceAddress, configuration);
+    }
+
+    @Override
+    protected String getEndpoint() {
+        return "/extended_attribute_types";
+    }
+
+    @Override
+    protected String getResourceName() {
+        return "extended attribute type";
+    }
+
+    /**
+     * Devuelve todas las definiciones de tipos de atributo extendido.
+     */
+    public List<JSONObject> listTypes() throws ConnectorException, IOException {
+        List<JSONObject> types = new ArrayList<>();
+        int currentPage = 1;
+        boolean moreResults;
+        do {
+            HttpGet request = new HttpGet(getBaseUrl() + "?_per_page=" + PAGE_SIZE + "&_page=" + currentPage);
+            AbstractKohaService.HttpResult httpResult = callRequestFull(request);
+            JSONArray pageResults;
+            try {
+                pageResults = toResultArray(httpResult.getJson(), "extended_attribute_types");
+            } catch (JSONException e) {
+                throw new ConnectorException("Respuesta JSON inválida de Koha al listar tipos de atributo extendido. URL: " + request.getURI(), e);
+            }
+            for (int i = 0; i < pageResults.length(); i++) {
+                JSONObject type = pageResults.optJSONObject(i);
+                if (type != null) {
+                    types.add(type);
+                }
+            }
+            if (httpResult.getTotalCount() != null) {
+                moreResults = types.size() < httpResult.getTotalCount() && pageResults.length() > 0;
+            } else {
+                moreResults = pageResults.length() == PAGE_SIZE;
+            }
+            currentPage++;
+        } while (moreResults);
+        LOG.ok("EXTENDED_ATTRIBUTE_TYPE_LIST: {0} tipos encontrados", types.size());
+        return types;
+    }
+}
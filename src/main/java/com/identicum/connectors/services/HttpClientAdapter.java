@@ -7,7 +7,16 @@ import java.io.Closeable;
 import java.io.IOException;
 
 /**
- * Simple adapter interface over Apache HttpClient to allow mocking in tests.
+ * Transporte HTTP hacia la API de Koha. Lo implementan {@link DefaultHttpClientAdapter} (Apache HttpClient)
+ * y {@code JdkHttpClientAdapter} (java.net.http, desde Java 11), y lo decoran
+ * {@link LoadBalancingHttpClientAdapter}, {@link PriorityHttpClientAdapter} y
+ * {@link RateLimitingHttpClientAdapter}. {@code KohaAuthenticator} crea el transporte y {@code KohaConnector}
+ * lo envuelve con los decoradores que activa la configuración.
+ * <p>
+ * Quien llama a {@link #execute(HttpUriRequest)} debe cerrar la respuesta devuelta (try-with-resources):
+ * así vuelve la conexión al pool, y los decoradores que reservan un turno por petición (la franja de
+ * {@link PriorityHttpClientAdapter}) lo mantienen hasta ese cierre. Una respuesta sin cerrar deja el turno
+ * y la conexión ocupados.
  */
 public interface HttpClientAdapter extends Closeable {
     CloseableHttpResponse execute(HttpUriRequest request) throws IOException;
@@ -0,0 +1,37 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.KohaAuthenticator;
+import com.identicum.connectors.KohaConfiguration;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.identityconnectors.framework.common.exceptions.ConfigurationException;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+
+/**
+ * Transporte sobre java.net.http.HttpClient (HTTP/2).
+ * <p>
+ * Esta es la versión para Java 8: el JAR es multi-release y en Java 11+ se carga la implementación
+ * real desde {@code META-INF/versions/11}. En Java 8 seleccionar el transporte JDK es un error de configuración.
+ */
+public class JdkHttpClientAdapter implements HttpClientAdapter {
+
+    public JdkHttpClientAdapter(KohaAuthenticator authenticator, KohaConfiguration configuration, SSLContext sslContext) {
+        throw requiresJava11();
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        throw requiresJava11();
+    }
+
+    private static ConfigurationException requiresJava11() {
+        return new ConfigurationException("transportBackend=JDK requiere Java 11 o superior (versión actual: "
+                + System.getProperty("java.version") + "). Use APACHE4.");
+    }
+
+    @Override
+    public void close() {
+    }
+}
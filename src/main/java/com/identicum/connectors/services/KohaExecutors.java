@@ -0,0 +1,66 @@
+package com.identicum.connectors.services;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fábrica de ejecutores para la concurrencia interna del conector (búsquedas particionadas,
+ * prefetch, operaciones masivas).
+ * <p>
+ * En modo {@link #VIRTUAL} y sobre Java 21+ se usa un hilo virtual por tarea; en JVMs anteriores
+ * (o en modo {@link #PLATFORM}) un pool fijo de hilos daemon. Como con hilos virtuales el número de
+ * hilos deja de acotar las peticiones en vuelo, éstas se limitan con un semáforo por host de Koha.
+ */
+public final class KohaExecutors {
+
+    private static final Log LOG = Log.getLog(KohaExecutors.class);
+
+    public static final String PLATFORM = "PLATFORM";
+    public static final String VIRTUAL = "VIRTUAL";
+
+    /** Semáforos compartidos por toda la JVM: ConnId mantiene varias instancias del conector por host. */
+    private static final ConcurrentMap<String, Semaphore> HOST_PERMITS = new ConcurrentHashMap<>();
+
+    private KohaExecutors() {
+    }
+
+    public static boolean isVirtual(String executionMode) {
+        return VIRTUAL.equalsIgnoreCase(executionMode);
+    }
+
+    /**
+     * @param executionMode   PLATFORM o VIRTUAL (null equivale a PLATFORM).
+     * @param namePrefix      Prefijo del nombre de los hilos.
+     * @param platformThreads Tamaño del pool cuando se usan hilos de plataforma.
+     */
+    public static ExecutorService newExecutor(String executionMode, String namePrefix, int platformThreads) {
+        if (isVirtual(executionMode)) {
+            ExecutorService virtualExecutor = VirtualThreads.newExecutor(namePrefix);
+            if (virtualExecutor != null) {
+                return virtualExecutor;
+            }
+            LOG.warn("executionMode=VIRTUAL requiere Java 21 (actual: {0}); se usa un pool de {1} hilos de plataforma",
+                    System.getProperty("java.version"), platformThreads);
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, platformThreads), r -> {
+            Thread t = new Thread(r, namePrefix + "-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Semáforo que limita las peticiones simultáneas hacia un host de Koha. Se comparte entre
+     * instancias con la misma dirección y el mismo límite.
+     */
+    public static Semaphore hostPermits(String serviceAddress, int permits) {
+        return HOST_PERMITS.computeIfAbsent(serviceAddress + "#" + permits, key -> new Semaphore(permits, true));
+    }
+}
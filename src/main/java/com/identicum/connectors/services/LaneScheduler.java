@@ -0,0 +1,113 @@
+package com.identicum.connectors.services;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Planificador de dos carriles para las peticiones hacia Koha.
+ * <p>
+ * Hay {@code capacity} peticiones simultáneas; {@code reservedInteractive} de ellas sólo las puede usar el carril
+ * {@link RequestLane#INTERACTIVE}, de modo que una reconciliación nunca ocupa toda la capacidad. Además, mientras
+ * haya peticiones interactivas esperando, ninguna petición BULK nueva empieza. Se comparte por destino, como los
+ * permisos por host, porque la reconciliación y la operación interactiva suelen venir de instancias distintas.
+ */
+public final class LaneScheduler {
+
+    private static final ConcurrentMap<String, LaneScheduler> INSTANCES = new ConcurrentHashMap<>();
+
+    private final int capacity;
+    private final int bulkLimit;
+    private final Map<RequestLane, WaitStats> stats = new EnumMap<>(RequestLane.class);
+    private int inFlight;
+    private int bulkInFlight;
+    private int interactiveWaiting;
+
+    LaneScheduler(int capacity, int reservedInteractive) {
+        this.capacity = Math.max(1, capacity);
+        this.bulkLimit = Math.max(1, this.capacity - Math.max(0, reservedInteractive));
+        for (RequestLane lane : RequestLane.values()) {
+            stats.put(lane, new WaitStats());
+        }
+    }
+
+    public static LaneScheduler forInstance(String scope, int capacity, int reservedInteractive) {
+        return INSTANCES.computeIfAbsent(scope + "#" + capacity + "#" + reservedInteractive,
+                key -> new LaneScheduler(capacity, reservedInteractive));
+    }
+
+    /**
+     * Espera turno en el carril indicado.
+     *
+     * @return Nanosegundos de espera en cola.
+     */
+    public long acquire(RequestLane lane) throws InterruptedException {
+        try {
+            return acquire(lane, Long.MAX_VALUE);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e); // sin plazo no hay timeout
+        }
+    }
+
+    /**
+     * Espera turno en el carril indicado como mucho {@code timeoutNanos} ({@link Long#MAX_VALUE}: sin límite).
+     *
+     * @return Nanosegundos de espera en cola.
+     * @throws TimeoutException si no hubo turno dentro del plazo.
+     */
+    public synchronized long acquire(RequestLane lane, long timeoutNanos) throws InterruptedException, TimeoutException {
+        long startNanos = System.nanoTime();
+        boolean interactive = lane == RequestLane.INTERACTIVE;
+        if (interactive) {
+            interactiveWaiting++;
+        }
+        try {
+            while (!canStart(interactive)) {
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    wait();
+                    continue;
+                }
+                long remaining = timeoutNanos - (System.nanoTime() - startNanos);
+                if (remaining <= 0) {
+                    throw new TimeoutException("Sin turno en el carril " + lane + " tras "
+                            + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } finally {
+            if (interactive) {
+                interactiveWaiting--;
+                notifyAll();
+            }
+        }
+        inFlight++;
+        if (!interactive) {
+            bulkInFlight++;
+        }
+        long waited = System.nanoTime() - startNanos;
+        stats.get(lane).record(waited);
+        return waited;
+    }
+
+    public synchronized void release(RequestLane lane) {
+        inFlight--;
+        if (lane == RequestLane.BULK) {
+            bulkInFlight--;
+        }
+        notifyAll();
+    }
+
+    private boolean canStart(boolean interactive) {
+        if (inFlight >= capacity) {
+            return false;
+        }
+        return interactive || (interactiveWaiting == 0 && bulkInFlight < bulkLimit);
+    }
+
+    public WaitStats getStats(RequestLane lane) {
+        return stats.get(lane);
+    }
+}
@@ -0,0 +1,83 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.KohaConfiguration;
+import org.apache.http.client.methods.HttpGet;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Servicio de solo lectura para las Bibliotecas de Koha (/libraries).
+ * No se expone como ObjectClass; se usa como dato de referencia del conector.
+ */
+public class LibraryService extends AbstractKohaService {
+
+    private static final Log LOG = Log.getLog(LibraryService.class);
+    private static final int PAGE_SIZE = 1000;
+
+    public LibraryService(HttpClientAdapter httpClient, String serviceAddress, KohaConfiguration configuration) {
+        super(httpClient, serviceAddress, configuration);
+    }
+
+    @Override
+    protected String getEndpoint() {
+        return "/libraries";
+    }
+
+    @Override
+    protected String getResourceName() {
+        return "library";
+    }
+
+    /**
+     * Petición mínima para abrir una conexión durante el calentamiento. Va contra /libraries, una tabla
+     * pequeña: sobre /patrons Koha calcularía X-Total-Count recorriendo toda la tabla de socios. Cada índice
+     * pide una página distinta para que las peticiones simultáneas no se agrupen en una sola.
+     */
+    public void warmUpConnection(int index) throws ConnectorException, IOException {
+        HttpGet request = new HttpGet(getBaseUrl() + "?_per_page=1&_page=" + (index + 1));
+        request.setHeader("Accept", "application/json");
+        callRequest(request);
+    }
+
+    /**
+     * Devuelve todos los library_id definidos en Koha.
+     */
+    public List<String> listLibraryIds() throws ConnectorException, IOException {
+        List<String> ids = new ArrayList<>();
+        int currentPage = 1;
+        boolean moreResults;
+        do {
+            OperationDeadline.checkpoint("pedir la página " + currentPage + " de bibliotecas");
+            HttpGet request = new HttpGet(getBaseUrl() + "?_per_page=" + PAGE_SIZE + "&_page=" + currentPage);
+            AbstractKohaService.HttpResult httpResult = callRequestFull(request);
+            JSONArray pageResults;
+            try {
+                pageResults = toResultArray(httpResult.getJson(), "libraries");
+            } catch (JSONException e) {
+                throw new ConnectorException("Respuesta JSON inválida de Koha al listar bibliotecas. URL: " + request.getURI(), e);
+            }
+            for (int i = 0; i < pageResults.length(); i++) {
+                JSONObject library = pageResults.optJSONObject(i);
+                if (library != null && StringUtil.isNotBlank(library.optString("library_id", null))) {
+                    ids.add(library.getString("library_id"));
+                }
+            }
+            if (httpResult.getTotalCount() != null) {
+                moreResults = ids.size() < httpResult.getTotalCount() && pageResults.length() > 0;
+            } else {
+                moreResults = pageResults.length() == PAGE_SIZE;
+            }
+            currentPage++;
+        } while (moreResults);
+        LOG.ok("LIBRARY_LIST: {0} bibliotecas encontradas", ids.size());
+        return ids;
+    }
+}
@@ -0,0 +1,73 @@
+package com.identicum.connectors.services;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream que corta la lectura al superar un número máximo de bytes,
+ * para que una respuesta anómala de Koha no se cargue completa en memoria.
+ * Un límite menor o igual a cero desactiva el control.
+ */
+class LimitedInputStream extends FilterInputStream {
+
+    private final long limit;
+    private long bytesRead;
+
+    LimitedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            count(skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long n) throws ResponseTooLargeException {
+        bytesRead += n;
+        if (limit > 0 && bytesRead > limit) {
+            throw new ResponseTooLargeException(limit);
+        }
+    }
+
+    /**
+     * Señala que la respuesta superó maxResponseSizeMB.
+     */
+    static class ResponseTooLargeException extends IOException {
+        ResponseTooLargeException(long limit) {
+            super("La respuesta de Koha supera el tamaño máximo permitido (" + limit + " bytes, maxResponseSizeMB).");
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.identicum.connectors.services;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.identityconnectors.common.logging.Log;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decorador de transporte que reparte las peticiones entre los nodos de un {@link EndpointBalancer}.
+ * <p>
+ * Los servicios construyen las URL sobre el nodo principal; aquí se sustituye esa base por la del nodo
+ * elegido (también en los reintentos, que reutilizan la petición). Las respuestas 502/503/504 y los errores
+ * de E/S cuentan como fallo del nodo; cualquier otra respuesta, aunque sea un error de Koha, como éxito.
+ * Una petición abortada (watchdog), con el hilo interrumpido o con el plazo de la operación vencido no cuenta
+ * ni como fallo ni como éxito: la corta el llamador, no el nodo.
+ * <p>
+ * Con réplicas de lectura, GET y HEAD van al balanceador de lectura y el resto al de escritura (principal).
+ * Las lecturas de un {@code /patrons/{id}} escrito dentro de la ventana de {@link RecentWrites}, las hechas
+ * durante una escritura ({@link PrimaryReads}) o con todas las réplicas expulsadas van también al principal.
+ */
+public class LoadBalancingHttpClientAdapter implements HttpClientAdapter {
+
+    private static final Log LOG = Log.getLog(LoadBalancingHttpClientAdapter.class);
+    /** Sonda barata: una biblioteca, tabla pequeña; cualquier respuesta por debajo de 500 indica nodo vivo. */
+    private static final String PROBE_PATH = "/api/v1/libraries?_per_page=1";
+    private static final Pattern PATRON_PATH = Pattern.compile("/api/v1/patrons/(\\d+)(?:[/?].*)?$");
+
+    private final HttpClientAdapter delegate;
+    private final EndpointBalancer balancer;
+    private final EndpointBalancer readBalancer;
+    private final RecentWrites recentWrites;
+    private final ExecutorService probeExecutor;
+
+    public LoadBalancingHttpClientAdapter(HttpClientAdapter delegate, EndpointBalancer balancer, String executionMode) {
+        this(delegate, balancer, null, null, executionMode);
+    }
+
+    /**
+     * @param readBalancer Réplicas de lectura; null envía todo a {@code balancer}.
+     * @param recentWrites Ventana read-your-writes; null la desactiva.
+     */
+    public LoadBalancingHttpClientAdapter(HttpClientAdapter delegate, EndpointBalancer balancer, EndpointBalancer readBalancer,
+                                          RecentWrites recentWrites, String executionMode) {
+        this.delegate = delegate;
+        this.balancer = balancer;
+        this.readBalancer = readBalancer;
+        this.recentWrites = recentWrites;
+        this.probeExecutor = KohaExecutors.newExecutor(executionMode, "koha-health", 1);
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        launchProbes(balancer);
+        if (readBalancer != null) {
+            launchProbes(readBalancer);
+        }
+        String relative = request instanceof HttpRequestBase ? relativeTo(request.getURI()) : null;
+        if (relative == null) {
+            return delegate.execute(request);
+        }
+        boolean read = isRead(request.getMethod());
+        EndpointBalancer target = read && useReplica(relative) ? readBalancer : balancer;
+        EndpointBalancer.Node node = target.choose();
+        ((HttpRequestBase) request).setURI(URI.create(node.getAddress() + relative));
+        long startNanos = System.nanoTime();
+        boolean failed = true;
+        CloseableHttpResponse response = null;
+        try {
+            response = delegate.execute(request);
+            failed = isNodeFailure(response.getStatusLine().getStatusCode());
+            return response;
+        } finally {
+            if (failed && abandonedByCaller(request)) {
+                target.abandon(node);
+            } else {
+                target.release(node, System.nanoTime() - startNanos, failed);
+            }
+            if (!read && recentWrites != null) {
+                recordWrite(relative, response);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        probeExecutor.shutdownNow();
+        delegate.close();
+    }
+
+    static boolean isNodeFailure(int statusCode) {
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    private static boolean abandonedByCaller(HttpUriRequest request) {
+        return request.isAborted() || Thread.currentThread().isInterrupted() || OperationDeadline.isExpired();
+    }
+
+    private static boolean isRead(String method) {
+        return "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method);
+    }
+
+    private boolean useReplica(String relative) {
+        if (readBalancer == null || !readBalancer.hasAvailable()) {
+            return false;
+        }
+        if (PrimaryReads.isRequired()) {
+            LOG.ok("LOAD_BALANCER: lectura dentro de una escritura, se envía al principal");
+            return false;
+        }
+        if (recentWrites != null) {
+            String patronId = patronIdOf(relative);
+            if (patronId != null && recentWrites.isRecent(patronId)) {
+                LOG.ok("LOAD_BALANCER: lectura del patrón {0} escrito recientemente, se envía al principal", patronId);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * El id del patrón escrito sale de la ruta (PATCH, PUT, DELETE y subrecursos) o, en un alta, de la cabecera Location.
+     * Se registra aunque la escritura falle o no responda: pudo aplicarse en el principal igualmente.
+     */
+    private void recordWrite(String relative, CloseableHttpResponse response) {
+        String patronId = patronIdOf(relative);
+        if (patronId == null && response != null) {
+            Header location = response.getFirstHeader("Location");
+            if (location != null) {
+                try {
+                    patronId = patronIdOf(URI.create(location.getValue()).getPath());
+                } catch (IllegalArgumentException e) {
+                    LOG.ok("LOAD_BALANCER: cabecera Location no válida: {0}", location.getValue());
+                }
+            }
+        }
+        if (patronId != null) {
+            recentWrites.record(patronId);
+        }
+    }
+
+    static String patronIdOf(String path) {
+        if (path == null) {
+            return null;
+        }
+        Matcher matcher = PATRON_PATH.matcher(path);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Parte de la URI posterior a la base de cualquiera de los nodos, o null si no apunta a ninguno.
+     */
+    private String relativeTo(URI uri) {
+        String text = uri.toString();
+        String relative = relativeTo(text, balancer);
+        return relative != null || readBalancer == null ? relative : relativeTo(text, readBalancer);
+    }
+
+    private static String relativeTo(String text, EndpointBalancer nodes) {
+        for (EndpointBalancer.Node node : nodes.getNodes()) {
+            String address = node.getAddress();
+            if (text.startsWith(address)
+                    && (text.length() == address.length() || text.charAt(address.length()) == '/' || text.charAt(address.length()) == '?')) {
+                return text.substring(address.length());
+            }
+        }
+        return null;
+    }
+
+    private void launchProbes(EndpointBalancer target) {
+        for (EndpointBalancer.Node node : target.dueForProbe()) {
+            try {
+                probeExecutor.execute(() -> probe(target, node));
+            } catch (RejectedExecutionException e) {
+                LOG.ok("LOAD_BALANCER: sonda de {0} no lanzada, adaptador cerrado", node);
+            }
+        }
+    }
+
+    private void probe(EndpointBalancer target, EndpointBalancer.Node node) {
+        boolean healthy;
+        try (CloseableHttpResponse response = delegate.execute(new HttpGet(node.getAddress() + PROBE_PATH))) {
+            healthy = response.getStatusLine().getStatusCode() < 500;
+            EntityUtils.consumeQuietly(response.getEntity());
+        } catch (Exception e) {
+            LOG.ok("LOAD_BALANCER: sonda de {0} fallida: {1}", node, e.getMessage());
+            healthy = false;
+        }
+        if (healthy) {
+            target.probeSucceeded(node);
+        } else {
+            target.probeFailed(node);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.identicum.connectors.services;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tabla hash long -> long de direccionamiento abierto (sondeo lineal) almacenada fuera del heap en
+ * un ByteBuffer directo: cada entrada ocupa 16 bytes y no genera objetos para el GC.
+ * <p>
+ * La clave 0 marca un hueco libre, por lo que se sustituye internamente por otra constante.
+ * Las bajas usan desplazamiento hacia atrás (sin lápidas). No es thread-safe.
+ */
+final class OffHeapLongLongMap {
+
+    static final long MISSING = Long.MIN_VALUE;
+
+    private static final int SLOT_BYTES = 16;
+    private static final long ZERO_KEY_SUBSTITUTE = 0x9E3779B97F4A7C15L;
+    private static final int MAX_CAPACITY = 1 << 26; // 1 GB fuera del heap
+    private static final double LOAD_FACTOR = 0.75;
+
+    private ByteBuffer table;
+    private int capacity;
+    private int size;
+
+    OffHeapLongLongMap(int expectedEntries) {
+        int initial = 16;
+        while (initial * LOAD_FACTOR < expectedEntries && initial < MAX_CAPACITY) {
+            initial <<= 1;
+        }
+        allocate(initial);
+    }
+
+    long get(long key) {
+        key = normalize(key);
+        int mask = capacity - 1;
+        for (int slot = indexFor(key); ; slot = (slot + 1) & mask) {
+            long current = keyAt(slot);
+            if (current == 0L) {
+                return MISSING;
+            }
+            if (current == key) {
+                return valueAt(slot);
+            }
+        }
+    }
+
+    void put(long key, long value) {
+        if (size + 1 > capacity * LOAD_FACTOR) {
+            resize();
+        }
+        key = normalize(key);
+        int mask = capacity - 1;
+        for (int slot = indexFor(key); ; slot = (slot + 1) & mask) {
+            long current = keyAt(slot);
+            if (current == 0L) {
+                write(slot, key, value);
+                size++;
+                return;
+            }
+            if (current == key) {
+                write(slot, key, value);
+                return;
+            }
+        }
+    }
+
+    void remove(long key) {
+        key = normalize(key);
+        int mask = capacity - 1;
+        int slot = indexFor(key);
+        while (true) {
+            long current = keyAt(slot);
+            if (current == 0L) {
+                return;
+            }
+            if (current == key) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Desplazar hacia atrás las entradas siguientes del mismo grupo para no dejar huecos en su sondeo
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (true) {
+            long nextKey = keyAt(next);
+            if (nextKey == 0L) {
+                break;
+            }
+            int home = indexFor(nextKey);
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                write(hole, nextKey, valueAt(next));
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        write(hole, 0L, 0L);
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Bytes reservados fuera del heap. */
+    long offHeapBytes() {
+        return (long) capacity * SLOT_BYTES;
+    }
+
+    void clear() {
+        allocate(16);
+    }
+
+    private void resize() {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("OffHeapLongLongMap lleno (" + size + " entradas)");
+        }
+        ByteBuffer old = table;
+        int oldCapacity = capacity;
+        allocate(capacity << 1);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long key = old.getLong(slot * SLOT_BYTES);
+            if (key != 0L) {
+                put(key, old.getLong(slot * SLOT_BYTES + 8));
+            }
+        }
+    }
+
+    private void allocate(int newCapacity) {
+        table = ByteBuffer.allocateDirect(newCapacity * SLOT_BYTES);
+        capacity = newCapacity;
+        size = 0;
+    }
+
+    private int indexFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (capacity - 1);
+    }
+
+    private static long normalize(long key) {
+        return key == 0L ? ZERO_KEY_SUBSTITUTE : key;
+    }
+
+    private long keyAt(int slot) {
+        return table.getLong(slot * SLOT_BYTES);
+    }
+
+    private long valueAt(int slot) {
+        return table.getLong(slot * SLOT_BYTES + 8);
+    }
+
+    private void write(int slot, long key, long value) {
+        table.putLong(slot * SLOT_BYTES, key);
+        table.putLong(slot * SLOT_BYTES + 8, value);
+    }
+}
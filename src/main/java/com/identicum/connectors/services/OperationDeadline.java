@@ -0,0 +1,121 @@
+package com.identicum.connectors.services;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plazo de la operación del conector en curso en el hilo actual (en {@link System#nanoTime()}).
+ * {@code KohaConnector} lo abre con {@link #start(long)} al entrar en cada operación de ConnId y los servicios
+ * lo consultan antes de cada petición, reintento, espera de turno y página. Los hilos auxiliares (búsqueda
+ * particionada) heredan el plazo con {@link #enter(Long)}.
+ */
+public final class OperationDeadline {
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private OperationDeadline() {
+    }
+
+    /**
+     * Abre un plazo de {@code timeoutMillis} para las llamadas del hilo actual hasta cerrar el ámbito devuelto.
+     * Un plazo exterior más cercano se conserva; 0 o menos no añade plazo.
+     */
+    public static Scope start(long timeoutMillis) {
+        Long outer = CURRENT.get();
+        if (timeoutMillis <= 0) {
+            return enter(outer);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        return enter(outer != null && outer - deadline < 0 ? outer : deadline);
+    }
+
+    /**
+     * @return El plazo del hilo actual en nanoTime, o null si no hay.
+     */
+    public static Long current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Fija el plazo (capturado con {@link #current()} en otro hilo) hasta cerrar el ámbito devuelto.
+     */
+    public static Scope enter(Long deadline) {
+        Long previous = CURRENT.get();
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * @return Nanosegundos restantes (0 si ya venció), o {@link Long#MAX_VALUE} sin plazo.
+     */
+    public static long remainingNanos() {
+        Long deadline = CURRENT.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    public static boolean isExpired() {
+        return remainingNanos() == 0;
+    }
+
+    /**
+     * Punto de corte entre peticiones y páginas: si el hilo fue interrumpido (tarea suspendida o cancelada)
+     * o el plazo venció, lanza la excepción en lugar de seguir.
+     *
+     * @param what Qué iba a hacerse, para el mensaje.
+     */
+    public static void checkpoint(String what) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new ConnectorIOException("Operación cancelada (hilo interrumpido) antes de " + what,
+                    new InterruptedIOException(what));
+        }
+        if (isExpired()) {
+            throw expired(what);
+        }
+    }
+
+    /**
+     * El fallo es del hilo que ejecutaba y no de la petición: su plazo venció o fue interrumpido
+     * (el vigilante aborta la petición en ambos casos).
+     */
+    static boolean failedOnlyForThisThread(Exception e) {
+        return e instanceof OperationTimeoutException || isExpired() || Thread.currentThread().isInterrupted();
+    }
+
+    public static OperationTimeoutException expired(String what) {
+        return new OperationTimeoutException("Plazo de la operación agotado antes de " + what);
+    }
+
+    /**
+     * Traduce el fallo de una petición cortada por el plazo a {@link OperationTimeoutException}.
+     */
+    public static ConnectorException onFailure(ConnectorException e, String what) {
+        if (e instanceof OperationTimeoutException || !isExpired()) {
+            return e;
+        }
+        return new OperationTimeoutException("Plazo de la operación agotado durante " + what, e);
+    }
+
+    /** Ámbito de {@link #start(long)} y {@link #enter(Long)}; para try-with-resources. */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
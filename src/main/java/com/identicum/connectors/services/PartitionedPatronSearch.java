@@ -0,0 +1,138 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.KohaFilter;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Búsqueda completa de patrones particionada por category_id o library_id.
+ * Cada partición se pagina en un hilo del pool acotado; los resultados se entregan
+ * al consumidor desde el hilo llamante a través de una cola acotada, de modo que el
+ * ResultsHandler de midPoint se sigue invocando en serie.
+ * <p>
+ * En modo de ejecución VIRTUAL todas las particiones se recorren a la vez, cada una en un hilo
+ * virtual; la concurrencia real hacia Koha la acota el semáforo por host.
+ */
+public class PartitionedPatronSearch {
+
+    private static final Log LOG = Log.getLog(PartitionedPatronSearch.class);
+    private static final long OFFER_TIMEOUT_MS = 100L;
+
+    /** Marcador de fin de partición. */
+    private static final JSONObject END_OF_SHARD = new JSONObject();
+
+    private final PatronService patronService;
+    private final int parallelism;
+    private final int queueCapacity;
+    private final String executionMode;
+
+    public PartitionedPatronSearch(PatronService patronService, int parallelism, int queueCapacity) {
+        this(patronService, parallelism, queueCapacity, KohaExecutors.PLATFORM);
+    }
+
+    public PartitionedPatronSearch(PatronService patronService, int parallelism, int queueCapacity, String executionMode) {
+        this.patronService = patronService;
+        this.parallelism = Math.max(1, parallelism);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * @param shardField  "category_id" o "library_id".
+     * @param shardValues Valores de la partición (códigos de categoría o biblioteca).
+     * @param baseFilter  Filtro original (puede ser null); se copia para cada partición.
+     */
+    public void search(String shardField, List<String> shardValues, KohaFilter baseFilter,
+                       OperationOptions opts, Predicate<JSONObject> consumer) throws ConnectorException, IOException {
+        if (shardValues.isEmpty()) {
+            LOG.info("PARTITIONED_SEARCH: sin particiones para {0}, no hay resultados", shardField);
+            return;
+        }
+        int workers = Math.min(parallelism, shardValues.size());
+        LOG.info("PARTITIONED_SEARCH: {0} particiones por {1} con {2} hilos (modo {3})",
+                shardValues.size(), shardField, workers, executionMode);
+
+        BlockingQueue<JSONObject> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        ExecutorService executor = KohaExecutors.newExecutor(executionMode, "koha-shard", workers);
+        Long deadline = OperationDeadline.current();
+
+        try {
+            for (String shardValue : shardValues) {
+                KohaFilter shardFilter = baseFilter != null ? baseFilter.copy() : new KohaFilter();
+                if ("library_id".equals(shardField)) {
+                    shardFilter.setByLibraryId(shardValue);
+                } else {
+                    shardFilter.setByCategoryId(shardValue);
+                }
+                executor.execute(() -> {
+                    try (OperationDeadline.Scope ignored = OperationDeadline.enter(deadline)) {
+                        patronService.searchPatrons(shardFilter, opts, patron -> offer(queue, patron, failure));
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        offer(queue, END_OF_SHARD, null);
+                    }
+                });
+            }
+
+            int pendingShards = shardValues.size();
+            while (pendingShards > 0 && failure.get() == null) {
+                OperationDeadline.checkpoint("recibir resultados de " + pendingShards + " particiones");
+                JSONObject next = queue.poll(OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    continue;
+                }
+                if (next == END_OF_SHARD) {
+                    pendingShards--;
+                } else if (!consumer.test(next)) {
+                    LOG.ok("PARTITIONED_SEARCH: el consumidor detuvo la búsqueda");
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Búsqueda particionada interrumpida", e);
+        } finally {
+            executor.shutdownNow();
+            queue.clear();
+        }
+
+        Exception error = failure.get();
+        if (error != null) {
+            if (error instanceof ConnectorException) throw (ConnectorException) error;
+            if (error instanceof IOException) throw (IOException) error;
+            throw ConnectorException.wrap(error);
+        }
+    }
+
+    /**
+     * Entrega un elemento a la cola sin bloquear indefinidamente: si el hilo del pool es
+     * interrumpido (búsqueda detenida o fallida) se corta la paginación de esa partición.
+     */
+    private static boolean offer(BlockingQueue<JSONObject> queue, JSONObject item, AtomicReference<Exception> failure) {
+        try {
+            while (!queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                if (Thread.currentThread().isInterrupted() || (failure != null && failure.get() != null)) {
+                    return false;
+                }
+            }
+            return !Thread.currentThread().isInterrupted();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
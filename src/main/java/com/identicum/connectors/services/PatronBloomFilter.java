@@ -0,0 +1,191 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.mappers.PatronFingerprintCache;
+import org.identityconnectors.common.logging.Log;
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom sobre los cardnumber y userid existentes en Koha, usado antes de crear un patrón:
+ * si el filtro descarta ambos valores el alta va directa al POST; si alguno "podría existir" se
+ * comprueba con una consulta puntual.
+ * <p>
+ * El filtro solo puede descartar duplicados cuando conoce todos los patrones, por eso se considera
+ * {@link #isComplete() completo} únicamente tras una búsqueda completa terminada. Los patrones
+ * creados fuera del conector después de esa búsqueda siguen detectándose por el error de Koha.
+ * <p>
+ * El tamaño inicial es solo una estimación: si al terminar una búsqueda completa el filtro está
+ * saturado (Koha tiene más patrones de los previstos y casi todo "podría existir"), se reconstruye
+ * con el tamaño estimado a partir de los bits ocupados y vuelve a necesitar una búsqueda completa.
+ */
+public class PatronBloomFilter {
+
+    private static final Log LOG = Log.getLog(PatronBloomFilter.class);
+
+    public static final String CARDNUMBER = "cardnumber";
+    public static final String USERID = "userid";
+
+    /** Se reconstruye cuando la tasa de falsos positivos estimada supera en este factor a la deseada. */
+    private static final double SATURATION_FACTOR = 5;
+
+    private static final ConcurrentMap<String, PatronBloomFilter> INSTANCES = new ConcurrentHashMap<>();
+
+    private final double falsePositiveRate;
+    private volatile Bits bits;
+    private volatile boolean complete;
+
+    /**
+     * @param expectedEntries       Valores esperados (dos por patrón).
+     * @param falsePositiveRate     Tasa de falsos positivos deseada para ese volumen.
+     */
+    PatronBloomFilter(long expectedEntries, double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+        this.bits = new Bits(expectedEntries, falsePositiveRate, 0);
+    }
+
+    /** Filtro compartido por toda la JVM para una instancia de Koha (dirección del servicio y credencial). */
+    public static PatronBloomFilter forInstance(String scope, long expectedPatrons) {
+        return INSTANCES.computeIfAbsent(scope, key -> new PatronBloomFilter(expectedPatrons * 2, 0.01));
+    }
+
+    /** Añade el cardnumber y el userid del patrón. */
+    public void add(JSONObject patron) {
+        add(CARDNUMBER, patron.optString(CARDNUMBER, null));
+        add(USERID, patron.optString(USERID, null));
+    }
+
+    public void add(String field, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        Bits current = bits;
+        long hash = hashOf(field, value);
+        for (int i = 0; i < current.hashFunctions; i++) {
+            current.set(current.bitIndex(hash, i));
+        }
+    }
+
+    /**
+     * @return false si el valor con seguridad no existe (solo fiable si {@link #isComplete()}); true si podría existir.
+     */
+    public boolean mightContain(String field, String value) {
+        Bits current = bits;
+        long hash = hashOf(field, value);
+        for (int i = 0; i < current.hashFunctions; i++) {
+            if (!current.get(current.bitIndex(hash, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generación actual de los bits; cambia cada vez que el filtro se reconstruye. Una búsqueda completa la
+     * lee al empezar y la pasa a {@link #markComplete(long)} al terminar.
+     */
+    public long generation() {
+        return bits.generation;
+    }
+
+    /**
+     * Marca el filtro como completo tras una búsqueda completa iniciada en la generación {@code generation}.
+     * Si entretanto se reconstruyó, la búsqueda no llenó los bits nuevos y no se marca. Si está saturado se
+     * reconstruye con el tamaño estimado y queda incompleto hasta la siguiente búsqueda completa.
+     *
+     * @return true si el filtro queda completo.
+     */
+    public synchronized boolean markComplete(long generation) {
+        Bits current = bits;
+        if (current.generation != generation) {
+            return false;
+        }
+        double estimatedRate = current.estimatedFalsePositiveRate();
+        if (estimatedRate > falsePositiveRate * SATURATION_FACTOR) {
+            long entries = Math.max(current.expectedEntries * 2, current.estimatedEntries() * 2);
+            LOG.warn("CREATE_PRECHECK: filtro de Bloom saturado (falsos positivos estimados {0}%, ~{1} valores para {2} previstos); se reconstruye para {3} valores",
+                    Math.round(estimatedRate * 100), current.estimatedEntries(), current.expectedEntries, entries);
+            complete = false;
+            bits = new Bits(entries, falsePositiveRate, current.generation + 1);
+            return false;
+        }
+        complete = true;
+        return true;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private static long hashOf(String field, String value) {
+        return PatronFingerprintCache.fingerprint(field + '\u0000' + value.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Array de bits dimensionado para un volumen; se sustituye entero al reconstruir el filtro.
+     */
+    private static final class Bits {
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashFunctions;
+        private final long expectedEntries;
+        private final long generation;
+
+        private Bits(long expectedEntries, double falsePositiveRate, long generation) {
+            long n = Math.max(1L, expectedEntries);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE, (m + 63) / 64);
+            this.words = new AtomicLongArray(wordCount);
+            this.bitCount = (long) wordCount * 64;
+            this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+            this.expectedEntries = n;
+            this.generation = generation;
+        }
+
+        private void set(long bit) {
+            int word = (int) (bit >>> 6);
+            long mask = 1L << (bit & 63);
+            long current;
+            do {
+                current = words.get(word);
+            } while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask));
+        }
+
+        private boolean get(long bit) {
+            return (words.get((int) (bit >>> 6)) & (1L << (bit & 63))) != 0;
+        }
+
+        /** Doble hashing (Kirsch-Mitzenmacher) a partir de las dos mitades de una huella de 64 bits. */
+        private long bitIndex(long hash, int i) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            long combined = (h1 + (long) i * h2) & Long.MAX_VALUE;
+            return combined % bitCount;
+        }
+
+        private double fillRatio() {
+            long set = 0;
+            for (int i = 0; i < words.length(); i++) {
+                set += Long.bitCount(words.get(i));
+            }
+            return (double) set / bitCount;
+        }
+
+        /** Probabilidad de que un valor nuevo encuentre sus k bits a 1. */
+        private double estimatedFalsePositiveRate() {
+            return Math.pow(fillRatio(), hashFunctions);
+        }
+
+        /** Valores distintos añadidos, estimados a partir de los bits a 1 (Swamidass y Baldi). */
+        private long estimatedEntries() {
+            double fill = fillRatio();
+            if (fill >= 1) {
+                return expectedEntries * 8;
+            }
+            return (long) Math.ceil(-(double) bitCount / hashFunctions * Math.log(1 - fill));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.mappers.PatronFingerprintCache;
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice de identidad userid / cardnumber -> patron_id para resolver localmente las búsquedas de
+ * correlación por igualdad. El email no se indexa: no es único en Koha y el índice solo conoce los
+ * patrones que el conector ha visto, así que no podría saber si un email tiene otros titulares.
+ * <p>
+ * Cada (campo, valor normalizado en minúsculas) se reduce a una huella de 64 bits y se guarda en una
+ * tabla fuera del heap, de modo que más de un millón de patrones no presionan al GC. Como la huella
+ * puede colisionar y el índice puede quedar desactualizado por cambios hechos fuera del conector,
+ * quien consulta debe comprobar el patrón devuelto y, si no coincide, llamar a {@link #forget}.
+ * Un valor compartido por varios patrones (datos desactualizados) se marca como ambiguo y no se
+ * resuelve localmente.
+ */
+public class PatronIdentityIndex {
+
+    public static final String USERID = "userid";
+    public static final String CARDNUMBER = "cardnumber";
+    private static final String[] FIELDS = {USERID, CARDNUMBER};
+
+    private static final long AMBIGUOUS = -1L;
+    private static final ConcurrentMap<String, PatronIdentityIndex> INSTANCES = new ConcurrentHashMap<>();
+
+    private final OffHeapLongLongMap table;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    PatronIdentityIndex(int expectedPatrons) {
+        this.table = new OffHeapLongLongMap(expectedPatrons * FIELDS.length);
+    }
+
+    /** Índice compartido por toda la JVM para una instancia de Koha (dirección del servicio y credencial). */
+    public static PatronIdentityIndex forInstance(String scope, int expectedPatrons) {
+        return INSTANCES.computeIfAbsent(scope, key -> new PatronIdentityIndex(expectedPatrons));
+    }
+
+    /** Indexa userid y cardnumber del patrón (los campos ausentes se ignoran). */
+    public void index(JSONObject patron) {
+        long patronId = patronIdOf(patron);
+        if (patronId < 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (String field : FIELDS) {
+                String value = patron.optString(field, null);
+                if (value != null && !value.isEmpty()) {
+                    long key = keyOf(field, value);
+                    long current = table.get(key);
+                    table.put(key, current == OffHeapLongLongMap.MISSING || current == patronId ? patronId : AMBIGUOUS);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return el patron_id candidato, o null si el valor no está indexado o es ambiguo.
+     */
+    public String lookup(String field, String value) {
+        lock.readLock().lock();
+        try {
+            long patronId = table.get(keyOf(field, value));
+            return patronId == OffHeapLongLongMap.MISSING || patronId == AMBIGUOUS ? null : String.valueOf(patronId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Elimina una entrada que resultó desactualizada o colisionada. */
+    public void forget(String field, String value) {
+        lock.writeLock().lock();
+        try {
+            table.remove(keyOf(field, value));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Comprueba que el patrón obtenido tiene realmente el valor buscado (comparación sin mayúsculas). */
+    public static boolean matches(JSONObject patron, String field, String value) {
+        String actual = patron != null ? patron.optString(field, null) : null;
+        return actual != null && actual.equalsIgnoreCase(value);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return table.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return table.offHeapBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long keyOf(String field, String value) {
+        return PatronFingerprintCache.fingerprint(field + '\u0000' + value.toLowerCase(Locale.ROOT));
+    }
+
+    private static long patronIdOf(JSONObject patron) {
+        Object rawId = patron.opt("patron_id");
+        if (rawId instanceof Number) {
+            return ((Number) rawId).longValue();
+        }
+        if (rawId instanceof String) {
+            try {
+                return Long.parseLong((String) rawId);
+            } catch (NumberFormatException e) {
+                return -1L;
+            }
+        }
+        return -1L;
+    }
+}
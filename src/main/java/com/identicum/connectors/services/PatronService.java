@@ -2,6 +2,8 @@ package com.identicum.connectors.services;
 
 import com.identicum.connectors.KohaConfiguration;
 import com.identicum.connectors.KohaFilter;
+import com.identicum.connectors.mappers.PatronMapper;
+import com.identicum.connectors.mappers.PatronRecord;
 import com.identicum.connectors.services.HttpClientAdapter;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
@@ -10,14 +12,23 @@ import org.apache.http.client.methods.HttpPatch;
 import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
 import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SortKey;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
@@ -26,11 +37,13 @@ import java.util.function.Predicate;
 public class PatronService extends AbstractKohaService {
 
     private static final Log LOG = Log.getLog(PatronService.class);
-    private final KohaConfiguration configuration;
+    /** Locks de escritura por patrón, o null si patronWriteLockStripes es 0. */
+    private final PatronWriteLocks writeLocks;
 
     public PatronService(HttpClientAdapter httpClient, String serviceAddress, KohaConfiguration configuration) {
-        super(httpClient, serviceAddress);
-        this.configuration = configuration;
+        super(httpClient, serviceAddress, configuration);
+        int stripes = configuration != null ? configuration.getPatronWriteLockStripes() : 0;
+        this.writeLocks = stripes > 0 ? PatronWriteLocks.forInstance(serviceAddress, stripes) : null;
     }
 
     @Override
@@ -46,15 +59,14 @@ public class PatronService extends AbstractKohaService {
     public JSONObject getPatron(String uid) throws ConnectorException, IOException {
         HttpGet request = new HttpGet(getBaseUrl() + "/" + uid);
         request.setHeader("x-koha-embed", "extended_attributes");
-        String responseBody = callRequest(request);
-        try {
-            if (StringUtil.isBlank(responseBody)) {
-                return new JSONObject();
-            }
-            return new JSONObject(responseBody);
-        } catch (JSONException e) {
-            throw new ConnectorException("Failed to parse JSON response for getPatron UID " + uid + ". Response: " + responseBody, e);
+        Object json = callRequestJson(request);
+        if (json == null) {
+            return new JSONObject();
+        }
+        if (!(json instanceof JSONObject)) {
+            throw new ConnectorException("Unexpected JSON response for getPatron UID " + uid + ": expected an object.");
         }
+        return (JSONObject) json;
     }
 
     public JSONObject createPatron(JSONObject payload) throws ConnectorException, IOException {
@@ -62,14 +74,151 @@ public class PatronService extends AbstractKohaService {
         return callRequestWithEntity(request, payload);
     }
 
+    /**
+     * PATCH del patrón, serializado con las demás escrituras del mismo patrón; con patchMergingEnabled
+     * se fusiona con los PATCH que esperan turno para ese patrón.
+     */
     public void updatePatron(String uid, JSONObject payload) throws ConnectorException, IOException {
+        if (writeLocks != null && configuration.getPatchMergingEnabled()) {
+            writeLocks.patch(uid, payload, merged -> sendPatch(uid, merged));
+            return;
+        }
+        writeLocked(uid, () -> {
+            sendPatch(uid, payload);
+            return null;
+        });
+    }
+
+    private void sendPatch(String uid, JSONObject payload) throws IOException {
         HttpPatch request = new HttpPatch(getBaseUrl() + "/" + uid);
         callRequestWithEntity(request, payload);
     }
 
     public void deletePatron(String uid) throws ConnectorException, IOException {
-        HttpDelete request = new HttpDelete(getBaseUrl() + "/" + uid);
-        callRequest(request);
+        writeLocked(uid, () -> callRequest(new HttpDelete(getBaseUrl() + "/" + uid)));
+    }
+
+    /**
+     * Ejecuta la escritura con el lock del patrón, si están activados. Sus lecturas van siempre al principal.
+     */
+    private <T> T writeLocked(String uid, PatronWriteLocks.WriteAction<T> action) throws IOException {
+        if (writeLocks != null) {
+            return writeLocks.withLock(uid, action);
+        }
+        try (PrimaryReads.Scope ignored = PrimaryReads.enter()) {
+            return action.run();
+        }
+    }
+
+    /**
+     * Obtiene los atributos extendidos de un patrón desde el sub-recurso
+     * /patrons/{id}/extended_attributes (incluye extended_attribute_id).
+     */
+    public JSONArray getExtendedAttributes(String uid) throws ConnectorException, IOException {
+        return readExtendedAttributes(uid, true);
+    }
+
+    /**
+     * @param coalesce false bajo el lock del patrón: un GET idéntico ya en vuelo pudo salir antes de la
+     *                 escritura anterior y devolver extended_attribute_id ya borrados.
+     */
+    private JSONArray readExtendedAttributes(String uid, boolean coalesce) throws IOException {
+        HttpGet request = new HttpGet(getBaseUrl() + "/" + uid + "/extended_attributes");
+        Object json = coalesce ? callRequestJson(request) : callRequestJsonUncoalesced(request);
+        if (json == null) {
+            return new JSONArray();
+        }
+        if (!(json instanceof JSONArray)) {
+            throw new ConnectorException("Unexpected JSON response for getExtendedAttributes UID " + uid + ": expected an array.");
+        }
+        return (JSONArray) json;
+    }
+
+    /**
+     * Agrega un único atributo extendido ({"type":"X","value":"Y"}) sin reemplazar el resto.
+     */
+    public void addExtendedAttribute(String uid, JSONObject extendedAttribute) throws ConnectorException, IOException {
+        HttpPost request = new HttpPost(getBaseUrl() + "/" + uid + "/extended_attributes");
+        writeLocked(uid, () -> callRequestWithEntity(request, extendedAttribute));
+    }
+
+    /**
+     * Elimina los atributos extendidos indicados (coincidencia por type y value).
+     * Los valores que no existen en Koha se ignoran.
+     *
+     * @return Número de atributos eliminados.
+     */
+    public int removeExtendedAttributes(String uid, List<JSONObject> toRemove) throws ConnectorException, IOException {
+        if (toRemove == null || toRemove.isEmpty()) {
+            return 0;
+        }
+        // Lectura y borrados bajo el mismo lock: otra escritura en medio invalidaría los extended_attribute_id leídos
+        return writeLocked(uid, () -> doRemoveExtendedAttributes(uid, toRemove));
+    }
+
+    private int doRemoveExtendedAttributes(String uid, List<JSONObject> toRemove) throws IOException {
+        JSONArray current = readExtendedAttributes(uid, false);
+        Set<Integer> consumed = new HashSet<>();
+        int removed = 0;
+        for (JSONObject target : toRemove) {
+            String type = target.optString("type", null);
+            String value = target.optString("value", "");
+            int match = -1;
+            for (int i = 0; i < current.length(); i++) {
+                JSONObject candidate = current.optJSONObject(i);
+                if (candidate == null || consumed.contains(i)) continue;
+                if (Objects.equals(type, candidate.optString("type", null))
+                        && value.equals(candidate.optString("value", ""))) {
+                    match = i;
+                    break;
+                }
+            }
+            if (match < 0) {
+                LOG.ok("Extended attribute of type {0} not present on patron {1}, nothing to remove", type, uid);
+                continue;
+            }
+            consumed.add(match);
+            Object attributeId = current.getJSONObject(match).opt("extended_attribute_id");
+            if (attributeId == null || JSONObject.NULL.equals(attributeId)) {
+                throw new ConnectorException("Koha did not return extended_attribute_id for type " + type + " on patron " + uid);
+            }
+            HttpDelete request = new HttpDelete(getBaseUrl() + "/" + uid + "/extended_attributes/" + attributeId);
+            callRequest(request);
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Deja el tipo {@code type} con exactamente los valores {@code values}: borra los sobrantes
+     * y agrega los que faltan, sin tocar los atributos extendidos de otros tipos.
+     *
+     * @return Número de atributos agregados o eliminados.
+     */
+    public int replaceExtendedAttributeValues(String uid, String type, List<String> values) throws ConnectorException, IOException {
+        return writeLocked(uid, () -> doReplaceExtendedAttributeValues(uid, type, values));
+    }
+
+    private int doReplaceExtendedAttributeValues(String uid, String type, List<String> values) throws IOException {
+        JSONArray current = readExtendedAttributes(uid, false);
+        List<String> missing = new ArrayList<>(values);
+        int changed = 0;
+        for (int i = 0; i < current.length(); i++) {
+            JSONObject candidate = current.optJSONObject(i);
+            if (candidate == null || !type.equals(candidate.optString("type", null))) continue;
+            if (missing.remove(candidate.optString("value", ""))) continue;
+            Object attributeId = candidate.opt("extended_attribute_id");
+            if (attributeId == null || JSONObject.NULL.equals(attributeId)) {
+                throw new ConnectorException("Koha did not return extended_attribute_id for type " + type + " on patron " + uid);
+            }
+            callRequest(new HttpDelete(getBaseUrl() + "/" + uid + "/extended_attributes/" + attributeId));
+            changed++;
+        }
+        for (String value : missing) {
+            addExtendedAttribute(uid, new JSONObject().put("type", type).put("value", value));
+            changed++;
+        }
+        return changed;
     }
 
     /**
@@ -81,79 +230,134 @@ public class PatronService extends AbstractKohaService {
         callRequest(request);
     }
 
-    public void searchPatrons(KohaFilter filter, OperationOptions opts, Predicate<JSONObject> consumer) throws ConnectorException, IOException {
-        int pageSize = (opts != null && opts.getPageSize() != null) ? opts.getPageSize() : configuration.getPageSize();
-        int currentPage = 1;
+    /**
+     * Cuenta los patrones que cumplen el filtro pidiendo una sola fila (_per_page=1)
+     * y leyendo la cabecera X-Total-Count.
+     *
+     * @return El total, o -1 si Koha no devolvió X-Total-Count.
+     */
+    public int countPatrons(KohaFilter filter) throws ConnectorException, IOException {
+        List<String> queryParams = new ArrayList<>();
+        queryParams.add("_per_page=1");
+        queryParams.add("_page=1");
+        queryParams.addAll(buildFilterParams(filter));
+        HttpGet request = new HttpGet(getBaseUrl() + "?" + String.join("&", queryParams));
+        LOG.info("PATRON_COUNT: URL: {0}", request.getURI());
+        AbstractKohaService.HttpResult httpResult = callRequestFull(request);
+        return httpResult.getTotalCount() != null ? httpResult.getTotalCount() : -1;
+    }
+
+    /**
+     * Recorre los patrones que cumplen el filtro y los entrega al consumidor.
+     * Si las opciones traen PagedResultsOffset (base 1) o PagedResultsCookie, solo se entrega
+     * una página de PageSize resultados a partir de esa posición; en caso contrario se recorren todas.
+     *
+     * @return Resultado con la cookie de la siguiente página y los resultados restantes (-1 si se desconoce).
+     */
+    public SearchResult searchPatrons(KohaFilter filter, OperationOptions opts, Predicate<JSONObject> consumer) throws ConnectorException, IOException {
+        return searchPatronPages(filter, opts, page -> {
+            for (int i = 0; i < page.size(); i++) {
+                if (!consumer.test(page.get(i))) {
+                    return i;
+                }
+            }
+            return page.size();
+        });
+    }
+
+    /**
+     * Como {@link #searchPatrons(KohaFilter, OperationOptions, Predicate)}, pero entrega cada página completa
+     * (ya recortada al offset y al límite) para que el consumidor pueda procesar sus elementos en paralelo.
+     */
+    public SearchResult searchPatronPages(KohaFilter filter, OperationOptions opts, PageConsumer<JSONObject> consumer) throws ConnectorException, IOException {
+        return searchPages(filter, opts, "full", JSONTokener::nextValue, this::toPatronList, consumer);
+    }
+
+    /**
+     * Como {@link #searchPatronPages}, pero cada patrón se lee del cuerpo directamente a un {@link PatronRecord}
+     * compacto, sin el JSONObject intermedio (compactPatronRecordsEnabled).
+     */
+    @SuppressWarnings("unchecked")
+    public SearchResult searchPatronRecords(KohaFilter filter, OperationOptions opts, PageConsumer<PatronRecord> consumer) throws ConnectorException, IOException {
+        return searchPages(filter, opts, "records", tokener -> PatronRecord.readList(tokener, "patrons"),
+                body -> body != null ? (List<PatronRecord>) body : Collections.emptyList(), consumer);
+    }
+
+    /**
+     * Recorrido paginado común: {@code parser} interpreta el cuerpo de cada página y {@code toPage} lo
+     * convierte en la lista de patrones de esa página.
+     */
+    private <P> SearchResult searchPages(KohaFilter filter, OperationOptions opts, String readerKind, Function<JSONTokener, Object> parser,
+                                         Function<Object, List<P>> toPage, PageConsumer<P> consumer) throws ConnectorException, IOException {
+        int pageSize = (opts != null && opts.getPageSize() != null && opts.getPageSize() > 0) ? opts.getPageSize() : configuration.getPageSize();
+        Integer startIndex = pagedStartIndex(opts);
+        int currentPage = startIndex == null ? 1 : startIndex / pageSize + 1;
+        int skip = startIndex == null ? 0 : startIndex % pageSize;
+        int limit = startIndex == null ? Integer.MAX_VALUE : pageSize;
         int pageCount = 0;
         int totalDelivered = 0;
+        Integer totalCount = null;
+        boolean lastPageFull = false;
         final int MAX_PAGES = 1000;
         boolean moreResults;
         String fullUrl;
+        List<String> filterParams = buildFilterParams(filter);
+        String orderBy = buildOrderByParam(opts);
+        if (orderBy != null) {
+            filterParams.add(orderBy);
+        }
+        RequestLane lane = laneFor(filter);
 
-        outer:
         do {
+            OperationDeadline.checkpoint("pedir la página " + currentPage + " de patrones");
             List<String> queryParams = new ArrayList<>();
             queryParams.add("_per_page=" + pageSize);
             queryParams.add("_page=" + currentPage);
-
-            if (filter != null) {
-                if (StringUtil.isNotBlank(filter.getByName())) queryParams.add("userid=" + urlEncodeUTF8(filter.getByName()));
-                if (StringUtil.isNotBlank(filter.getByEmail())) queryParams.add("email=" + urlEncodeUTF8(filter.getByEmail()));
-                if (filter.getByCardNumber() != null) queryParams.add("cardnumber=" + urlEncodeUTF8(filter.getByCardNumber()));
-                if (StringUtil.isNotBlank(filter.getByCategoryId())) queryParams.add("category_id=" + urlEncodeUTF8(filter.getByCategoryId()));
-                if (StringUtil.isNotBlank(filter.getByLibraryId())) queryParams.add("library_id=" + urlEncodeUTF8(filter.getByLibraryId()));
-                if (filter.getMatchType() != null && !"exact".equals(filter.getMatchType())) {
-                    queryParams.add("_match=" + urlEncodeUTF8(filter.getMatchType()));
-                }
-            }
+            queryParams.addAll(filterParams);
 
             fullUrl = getBaseUrl() + "?" + String.join("&", queryParams);
             HttpGet request = new HttpGet(fullUrl);
             request.setHeader("x-koha-embed", "extended_attributes");
             LOG.info("PATRON_SEARCH: URL: {0}", request.getURI());
 
-            AbstractKohaService.HttpResult httpResult = callRequestFull(request);
-            String response = httpResult.getBody();
-            JSONArray pageResults;
-
-            if (StringUtil.isBlank(response)) {
-                pageResults = new JSONArray();
-            } else {
-                try {
-                    if (response.trim().startsWith("{")) {
-                        JSONObject responseObject = new JSONObject(response);
-                        if (responseObject.has("patrons") && responseObject.get("patrons") instanceof JSONArray) {
-                            pageResults = responseObject.getJSONArray("patrons");
-                        } else {
-                            pageResults = new JSONArray();
-                            pageResults.put(responseObject);
-                        }
-                    } else if (response.trim().startsWith("[")) {
-                        pageResults = new JSONArray(response);
-                    } else {
-                        throw new JSONException("Response is neither a JSON object nor a JSON array.");
-                    }
-                } catch (JSONException e) {
-                    throw new ConnectorException("Respuesta JSON inválida de Koha al buscar patrones. URL: " + fullUrl + ", Response: " + response, e);
-                }
+            AbstractKohaService.HttpResult httpResult;
+            try (RequestLane.Scope ignored = RequestLane.enter(lane)) {
+                httpResult = callRequestFull(request, readerKind, parser);
+            }
+            List<P> pageResults;
+            try {
+                pageResults = toPage.apply(httpResult.getJson());
+            } catch (JSONException e) {
+                throw new ConnectorException("Respuesta JSON inválida de Koha al buscar patrones. URL: " + fullUrl, e);
+            }
+            if (httpResult.getTotalCount() != null) {
+                totalCount = httpResult.getTotalCount();
             }
+            lastPageFull = pageResults.size() == pageSize;
 
-            for (int i = 0; i < pageResults.length(); i++) {
-                try {
-                    JSONObject patron = pageResults.getJSONObject(i);
-                    if (!consumer.test(patron)) {
-                        break outer;
-                    }
-                    totalDelivered++;
-                } catch (JSONException e) {
-                    throw new ConnectorException("Error processing individual patron from search results. URL: " + fullUrl + ", Entry: " + pageResults.opt(i), e);
-                }
+            int end = (int) Math.min(pageResults.size(), (long) skip + limit - totalDelivered);
+            List<P> page = end > skip ? pageResults.subList(skip, end) : Collections.emptyList();
+            int accepted;
+            try {
+                accepted = page.isEmpty() ? 0 : consumer.accept(page);
+            } catch (JSONException e) {
+                throw new ConnectorException("Error processing patrons from search results. URL: " + fullUrl, e);
+            }
+            totalDelivered += accepted;
+            if (accepted < page.size()) {
+                break;
             }
+            skip = 0;
 
-            if (httpResult.getTotalCount() != null) {
-                moreResults = totalDelivered < httpResult.getTotalCount();
+            // Registros de Koha ya recorridos (incluye las páginas previas al offset solicitado)
+            int seen = (currentPage - 1) * pageSize + pageResults.size();
+            if (totalCount != null) {
+                moreResults = seen < totalCount;
             } else {
-                moreResults = pageResults.length() == pageSize;
+                moreResults = lastPageFull;
+            }
+            if (totalDelivered >= limit) {
+                moreResults = false;
             }
             pageCount++;
             if (pageCount >= MAX_PAGES) {
@@ -163,5 +367,112 @@ public class PatronService extends AbstractKohaService {
             if (moreResults) currentPage++;
 
         } while (moreResults);
+
+        if (startIndex == null) {
+            return new SearchResult();
+        }
+        int nextIndex = startIndex + totalDelivered;
+        if (totalCount != null) {
+            int remaining = Math.max(0, totalCount - nextIndex);
+            return new SearchResult(remaining > 0 ? String.valueOf(nextIndex + 1) : null, remaining);
+        }
+        return new SearchResult(lastPageFull ? String.valueOf(nextIndex + 1) : null, -1);
+    }
+
+    private List<JSONObject> toPatronList(Object json) {
+        JSONArray results = toResultArray(json, "patrons");
+        List<JSONObject> patrons = new ArrayList<>(results.length());
+        for (int i = 0; i < results.length(); i++) {
+            Object entry = results.opt(i);
+            if (!(entry instanceof JSONObject)) {
+                throw new JSONException("Entrada de patrón inválida en los resultados de búsqueda: " + entry);
+            }
+            patrons.add((JSONObject) entry);
+        }
+        return patrons;
+    }
+
+    /**
+     * Una búsqueda exacta por identificador (correlación de un alta o de un cambio de contraseña) es interactiva;
+     * el resto de búsquedas son recorridos y van al carril BULK.
+     */
+    static RequestLane laneFor(KohaFilter filter) {
+        if (filter == null || (filter.getMatchType() != null && !"exact".equals(filter.getMatchType()))) {
+            return RequestLane.BULK;
+        }
+        boolean byIdentifier = filter.getByUid() != null || filter.getByName() != null
+                || filter.getByEmail() != null || filter.getByCardNumber() != null;
+        return byIdentifier ? RequestLane.INTERACTIVE : RequestLane.BULK;
+    }
+
+    /**
+     * Posición inicial (base 0) de una búsqueda paginada, o null si se pide el recorrido completo.
+     * La cookie que devuelve el conector es el offset (base 1) de la siguiente página.
+     */
+    private Integer pagedStartIndex(OperationOptions opts) {
+        if (opts == null) {
+            return null;
+        }
+        if (StringUtil.isNotBlank(opts.getPagedResultsCookie())) {
+            try {
+                return Math.max(0, Integer.parseInt(opts.getPagedResultsCookie().trim()) - 1);
+            } catch (NumberFormatException e) {
+                throw new InvalidAttributeValueException("PagedResultsCookie inválida: " + opts.getPagedResultsCookie());
+            }
+        }
+        if (opts.getPagedResultsOffset() != null) {
+            return Math.max(0, opts.getPagedResultsOffset() - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Traduce las SortKeys de ConnId al parámetro _order_by de Koha: campos separados por coma,
+     * con prefijo "-" para orden descendente.
+     *
+     * @return El parámetro, o null si no se pidió orden.
+     * @throws InvalidAttributeValueException si algún atributo no se puede ordenar en Koha.
+     */
+    String buildOrderByParam(OperationOptions opts) {
+        SortKey[] sortKeys = opts != null ? opts.getSortKeys() : null;
+        if (sortKeys == null || sortKeys.length == 0) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        for (SortKey sortKey : sortKeys) {
+            String field = PatronMapper.sortFieldFor(sortKey.getField());
+            if (field == null) {
+                throw new InvalidAttributeValueException("No se puede ordenar por el atributo '" + sortKey.getField()
+                        + "': no tiene un campo equivalente en Koha para _order_by.");
+            }
+            fields.add((sortKey.isAscendingOrder() ? "" : "-") + urlEncodeUTF8(field));
+        }
+        return "_order_by=" + String.join(",", fields);
+    }
+
+    private List<String> buildFilterParams(KohaFilter filter) {
+        List<String> queryParams = new ArrayList<>();
+        if (filter != null) {
+            if (StringUtil.isNotBlank(filter.getByName())) queryParams.add("userid=" + urlEncodeUTF8(filter.getByName()));
+            if (StringUtil.isNotBlank(filter.getByEmail())) queryParams.add("email=" + urlEncodeUTF8(filter.getByEmail()));
+            if (filter.getByCardNumber() != null) queryParams.add("cardnumber=" + urlEncodeUTF8(filter.getByCardNumber()));
+            if (StringUtil.isNotBlank(filter.getByCategoryId())) queryParams.add("category_id=" + urlEncodeUTF8(filter.getByCategoryId()));
+            if (StringUtil.isNotBlank(filter.getByLibraryId())) queryParams.add("library_id=" + urlEncodeUTF8(filter.getByLibraryId()));
+            if (filter.getMatchType() != null) {
+                queryParams.add("_match=" + urlEncodeUTF8(filter.getMatchType()));
+            }
+        }
+        return queryParams;
+    }
+
+    /**
+     * Consumidor de una página de patrones.
+     */
+    @FunctionalInterface
+    public interface PageConsumer<P> {
+        /**
+         * @return Cuántos patrones de la página (desde el primero) aceptó; menos que {@code page.size()} detiene la búsqueda.
+         */
+        int accept(List<P> page);
     }
 }
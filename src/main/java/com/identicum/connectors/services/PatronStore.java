@@ -0,0 +1,395 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.mappers.PatronFingerprintCache;
+import org.identityconnectors.common.logging.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Almacén local y persistente de los últimos patrones vistos, para arranques en caliente y
+ * comparaciones sin conexión.
+ * <p>
+ * El fichero es un log de solo anexado: cada registro lleva longitud, CRC32, tipo (alta o baja) y
+ * el JSON del patrón. Las lecturas se hacen sobre un mapeo en memoria del fichero. Al abrirlo se
+ * recorre el log para reconstruir el índice por patron_id; una cola corrupta (escritura
+ * interrumpida) se trunca. Cuando los registros obsoletos superan a los vivos, {@link #flush()}
+ * compacta el fichero.
+ * <p>
+ * El fichero contiene datos personales en claro: se crea (y se restringe al abrirlo) con permisos
+ * solo para el propietario, con independencia del umask del proceso.
+ */
+public class PatronStore implements Closeable {
+
+    private static final Log LOG = Log.getLog(PatronStore.class);
+
+    private static final byte[] MAGIC = {'K', 'P', 'S', '1'};
+    private static final int RECORD_HEADER_BYTES = 9; // longitud (4) + CRC32 (4) + tipo (1)
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    private static final long COMPACTION_MIN_BYTES = 4L * 1024 * 1024;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private static final ConcurrentMap<Path, PatronStore> INSTANCES = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long fileSize;
+    private long liveBytes;
+    private long deadBytes;
+
+    private final Map<String, Slot> byPatronId = new HashMap<>();
+
+    PatronStore(Path path) throws IOException {
+        this.path = path;
+        load();
+    }
+
+    /**
+     * Abre (o reutiliza) el almacén del fichero indicado. Es compartido por toda la JVM:
+     * un mismo fichero no debe abrirse dos veces.
+     */
+    public static PatronStore open(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        PatronStore existing = INSTANCES.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (INSTANCES) {
+            existing = INSTANCES.get(key);
+            if (existing == null) {
+                existing = new PatronStore(key);
+                INSTANCES.put(key, existing);
+            }
+            return existing;
+        }
+    }
+
+    /**
+     * Guarda la versión actual de un patrón. Si su contenido no cambió no se escribe nada.
+     */
+    public synchronized void put(JSONObject patron) throws IOException {
+        String patronId = idOf(patron);
+        if (patronId == null) {
+            return;
+        }
+        long fingerprint = PatronFingerprintCache.fingerprint(patron);
+        Slot previous = byPatronId.get(patronId);
+        if (previous != null && previous.fingerprint == fingerprint) {
+            return;
+        }
+        long offset = append(TYPE_PUT, patron.toString().getBytes(StandardCharsets.UTF_8));
+        Slot slot = new Slot(offset, fileSize - offset, fingerprint);
+        replace(patronId, previous, slot);
+        liveBytes += slot.length;
+    }
+
+    /** Registra la baja de un patrón. */
+    public synchronized void remove(String patronId) throws IOException {
+        Slot previous = byPatronId.get(patronId);
+        if (previous == null) {
+            return;
+        }
+        long offset = append(TYPE_DELETE, patronId.getBytes(StandardCharsets.UTF_8));
+        replace(patronId, previous, null);
+        deadBytes += fileSize - offset;
+    }
+
+    public synchronized JSONObject get(String patronId) throws IOException {
+        Slot slot = byPatronId.get(patronId);
+        return slot != null ? readPatron(slot.offset) : null;
+    }
+
+    /** Huella del último contenido guardado para el patrón (ver {@link PatronFingerprintCache#fingerprint}), o null. */
+    public synchronized Long getFingerprint(String patronId) {
+        Slot slot = byPatronId.get(patronId);
+        return slot != null ? slot.fingerprint : null;
+    }
+
+    public synchronized int size() {
+        return byPatronId.size();
+    }
+
+    /**
+     * Recorre todos los patrones guardados (en orden de escritura no garantizado). El almacén solo se
+     * bloquea para leer cada patrón, no durante todo el recorrido, y este termina si el hilo se interrumpe.
+     */
+    public void forEach(Consumer<JSONObject> consumer) throws IOException {
+        List<String> patronIds;
+        synchronized (this) {
+            patronIds = new ArrayList<>(byPatronId.keySet());
+        }
+        for (String patronId : patronIds) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            JSONObject patron = get(patronId);
+            if (patron != null) {
+                consumer.accept(patron);
+            }
+        }
+    }
+
+    /**
+     * Persiste lo escrito y compacta el fichero si los registros obsoletos superan a los vivos.
+     */
+    public synchronized void flush() throws IOException {
+        channel.force(false);
+        if (fileSize >= COMPACTION_MIN_BYTES && deadBytes > liveBytes) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        INSTANCES.remove(path, this);
+        channel.force(false);
+        channel.close();
+        mapped = null;
+    }
+
+    // --- Log en disco ---
+
+    private void load() throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        channel = openPrivate(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        byPatronId.clear();
+        liveBytes = 0;
+        deadBytes = 0;
+
+        fileSize = channel.size();
+        if (fileSize == 0) {
+            channel.write(ByteBuffer.wrap(MAGIC), 0);
+            fileSize = MAGIC.length;
+        }
+        remap();
+        byte[] magic = new byte[MAGIC.length];
+        slice(0, MAGIC.length).get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            channel.close();
+            throw new IOException("El fichero " + path + " no es un almacén de patrones válido.");
+        }
+
+        long position = MAGIC.length;
+        while (position < fileSize) {
+            long next = replay(position);
+            if (next < 0) {
+                LOG.warn("PATRON_STORE: registro incompleto o corrupto en {0} (offset {1}); se trunca el fichero.", path, position);
+                channel.truncate(position);
+                fileSize = position;
+                remap();
+                break;
+            }
+            position = next;
+        }
+        LOG.info("PATRON_STORE: {0} patrones cargados desde {1} ({2} bytes)", byPatronId.size(), path, fileSize);
+    }
+
+    /** Aplica el registro en {@code position} a los índices; devuelve la posición siguiente o -1 si es inválido. */
+    private long replay(long position) {
+        if (position + RECORD_HEADER_BYTES > fileSize) {
+            return -1;
+        }
+        int length = mapped.getInt((int) position);
+        int crc = mapped.getInt((int) position + 4);
+        byte type = mapped.get((int) position + 8);
+        long end = position + RECORD_HEADER_BYTES + length;
+        if (length < 0 || end > fileSize) {
+            return -1;
+        }
+        byte[] payload = new byte[length];
+        slice(position + RECORD_HEADER_BYTES, length).get(payload);
+        if (crc != crc(type, payload)) {
+            return -1;
+        }
+        String text = new String(payload, StandardCharsets.UTF_8);
+        if (type == TYPE_PUT) {
+            JSONObject patron;
+            try {
+                patron = new JSONObject(text);
+            } catch (JSONException e) {
+                return -1;
+            }
+            String patronId = idOf(patron);
+            if (patronId == null) {
+                return -1;
+            }
+            Slot slot = new Slot(position, end - position, PatronFingerprintCache.fingerprint(patron));
+            replace(patronId, byPatronId.get(patronId), slot);
+            liveBytes += slot.length;
+        } else if (type == TYPE_DELETE) {
+            replace(text, byPatronId.get(text), null);
+            deadBytes += end - position;
+        } else {
+            return -1;
+        }
+        return end;
+    }
+
+    private long append(byte type, byte[] payload) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        header.putInt(payload.length).putInt(crc(type, payload)).put(type).put(payload);
+        ByteBuffer record = ByteBuffer.wrap(header.array());
+        long offset = fileSize;
+        while (record.hasRemaining()) {
+            fileSize += channel.write(record, fileSize);
+        }
+        return offset;
+    }
+
+    private JSONObject readPatron(long offset) throws IOException {
+        if (offset + RECORD_HEADER_BYTES > mappedSize()) {
+            remap();
+        }
+        int length = mapped.getInt((int) offset);
+        if (offset + RECORD_HEADER_BYTES + length > mappedSize()) {
+            remap();
+        }
+        byte[] payload = new byte[length];
+        slice(offset + RECORD_HEADER_BYTES, length).get(payload);
+        return new JSONObject(new String(payload, StandardCharsets.UTF_8));
+    }
+
+    /** Vista del mapeo entre {@code offset} y {@code offset + length} (casts a Buffer por compatibilidad con Java 8). */
+    private ByteBuffer slice(long offset, int length) {
+        ByteBuffer view = mapped.duplicate();
+        ((Buffer) view).position((int) offset);
+        ((Buffer) view).limit((int) offset + length);
+        return view;
+    }
+
+    private long mappedSize() {
+        return mapped != null ? mapped.capacity() : 0;
+    }
+
+    private void remap() throws IOException {
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("El almacén de patrones " + path + " supera 2 GB; elimínelo para regenerarlo.");
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+    }
+
+    /**
+     * Reescribe solo los registros vivos en un fichero temporal y lo sustituye de forma atómica.
+     */
+    private void compact() throws IOException {
+        long before = fileSize;
+        Path temp = path.resolveSibling(path.getFileName() + ".compact");
+        List<Slot> slots = new ArrayList<>(byPatronId.values());
+        Files.deleteIfExists(temp);
+        try (FileChannel out = openPrivate(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.wrap(MAGIC));
+            for (Slot slot : slots) {
+                if (slot.offset + slot.length > mappedSize()) {
+                    remap();
+                }
+                ByteBuffer record = slice(slot.offset, (int) slot.length);
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(true);
+        }
+        channel.close();
+        mapped = null;
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        load();
+        LOG.info("PATRON_STORE: compactado {0}: {1} -> {2} bytes", path, before, fileSize);
+    }
+
+    /**
+     * Abre el fichero con permisos solo para el propietario: en sistemas POSIX se crea ya con rw------- y,
+     * si existía, se le retiran los permisos de grupo y otros; en el resto se ajustan con {@link File}.
+     */
+    private static FileChannel openPrivate(Path file, OpenOption... options) throws IOException {
+        Set<OpenOption> openOptions = new HashSet<>(Arrays.asList(options));
+        boolean posix = file.getFileSystem().supportedFileAttributeViews().contains("posix");
+        FileChannel opened = posix
+                ? FileChannel.open(file, openOptions, PosixFilePermissions.asFileAttribute(OWNER_ONLY))
+                : FileChannel.open(file, openOptions);
+        try {
+            if (posix) {
+                Files.setPosixFilePermissions(file, OWNER_ONLY);
+            } else {
+                File plain = file.toFile();
+                boolean restricted = plain.setReadable(false, false) & plain.setReadable(true, true)
+                        & plain.setWritable(false, false) & plain.setWritable(true, true);
+                if (!restricted) {
+                    LOG.warn("PATRON_STORE: no se pudieron restringir los permisos de {0} al propietario", file);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn(e, "PATRON_STORE: no se pudieron restringir los permisos de {0} al propietario: {1}", file, e.getMessage());
+        }
+        return opened;
+    }
+
+    // --- Índices ---
+
+    private void replace(String patronId, Slot previous, Slot current) {
+        if (previous != null) {
+            deadBytes += previous.length;
+            liveBytes -= previous.length;
+        }
+        if (current == null) {
+            byPatronId.remove(patronId);
+            return;
+        }
+        byPatronId.put(patronId, current);
+    }
+
+    private static String idOf(JSONObject patron) {
+        Object rawId = patron.opt("patron_id");
+        return rawId != null && rawId != JSONObject.NULL ? String.valueOf(rawId) : null;
+    }
+
+    private static int crc(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private static final class Slot {
+        private final long offset;
+        private final long length;
+        private final long fingerprint;
+
+        Slot(long offset, long length, long fingerprint) {
+            this.offset = offset;
+            this.length = length;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
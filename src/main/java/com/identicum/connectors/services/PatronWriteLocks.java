@@ -0,0 +1,244 @@
+package com.identicum.connectors.services;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializa las escrituras sobre un mismo patrón: tabla de locks por franjas indexada por patron_id.
+ * Dos workers de midPoint que modifican a la vez el mismo patrón ya no envían sus PATCH (ni sus
+ * lecturas-modificación de extended_attributes) en paralelo, lo que perdía cambios; patrones distintos
+ * siguen en paralelo salvo colisión de franja.
+ * <p>
+ * Con fusión activada, los PATCH que esperan turno para el mismo patrón se envían juntos en una sola
+ * petición (las claves posteriores prevalecen, como si se aplicaran en orden) y todos reciben su resultado.
+ * Si Koha rechaza la petición fusionada (p. ej. un 400 por el valor de uno de ellos), cada PATCH se reenvía
+ * por separado y en orden, para que el error de uno no haga fallar a los demás. Si el fallo es del hilo que
+ * envía (plazo vencido o interrupción), los PATCH de los demás vuelven a la cola y los envía el siguiente.
+ * Un PATCH que ya va en la petición de otro hilo no se abandona aunque venza el plazo de su llamador: este
+ * espera el resultado en lugar de informar un fallo de algo que Koha puede estar aplicando.
+ * Se comparte por destino porque los workers suelen usar instancias distintas del conector.
+ */
+public final class PatronWriteLocks {
+
+    private static final Log LOG = Log.getLog(PatronWriteLocks.class);
+    private static final ConcurrentMap<String, PatronWriteLocks> INSTANCES = new ConcurrentHashMap<>();
+
+    private final ReentrantLock[] stripes;
+    private final ConcurrentMap<String, List<PendingPatch>> pendingPatches = new ConcurrentHashMap<>();
+
+    PatronWriteLocks(int stripeCount) {
+        this.stripes = new ReentrantLock[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public static PatronWriteLocks forInstance(String scope, int stripeCount) {
+        return INSTANCES.computeIfAbsent(scope + "#" + stripeCount, key -> new PatronWriteLocks(stripeCount));
+    }
+
+    /**
+     * Ejecuta {@code action} con el lock del patrón y con las lecturas fijadas al principal
+     * ({@link PrimaryReads}). Es reentrante: una escritura compuesta puede llamar a otras del mismo patrón.
+     */
+    public <T> T withLock(String patronId, WriteAction<T> action) throws IOException {
+        ReentrantLock lock = stripeFor(patronId);
+        acquire(lock, patronId);
+        try (PrimaryReads.Scope ignored = PrimaryReads.enter()) {
+            return action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Envía un PATCH del patrón con su lock, fusionado con los PATCH del mismo patrón que esperan turno.
+     * Si otro hilo ya lo envió dentro de su petición, devuelve (o lanza) el resultado de aquella.
+     */
+    public void patch(String patronId, JSONObject payload, PatchSender sender) throws IOException {
+        PendingPatch mine = new PendingPatch(payload);
+        pendingPatches.compute(patronId, (id, queue) -> {
+            List<PendingPatch> patches = queue != null ? queue : new ArrayList<>();
+            patches.add(mine);
+            return patches;
+        });
+        ReentrantLock lock = stripeFor(patronId);
+        try {
+            acquire(lock, patronId);
+        } catch (RuntimeException e) {
+            if (withdraw(patronId, mine)) {
+                throw e;
+            }
+            LOG.ok("PATRON_WRITE: el PATCH del patrón {0} ya va en la petición de otro hilo; se espera su resultado",
+                    patronId);
+            lock.lock();
+            try {
+                if (!mine.done) {
+                    withdraw(patronId, mine);
+                    throw e;
+                }
+                mine.rethrowFailure();
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+        try {
+            if (mine.done) {
+                mine.rethrowFailure();
+                return;
+            }
+            List<PendingPatch> batch = new ArrayList<>();
+            pendingPatches.computeIfPresent(patronId, (id, queue) -> {
+                queue.forEach(patch -> patch.claimed = true);
+                batch.addAll(queue);
+                return null;
+            });
+            JSONObject merged = new JSONObject();
+            for (PendingPatch patch : batch) {
+                for (String key : patch.payload.keySet()) {
+                    merged.put(key, patch.payload.get(key));
+                }
+            }
+            if (batch.size() > 1) {
+                LOG.ok("PATRON_WRITE: {0} PATCH del patrón {1} fusionados en una petición", batch.size(), patronId);
+            }
+            try {
+                sender.send(merged);
+            } catch (IOException | RuntimeException e) {
+                if (batch.size() == 1 || OperationDeadline.failedOnlyForThisThread(e)) {
+                    mine.complete(e);
+                    requeue(patronId, batch);
+                    throw e;
+                }
+                LOG.ok("PATRON_WRITE: el PATCH fusionado del patrón {0} falló ({1}); se reenvían los {2} por separado",
+                        patronId, e.getMessage(), batch.size());
+                sendEach(patronId, batch, mine, sender);
+                mine.rethrowFailure();
+                return;
+            }
+            batch.forEach(patch -> patch.complete(null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Envía cada PATCH del lote con su propio resultado. Si el hilo deja de poder enviar (plazo o
+     * interrupción), el propio PATCH falla y los pendientes de los demás vuelven a la cola.
+     */
+    private void sendEach(String patronId, List<PendingPatch> batch, PendingPatch mine, PatchSender sender) {
+        for (PendingPatch patch : batch) {
+            try {
+                sender.send(patch.payload);
+                patch.complete(null);
+            } catch (IOException | RuntimeException e) {
+                if (OperationDeadline.failedOnlyForThisThread(e)) {
+                    if (!mine.done) {
+                        mine.complete(e);
+                    }
+                    requeue(patronId, batch);
+                    return;
+                }
+                patch.complete(e);
+            }
+        }
+    }
+
+    /**
+     * Saca de la cola un PATCH que nadie ha tomado todavía.
+     *
+     * @return false si ya va en la petición de otro hilo.
+     */
+    private boolean withdraw(String patronId, PendingPatch patch) {
+        boolean[] withdrawn = {false};
+        pendingPatches.computeIfPresent(patronId, (id, queue) -> {
+            withdrawn[0] = !patch.claimed && queue.remove(patch);
+            return queue.isEmpty() ? null : queue;
+        });
+        return withdrawn[0];
+    }
+
+    /** Devuelve a la cabeza de la cola los PATCH del lote sin resultado, por delante de los llegados después. */
+    private void requeue(String patronId, List<PendingPatch> batch) {
+        List<PendingPatch> pending = new ArrayList<>();
+        for (PendingPatch patch : batch) {
+            if (!patch.done) {
+                pending.add(patch);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        pendingPatches.compute(patronId, (id, queue) -> {
+            pending.forEach(patch -> patch.claimed = false);
+            if (queue != null) {
+                pending.addAll(queue);
+            }
+            return pending;
+        });
+    }
+
+    private ReentrantLock stripeFor(String patronId) {
+        int hash = patronId.hashCode();
+        return stripes[((hash ^ (hash >>> 16)) & 0x7fffffff) % stripes.length];
+    }
+
+    private static void acquire(ReentrantLock lock, String patronId) {
+        try {
+            long remaining = OperationDeadline.remainingNanos();
+            if (remaining == Long.MAX_VALUE) {
+                lock.lockInterruptibly();
+            } else if (!lock.tryLock(remaining, TimeUnit.NANOSECONDS)) {
+                throw OperationDeadline.expired("escribir en el patrón " + patronId + " (otra escritura en curso)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrumpido esperando turno de escritura en el patrón " + patronId, e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface WriteAction<T> {
+        T run() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface PatchSender {
+        void send(JSONObject mergedPayload) throws IOException;
+    }
+
+    /**
+     * PATCH en espera. {@code done} y {@code failure} se leen y se escriben con el lock del patrón;
+     * {@code claimed} (tomado por el hilo que envía) dentro del {@code compute} de la cola del patrón.
+     */
+    private static final class PendingPatch {
+        private final JSONObject payload;
+        private volatile boolean claimed;
+        private boolean done;
+        private Exception failure;
+
+        PendingPatch(JSONObject payload) {
+            this.payload = payload;
+        }
+
+        void complete(Exception failure) {
+            this.done = true;
+            this.failure = failure;
+        }
+
+        void rethrowFailure() throws IOException {
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.identicum.connectors.services;
+
+/**
+ * Marca del hilo actual para que sus lecturas vayan al nodo principal y nunca a una réplica, leída por
+ * {@link LoadBalancingHttpClientAdapter}. {@link PatronWriteLocks#withLock} la activa durante cada escritura:
+ * la lectura previa de una lectura-modificación sobre una réplica con retraso devolvería valores o
+ * extended_attribute_id ya cambiados en el principal.
+ */
+public final class PrimaryReads {
+
+    private static final ThreadLocal<Boolean> CURRENT = new ThreadLocal<>();
+
+    private PrimaryReads() {
+    }
+
+    public static boolean isRequired() {
+        return Boolean.TRUE.equals(CURRENT.get());
+    }
+
+    /**
+     * Envía al principal las lecturas del hilo actual hasta cerrar el ámbito devuelto.
+     */
+    public static Scope enter() {
+        Boolean previous = CURRENT.get();
+        CURRENT.set(Boolean.TRUE);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /** Ámbito de {@link #enter()}; para try-with-resources. */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
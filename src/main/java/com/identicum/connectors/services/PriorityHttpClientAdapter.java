@@ -0,0 +1,86 @@
+package com.identicum.connectors.services;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.identityconnectors.common.logging.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decorador de transporte que hace pasar cada petición por un {@link LaneScheduler} según el
+ * {@link RequestLane} del hilo. El turno se mantiene hasta cerrar la respuesta, porque la conexión
+ * sigue ocupada mientras se lee el cuerpo.
+ */
+public class PriorityHttpClientAdapter implements HttpClientAdapter {
+
+    private static final Log LOG = Log.getLog(PriorityHttpClientAdapter.class);
+    private static final long SLOW_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final HttpClientAdapter delegate;
+    private final LaneScheduler scheduler;
+
+    public PriorityHttpClientAdapter(HttpClientAdapter delegate, LaneScheduler scheduler) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        RequestLane lane = RequestLane.current();
+        try {
+            long waited = scheduler.acquire(lane, OperationDeadline.remainingNanos());
+            if (waited >= SLOW_WAIT_NANOS) {
+                LOG.ok("PRIORITY: {0} {1} esperó {2} ms en el carril {3}", request.getMethod(), request.getURI(),
+                        TimeUnit.NANOSECONDS.toMillis(waited), lane);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrumpido esperando turno en el carril " + lane + " para " + request.getURI());
+        } catch (TimeoutException e) {
+            throw new InterruptedIOException("Plazo de la operación agotado esperando turno en el carril " + lane + " para " + request.getURI());
+        }
+        CloseableHttpResponse response;
+        try {
+            response = delegate.execute(request);
+        } catch (IOException | RuntimeException | Error e) {
+            scheduler.release(lane);
+            throw e;
+        }
+        return releasingOnClose(response, lane);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (RequestLane lane : RequestLane.values()) {
+            WaitStats stats = scheduler.getStats(lane);
+            LOG.info("PRIORITY: carril {0}: {1} peticiones, espera media {2} ms, máxima {3} ms",
+                    lane, stats.getRequests(), stats.getMeanWaitMillis(), stats.getMaxWaitMillis());
+        }
+        delegate.close();
+    }
+
+    /**
+     * La misma respuesta, que además libera el turno (una sola vez) al cerrarse.
+     */
+    private CloseableHttpResponse releasingOnClose(CloseableHttpResponse response, RequestLane lane) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (CloseableHttpResponse) Proxy.newProxyInstance(CloseableHttpResponse.class.getClassLoader(),
+                new Class<?>[]{CloseableHttpResponse.class}, (proxy, method, args) -> {
+                    try {
+                        return method.invoke(response, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if ("close".equals(method.getName()) && method.getParameterCount() == 0 && released.compareAndSet(false, true)) {
+                            scheduler.release(lane);
+                        }
+                    }
+                });
+    }
+}
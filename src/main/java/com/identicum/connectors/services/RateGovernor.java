@@ -0,0 +1,184 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.services.RateLimitSchedule.EndpointClass;
+import org.identityconnectors.common.logging.Log;
+
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * Limitador de tasa hacia Koha: un cubo de tokens por {@link EndpointClass} cuya tasa sigue la franja vigente
+ * de {@link RateLimitSchedule}. Se comparte por destino (como los permisos por host) porque el límite pactado
+ * es para el servidor, no para cada instancia del conector.
+ * <p>
+ * Las peticiones reservan su token y esperan lo que falte, de modo que la carga sale espaciada en lugar de en
+ * ráfagas. Un 429 reduce a la mitad la tasa efectiva de su clase (hasta un 10 %) y pausa el cubo lo que indique
+ * Retry-After; cada respuesta correcta la recupera un 2 %.
+ */
+public final class RateGovernor {
+
+    private static final Log LOG = Log.getLog(RateGovernor.class);
+    private static final ConcurrentMap<String, RateGovernor> INSTANCES = new ConcurrentHashMap<>();
+    /** Pausa por defecto ante un 429 sin Retry-After. */
+    static final long DEFAULT_RETRY_AFTER_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimitSchedule schedule;
+    private final Clock wallClock;
+    private final LongSupplier nanoClock;
+    private final Map<EndpointClass, TokenBucket> buckets = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, WaitStats> stats = new EnumMap<>(EndpointClass.class);
+    private volatile RateLimitSchedule.Window activeWindow;
+    private volatile boolean windowResolved;
+
+    RateGovernor(RateLimitSchedule schedule, Clock wallClock, LongSupplier nanoClock) {
+        this.schedule = schedule;
+        this.wallClock = wallClock;
+        this.nanoClock = nanoClock;
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            buckets.put(endpointClass, new TokenBucket());
+            stats.put(endpointClass, new WaitStats());
+        }
+    }
+
+    public static RateGovernor forInstance(String scope, String scheduleSpec) {
+        return INSTANCES.computeIfAbsent(scope + "#" + scheduleSpec,
+                key -> new RateGovernor(RateLimitSchedule.parse(scheduleSpec), Clock.systemDefaultZone(), System::nanoTime));
+    }
+
+    /**
+     * Reserva un token de la clase y espera hasta poder usarlo.
+     *
+     * @return Nanosegundos de espera.
+     */
+    public long acquire(EndpointClass endpointClass) throws InterruptedException {
+        try {
+            return acquire(endpointClass, Long.MAX_VALUE);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e); // sin plazo no hay timeout
+        }
+    }
+
+    /**
+     * Como {@link #acquire(EndpointClass)}, pero si el turno llega después de {@code maxWaitNanos} no espera:
+     * falla enseguida (el token reservado se pierde, lo que sólo frena un poco más a los siguientes).
+     *
+     * @throws TimeoutException si la espera supera {@code maxWaitNanos}.
+     */
+    public long acquire(EndpointClass endpointClass, long maxWaitNanos) throws InterruptedException, TimeoutException {
+        RateLimitSchedule.Window window = currentWindow();
+        double rate = window != null ? window.rate(endpointClass) : 0;
+        long wait = buckets.get(endpointClass).reserve(rate, nanoClock.getAsLong());
+        if (wait > maxWaitNanos) {
+            throw new TimeoutException("El turno de tasa " + endpointClass + " llega en "
+                    + TimeUnit.NANOSECONDS.toMillis(wait) + " ms, fuera del plazo");
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        stats.get(endpointClass).record(wait);
+        return wait;
+    }
+
+    /**
+     * Ajusta la tasa de la clase según la respuesta.
+     *
+     * @param retryAfterNanos Valor de Retry-After en un 429, o negativo si no vino.
+     */
+    public void onResponse(EndpointClass endpointClass, int statusCode, long retryAfterNanos) {
+        TokenBucket bucket = buckets.get(endpointClass);
+        if (statusCode == 429) {
+            long pause = retryAfterNanos >= 0 ? retryAfterNanos : DEFAULT_RETRY_AFTER_NANOS;
+            double factor = bucket.penalize(nanoClock.getAsLong(), pause);
+            LOG.warn("RATE_LIMIT: Koha respondió 429 en {0}; pausa de {1} ms y tasa al {2} %",
+                    endpointClass, TimeUnit.NANOSECONDS.toMillis(pause), Math.round(factor * 100));
+        } else if (statusCode < 500) {
+            bucket.reward();
+        }
+    }
+
+    public WaitStats getStats(EndpointClass endpointClass) {
+        return stats.get(endpointClass);
+    }
+
+    private RateLimitSchedule.Window currentWindow() {
+        RateLimitSchedule.Window window = schedule.windowAt(LocalTime.now(wallClock));
+        if (!windowResolved || window != activeWindow) {
+            activeWindow = window;
+            windowResolved = true;
+            LOG.info("RATE_LIMIT: franja activa {0}", window != null ? window : "sin límite");
+        }
+        return window;
+    }
+
+    /**
+     * Cubo de tokens con capacidad de un segundo de tasa (mínimo 1) y reserva anticipada:
+     * los tokens pueden quedar en negativo y cada llamador espera su turno en el tiempo.
+     */
+    static final class TokenBucket {
+        private static final double MIN_FACTOR = 0.1;
+        private static final double RECOVERY_STEP = 0.02;
+
+        private double tokens;
+        private long lastNanos;
+        private boolean started;
+        private long pausedUntil;
+        private boolean paused;
+        private double factor = 1.0;
+
+        /**
+         * @param rate Peticiones por segundo configuradas; 0 o menos sin límite (salvo una pausa por 429).
+         * @return Nanosegundos que debe esperar el llamador.
+         */
+        synchronized long reserve(double rate, long now) {
+            long pauseWait = paused && pausedUntil - now > 0 ? pausedUntil - now : 0;
+            if (rate <= 0) {
+                return pauseWait;
+            }
+            double effectiveRate = rate * factor;
+            double burst = Math.max(1.0, effectiveRate);
+            if (!started) {
+                started = true;
+                tokens = burst;
+                lastNanos = now;
+            }
+            long refillFrom = Math.max(lastNanos, paused ? Math.min(pausedUntil, now) : lastNanos);
+            tokens = Math.min(burst, tokens + (now - refillFrom) / 1e9 * effectiveRate);
+            lastNanos = now;
+            tokens -= 1;
+            // Durante una pausa no se reponen tokens: los turnos se cuentan desde su final
+            long tokenWait = tokens >= 0 ? 0 : (long) (-tokens / effectiveRate * 1e9);
+            return pauseWait + tokenWait;
+        }
+
+        /** @return El nuevo factor de la tasa. */
+        synchronized double penalize(long now, long pauseNanos) {
+            factor = Math.max(MIN_FACTOR, factor / 2);
+            long until = now + pauseNanos;
+            if (!paused || until - pausedUntil > 0) {
+                pausedUntil = until;
+                paused = true;
+            }
+            if (tokens > 0) {
+                tokens = 0;
+            }
+            return factor;
+        }
+
+        synchronized void reward() {
+            if (factor < 1.0) {
+                factor = Math.min(1.0, factor + RECOVERY_STEP);
+            }
+        }
+
+        synchronized double getFactor() {
+            return factor;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.identicum.connectors.services;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Perfiles de tasa por franja horaria, definidos en rateLimitSchedule:
+ * <pre>
+ * 06:00-22:00=search:2,read:10,write:5;22:00-06:00=search:50,read:50,write:20
+ * </pre>
+ * Cada franja (hora local de la JVM, inicio incluido y fin excluido; puede cruzar la medianoche) fija peticiones
+ * por segundo para cada clase de endpoint. Una clase omitida o con 0, o una hora fuera de toda franja, no tiene límite.
+ * Si dos franjas se solapan manda la primera.
+ */
+public final class RateLimitSchedule {
+
+    /** Clases de endpoint con cubo de tokens propio. */
+    public enum EndpointClass {
+        /** Páginas de recorridos (carril {@link RequestLane#BULK}). */
+        SEARCH,
+        /** Resto de lecturas (GET/HEAD). */
+        READ,
+        /** POST, PUT, PATCH y DELETE. */
+        WRITE
+    }
+
+    private final List<Window> windows;
+
+    private RateLimitSchedule(List<Window> windows) {
+        this.windows = Collections.unmodifiableList(windows);
+    }
+
+    /**
+     * @throws IllegalArgumentException si la especificación no es válida.
+     */
+    public static RateLimitSchedule parse(String spec) {
+        List<Window> windows = new ArrayList<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            return new RateLimitSchedule(windows);
+        }
+        for (String part : spec.split(";")) {
+            String windowSpec = part.trim();
+            if (windowSpec.isEmpty()) {
+                continue;
+            }
+            int equals = windowSpec.indexOf('=');
+            int dash = windowSpec.indexOf('-');
+            if (equals < 0 || dash < 0 || dash > equals) {
+                throw new IllegalArgumentException("Franja de rateLimitSchedule no válida: '" + windowSpec
+                        + "'. Formato: HH:mm-HH:mm=search:N,read:N,write:N");
+            }
+            LocalTime start = parseTime(windowSpec.substring(0, dash).trim(), windowSpec);
+            LocalTime end = parseTime(windowSpec.substring(dash + 1, equals).trim(), windowSpec);
+            Map<EndpointClass, Double> rates = new EnumMap<>(EndpointClass.class);
+            for (String limit : windowSpec.substring(equals + 1).split(",")) {
+                if (limit.trim().isEmpty()) {
+                    continue;
+                }
+                String[] pair = limit.split(":");
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Límite no válido en rateLimitSchedule: '" + limit.trim() + "'.");
+                }
+                EndpointClass endpointClass;
+                double rate;
+                try {
+                    endpointClass = EndpointClass.valueOf(pair[0].trim().toUpperCase(Locale.ROOT));
+                    rate = Double.parseDouble(pair[1].trim());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Límite no válido en rateLimitSchedule: '" + limit.trim()
+                            + "'. Clases válidas: search, read, write; tasa en peticiones por segundo.", e);
+                }
+                if (rate < 0 || Double.isNaN(rate) || Double.isInfinite(rate)) {
+                    throw new IllegalArgumentException("La tasa de rateLimitSchedule no puede ser negativa: '" + limit.trim() + "'.");
+                }
+                rates.put(endpointClass, rate);
+            }
+            windows.add(new Window(windowSpec.substring(0, equals).trim(), start, end, rates));
+        }
+        return new RateLimitSchedule(windows);
+    }
+
+    private static LocalTime parseTime(String text, String windowSpec) {
+        try {
+            return LocalTime.parse(text.length() == 4 ? "0" + text : text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Hora no válida en rateLimitSchedule: '" + text + "' (" + windowSpec + ").", e);
+        }
+    }
+
+    public boolean isEmpty() {
+        return windows.isEmpty();
+    }
+
+    /**
+     * @return La franja vigente a esa hora, o null si no hay límite.
+     */
+    public Window windowAt(LocalTime time) {
+        for (Window window : windows) {
+            if (window.contains(time)) {
+                return window;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Franja horaria con sus tasas.
+     */
+    public static final class Window {
+        private final String label;
+        private final LocalTime start;
+        private final LocalTime end;
+        private final Map<EndpointClass, Double> rates;
+
+        private Window(String label, LocalTime start, LocalTime end, Map<EndpointClass, Double> rates) {
+            this.label = label;
+            this.start = start;
+            this.end = end;
+            this.rates = rates;
+        }
+
+        boolean contains(LocalTime time) {
+            if (start.equals(end)) {
+                return true;
+            }
+            if (start.isBefore(end)) {
+                return !time.isBefore(start) && time.isBefore(end);
+            }
+            return !time.isBefore(start) || time.isBefore(end);
+        }
+
+        /**
+         * @return Peticiones por segundo, o 0 si la clase no tiene límite en esta franja.
+         */
+        public double rate(EndpointClass endpointClass) {
+            Double rate = rates.get(endpointClass);
+            return rate != null ? rate : 0;
+        }
+
+        @Override
+        public String toString() {
+            return label + "=" + rates;
+        }
+    }
+}
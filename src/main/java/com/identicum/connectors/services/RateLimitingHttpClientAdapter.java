@@ -0,0 +1,85 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.services.RateLimitSchedule.EndpointClass;
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.identityconnectors.common.logging.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Decorador de transporte que pide turno a un {@link RateGovernor} antes de cada petición e informa
+ * de la respuesta (429 y Retry-After) para que ajuste la tasa.
+ */
+public class RateLimitingHttpClientAdapter implements HttpClientAdapter {
+
+    private static final Log LOG = Log.getLog(RateLimitingHttpClientAdapter.class);
+
+    private final HttpClientAdapter delegate;
+    private final RateGovernor governor;
+
+    public RateLimitingHttpClientAdapter(HttpClientAdapter delegate, RateGovernor governor) {
+        this.delegate = delegate;
+        this.governor = governor;
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        EndpointClass endpointClass = classify(request.getMethod());
+        try {
+            governor.acquire(endpointClass, OperationDeadline.remainingNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrumpido esperando turno de tasa " + endpointClass + " para " + request.getURI());
+        } catch (TimeoutException e) {
+            throw new InterruptedIOException("Plazo de la operación agotado esperando turno de tasa " + endpointClass + " para " + request.getURI());
+        }
+        CloseableHttpResponse response = delegate.execute(request);
+        int statusCode = response.getStatusLine().getStatusCode();
+        governor.onResponse(endpointClass, statusCode, statusCode == 429 ? retryAfterNanos(response) : -1);
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            WaitStats stats = governor.getStats(endpointClass);
+            LOG.info("RATE_LIMIT: {0}: {1} peticiones, {2} frenadas, espera total {3} ms, máxima {4} ms",
+                    endpointClass, stats.getRequests(), stats.getWaitedRequests(), stats.getTotalWaitMillis(), stats.getMaxWaitMillis());
+        }
+        delegate.close();
+    }
+
+    static EndpointClass classify(String method) {
+        if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method)) {
+            return EndpointClass.WRITE;
+        }
+        return RequestLane.current() == RequestLane.BULK ? EndpointClass.SEARCH : EndpointClass.READ;
+    }
+
+    /**
+     * Retry-After en segundos o como fecha HTTP; -1 si no viene o no se entiende.
+     */
+    static long retryAfterNanos(CloseableHttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null || header.getValue() == null) {
+            return -1;
+        }
+        String value = header.getValue().trim();
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            if (date == null) {
+                return -1;
+            }
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, date.getTime() - System.currentTimeMillis()));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.identicum.connectors.services;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Patrones escritos hace menos de una ventana de tiempo, para leerlos del nodo principal mientras
+ * las réplicas de lectura pueden no tener aún el cambio (read-your-writes).
+ * Se comparte por destino porque la escritura y la lectura pueden hacerlas instancias distintas del pool de ConnId.
+ */
+public final class RecentWrites {
+
+    private static final ConcurrentMap<String, RecentWrites> INSTANCES = new ConcurrentHashMap<>();
+    /** Por encima de este tamaño cada registro purga las entradas vencidas. */
+    private static final int PRUNE_THRESHOLD = 10_000;
+
+    private final ConcurrentMap<String, Long> expiries = new ConcurrentHashMap<>();
+    private final long windowNanos;
+    private final LongSupplier clock;
+
+    RecentWrites(long windowNanos, LongSupplier clock) {
+        this.windowNanos = windowNanos;
+        this.clock = clock;
+    }
+
+    public static RecentWrites forInstance(String scope, int windowSeconds) {
+        return INSTANCES.computeIfAbsent(scope + "#" + windowSeconds,
+                key -> new RecentWrites(TimeUnit.SECONDS.toNanos(windowSeconds), System::nanoTime));
+    }
+
+    public void record(String patronId) {
+        long now = clock.getAsLong();
+        expiries.put(patronId, now + windowNanos);
+        if (expiries.size() > PRUNE_THRESHOLD) {
+            for (Iterator<Map.Entry<String, Long>> it = expiries.entrySet().iterator(); it.hasNext(); ) {
+                if (now - it.next().getValue() >= 0) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public boolean isRecent(String patronId) {
+        Long expiry = expiries.get(patronId);
+        if (expiry == null) {
+            return false;
+        }
+        if (clock.getAsLong() - expiry >= 0) {
+            expiries.remove(patronId, expiry);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+package com.identicum.connectors.services;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tablas de referencia de Koha (library_id de /libraries y category_id de /patron_categories)
+ * cacheadas como conjuntos inmutables, para validar altas y modificaciones de patrones antes de
+ * cualquier llamada HTTP.
+ * <p>
+ * Las tablas se recargan cuando superan su antigüedad máxima. Ante un valor desconocido se recargan
+ * una vez (como mucho cada {@link #MIN_RELOAD_INTERVAL_MS}) por si se acaba de crear en Koha; si
+ * sigue sin existir se lanza InvalidAttributeValueException. Si Koha no responde al cargar una
+ * tabla se sigue con la copia anterior o, sin copia, no se valida (Koha validará igualmente).
+ */
+public class ReferenceDataCache {
+
+    private static final Log LOG = Log.getLog(ReferenceDataCache.class);
+    private static final long MIN_RELOAD_INTERVAL_MS = 60_000L;
+    private static final int MAX_VALUES_IN_MESSAGE = 10;
+
+    public static final String LIBRARY_ID = "library_id";
+    public static final String CATEGORY_ID = "category_id";
+
+    private static final ConcurrentMap<String, ReferenceDataCache> INSTANCES = new ConcurrentHashMap<>();
+
+    /** Carga los valores válidos de una tabla de referencia. */
+    @FunctionalInterface
+    public interface Loader {
+        Collection<String> load() throws IOException;
+    }
+
+    private final long maxAgeMs;
+    private final Map<String, ReferenceTable> tables = new HashMap<>();
+
+    ReferenceDataCache(long maxAgeMs) {
+        this.maxAgeMs = maxAgeMs;
+        tables.put(LIBRARY_ID, new ReferenceTable(LIBRARY_ID));
+        tables.put(CATEGORY_ID, new ReferenceTable(CATEGORY_ID));
+    }
+
+    /** Caché compartida por toda la JVM para una instancia de Koha (dirección del servicio y credencial). */
+    public static ReferenceDataCache forInstance(String scope, int refreshMinutes) {
+        return INSTANCES.computeIfAbsent(scope + "#" + refreshMinutes,
+                key -> new ReferenceDataCache(Math.max(1, refreshMinutes) * 60_000L));
+    }
+
+    /**
+     * Valida (y, si {@code normalizeCase}, corrige mayúsculas de) library_id y category_id del payload.
+     *
+     * @throws InvalidAttributeValueException si algún valor no existe en Koha.
+     */
+    public void validate(JSONObject payload, Loader libraries, Loader categories, boolean normalizeCase) {
+        tables.get(LIBRARY_ID).validate(payload, libraries, normalizeCase);
+        tables.get(CATEGORY_ID).validate(payload, categories, normalizeCase);
+    }
+
+    /** Una tabla de referencia: la instantánea actual se reemplaza entera en cada recarga. */
+    private final class ReferenceTable {
+        private final String field;
+        private volatile Snapshot snapshot;
+
+        ReferenceTable(String field) {
+            this.field = field;
+        }
+
+        void validate(JSONObject payload, Loader loader, boolean normalizeCase) {
+            String value = payload.optString(field, null);
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            Snapshot current = snapshot;
+            if (current == null || current.ageMs() > maxAgeMs) {
+                current = reload(loader, current);
+            }
+            if (current == null) {
+                return;
+            }
+            String canonical = current.resolve(value, normalizeCase);
+            if (canonical == null && current.ageMs() > MIN_RELOAD_INTERVAL_MS) {
+                current = reload(loader, current);
+                canonical = current.resolve(value, normalizeCase);
+            }
+            if (canonical == null) {
+                throw new InvalidAttributeValueException("Unknown Koha " + field + " '" + value + "'. Known values: " + current.sample());
+            }
+            if (!canonical.equals(value)) {
+                payload.put(field, canonical);
+            }
+        }
+
+        private synchronized Snapshot reload(Loader loader, Snapshot seen) {
+            if (snapshot != seen) {
+                return snapshot; // Otro hilo ya recargó
+            }
+            try {
+                snapshot = new Snapshot(loader.load());
+                LOG.ok("REFERENCE_DATA: {0} valores de {1} cargados", snapshot.values.size(), field);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn(e, "REFERENCE_DATA: no se pudo cargar {0}; se usa la copia anterior", field);
+            }
+            return snapshot;
+        }
+    }
+
+    private static final class Snapshot {
+        private final Set<String> values;
+        private final Map<String, String> byLowerCase;
+        private final long loadedAt = System.currentTimeMillis();
+
+        Snapshot(Collection<String> loaded) {
+            Set<String> set = new HashSet<>(loaded);
+            Map<String, String> lower = new HashMap<>();
+            for (String value : set) {
+                lower.put(value.toLowerCase(Locale.ROOT), value);
+            }
+            this.values = Collections.unmodifiableSet(set);
+            this.byLowerCase = Collections.unmodifiableMap(lower);
+        }
+
+        long ageMs() {
+            return System.currentTimeMillis() - loadedAt;
+        }
+
+        String resolve(String value, boolean normalizeCase) {
+            if (values.contains(value)) {
+                return value;
+            }
+            return normalizeCase ? byLowerCase.get(value.toLowerCase(Locale.ROOT)) : null;
+        }
+
+        String sample() {
+            StringBuilder text = new StringBuilder();
+            int count = 0;
+            for (String value : values) {
+                if (count++ == MAX_VALUES_IN_MESSAGE) {
+                    text.append(", ...");
+                    break;
+                }
+                text.append(count > 1 ? ", " : "").append(value);
+            }
+            return "[" + text + "]";
+        }
+    }
+}
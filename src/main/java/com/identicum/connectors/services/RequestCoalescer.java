@@ -0,0 +1,117 @@
+package com.identicum.connectors.services;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Single-flight para peticiones GET idempotentes: los hilos que piden la misma clave
+ * mientras una petición está en curso esperan ese resultado en lugar de repetir la llamada.
+ * <p>
+ * Es compartido por toda la JVM porque ConnId mantiene un pool de instancias del conector.
+ * El mapa de peticiones en curso es un ConcurrentHashMap, que bloquea por bucket: claves
+ * distintas no compiten entre sí.
+ * <p>
+ * Cada hilo que se une recibe su propia copia del resultado (el que ejecuta se queda el original). Si la
+ * ejecución falla por una causa solo de su hilo (su plazo vencido, su interrupción o el aborto de su
+ * petición por el vigilante), los que esperaban no heredan ese fallo: lo vuelven a intentar y uno de ellos
+ * ejecuta la petición.
+ */
+public final class RequestCoalescer {
+
+    private static final Log LOG = Log.getLog(RequestCoalescer.class);
+    private static final RequestCoalescer SHARED = new RequestCoalescer();
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    RequestCoalescer() {
+    }
+
+    public static RequestCoalescer shared() {
+        return SHARED;
+    }
+
+    /**
+     * Como {@link #execute(String, Callable, UnaryOperator)} para resultados inmutables, que no hace falta copiar.
+     */
+    public <T> T execute(String key, Callable<T> loader) throws IOException {
+        return execute(key, loader, UnaryOperator.identity());
+    }
+
+    /**
+     * Ejecuta {@code loader} o, si ya hay una ejecución en curso para {@code key}, espera su resultado
+     * y devuelve {@code shareCopy} aplicado a él.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> loader, UnaryOperator<T> shareCopy) throws IOException {
+        for (;;) {
+            CompletableFuture<Object> mine = new CompletableFuture<>();
+            CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+            if (existing == null) {
+                return lead(key, mine, loader);
+            }
+            LOG.ok("Coalescing request with in-flight call: {0}", key);
+            try {
+                return shareCopy.apply((T) await(existing));
+            } catch (LeaderAbandoned e) {
+                LOG.ok("La petición en curso se canceló por causas de su hilo; se repite: {0}", key);
+            }
+        }
+    }
+
+    private <T> T lead(String key, CompletableFuture<Object> mine, Callable<T> loader) throws IOException {
+        try {
+            T result = loader.call();
+            mine.complete(result);
+            return result;
+        } catch (Exception e) {
+            mine.completeExceptionally(OperationDeadline.failedOnlyForThisThread(e) ? new LeaderAbandoned() : e);
+            if (e instanceof IOException) throw (IOException) e;
+            throw ConnectorException.wrap(e);
+        } catch (Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private static Object await(CompletableFuture<Object> future) throws IOException {
+        try {
+            long remaining = OperationDeadline.remainingNanos();
+            return remaining == Long.MAX_VALUE ? future.get() : future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw OperationDeadline.expired("recibir el resultado de una petición en curso");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrumpido esperando una petición en curso", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ConnectorException(cause);
+        }
+    }
+
+    /** Señal para los que esperaban: la ejecución se abandonó por causas de su hilo y deben repetirla. */
+    private static final class LeaderAbandoned extends RuntimeException {
+        LeaderAbandoned() {
+            super("Petición en curso abandonada por su hilo", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.identicum.connectors.services;
+
+/**
+ * Carril de prioridad de las peticiones HTTP del hilo actual, leído por {@link PriorityHttpClientAdapter}.
+ * Por defecto todo es {@link #INTERACTIVE}; los recorridos paginados se marcan como {@link #BULK} con
+ * {@link #enter(RequestLane)} alrededor de cada llamada.
+ */
+public enum RequestLane {
+    /** Operaciones sobre un objeto (lectura por UID, alta, modificación, baja) y búsquedas de correlación. */
+    INTERACTIVE,
+    /** Páginas de búsquedas completas y reconciliaciones. */
+    BULK;
+
+    private static final ThreadLocal<RequestLane> CURRENT = new ThreadLocal<>();
+
+    public static RequestLane current() {
+        RequestLane lane = CURRENT.get();
+        return lane != null ? lane : INTERACTIVE;
+    }
+
+    /**
+     * Marca las peticiones del hilo actual con {@code lane} hasta cerrar el ámbito devuelto.
+     */
+    public static Scope enter(RequestLane lane) {
+        RequestLane previous = CURRENT.get();
+        CURRENT.set(lane);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /** Ámbito de {@link #enter(RequestLane)}; para try-with-resources. */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
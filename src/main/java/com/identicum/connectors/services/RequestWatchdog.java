@@ -0,0 +1,98 @@
+package com.identicum.connectors.services;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.identityconnectors.common.logging.Log;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vigila las peticiones HTTP en curso y llama a {@link HttpRequestBase#abort()} cuando el hilo que las ejecuta
+ * es interrumpido o vence el plazo de su operación. Sin esto la petición seguiría bloqueada en el socket hasta
+ * su timeout (30 s), ocupando hilo y conexión después de cancelar la tarea.
+ * <p>
+ * Es compartido por toda la JVM; el hilo que revisa las peticiones (daemon) solo corre mientras hay alguna
+ * registrada.
+ */
+final class RequestWatchdog {
+
+    private static final Log LOG = Log.getLog(RequestWatchdog.class);
+    static final long SCAN_MILLIS = 50;
+
+    private static final Set<Watch> ACTIVE = ConcurrentHashMap.newKeySet();
+    private static final ScheduledThreadPoolExecutor SCANNER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "koha-request-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+    private static ScheduledFuture<?> task;
+
+    static {
+        SCANNER.setKeepAliveTime(1, TimeUnit.SECONDS);
+        SCANNER.allowCoreThreadTimeOut(true);
+        SCANNER.setRemoveOnCancelPolicy(true);
+    }
+
+    private RequestWatchdog() {
+    }
+
+    /**
+     * Registra la petición del hilo actual con el plazo de su operación hasta cerrar el registro devuelto.
+     */
+    static Watch watch(HttpRequestBase request) {
+        Watch watch = new Watch(request, Thread.currentThread(), OperationDeadline.current());
+        ACTIVE.add(watch);
+        ensureScanning();
+        return watch;
+    }
+
+    private static synchronized void ensureScanning() {
+        if (task == null) {
+            task = SCANNER.scheduleWithFixedDelay(RequestWatchdog::scan, SCAN_MILLIS, SCAN_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    static void scan() {
+        long now = System.nanoTime();
+        for (Watch watch : ACTIVE) {
+            boolean interrupted = watch.thread.isInterrupted();
+            if (interrupted || (watch.deadline != null && now - watch.deadline >= 0)) {
+                ACTIVE.remove(watch);
+                LOG.warn("Abortando {0} {1}: {2}", watch.request.getMethod(), watch.request.getURI(),
+                        interrupted ? "hilo interrumpido" : "plazo de la operación agotado");
+                watch.request.abort();
+            }
+        }
+        synchronized (RequestWatchdog.class) {
+            if (ACTIVE.isEmpty() && task != null) {
+                task.cancel(false);
+                task = null;
+            }
+        }
+    }
+
+    static int activeCount() {
+        return ACTIVE.size();
+    }
+
+    /** Registro de {@link #watch(HttpRequestBase)}; para try-with-resources. */
+    static final class Watch implements AutoCloseable {
+        private final HttpRequestBase request;
+        private final Thread thread;
+        private final Long deadline;
+
+        private Watch(HttpRequestBase request, Thread thread, Long deadline) {
+            this.request = request;
+            this.thread = thread;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void close() {
+            ACTIVE.remove(this);
+        }
+    }
+}
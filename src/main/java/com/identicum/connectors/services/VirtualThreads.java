@@ -0,0 +1,18 @@
+package com.identicum.connectors.services;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Acceso a hilos virtuales. Esta versión (Java 8-20) no los soporta; el JAR multi-release
+ * incluye la implementación real en {@code META-INF/versions/21}.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /** @return un ejecutor con un hilo virtual por tarea, o null si la JVM no los soporta. */
+    static ExecutorService newExecutor(String namePrefix) {
+        return null;
+    }
+}
@@ -0,0 +1,46 @@
+package com.identicum.connectors.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Métricas acumuladas de espera (en cola de un carril, por límite de tasa): peticiones, espera media y máxima.
+ */
+public final class WaitStats {
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong waitedRequests = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    void record(long waitNanos) {
+        requests.incrementAndGet();
+        if (waitNanos > 0) {
+            waitedRequests.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /** Peticiones que tuvieron que esperar algo. */
+    public long getWaitedRequests() {
+        return waitedRequests.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+
+    public long getMeanWaitMillis() {
+        long count = requests.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / count);
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+}
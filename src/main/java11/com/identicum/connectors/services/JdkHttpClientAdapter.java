@@ -0,0 +1,204 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.KohaAuthenticator;
+import com.identicum.connectors.KohaConfiguration;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.util.EntityUtils;
+import org.identityconnectors.common.logging.Log;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Transporte sobre java.net.http.HttpClient (Java 11+). Negocia HTTP/2 y multiplexa las peticiones
+ * concurrentes sobre una única conexión TLS cuando Koha está detrás de un proxy HTTP/2.
+ * <p>
+ * Adapta peticiones y respuestas a los tipos de Apache HttpClient para que los servicios no cambien;
+ * los errores de red se traducen a las excepciones que {@link AbstractKohaService} reintenta.
+ * {@link HttpRequestBase#abort()} cancela el envío o cierra el cuerpo en lectura, y el timeout de la
+ * petición no pasa del plazo de la operación ({@link OperationDeadline}).
+ */
+public class JdkHttpClientAdapter implements HttpClientAdapter {
+
+    private static final Log LOG = Log.getLog(JdkHttpClientAdapter.class);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    /** Cabeceras que java.net.http gestiona por sí mismo y rechaza si se fijan a mano. */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    private final KohaAuthenticator authenticator;
+    private final HttpClient client;
+
+    public JdkHttpClientAdapter(KohaAuthenticator authenticator, KohaConfiguration configuration, SSLContext sslContext) {
+        this.authenticator = authenticator;
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NEVER);
+        if (sslContext != null) {
+            builder.sslContext(sslContext);
+        }
+        if (configuration.getTrustAllCertificates()) {
+            LOG.warn("trustAllCertificates con transporte JDK: la verificación de hostname solo se desactiva con -Djdk.internal.httpclient.disableHostnameVerification=true");
+        }
+        this.client = builder.build();
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        URI uri = request.getURI();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(requestTimeout());
+        for (Header header : request.getAllHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        String authorization = authenticator.getAuthorizationHeader();
+        if (authorization != null) {
+            builder.setHeader("Authorization", authorization);
+        }
+        builder.method(request.getMethod(), bodyPublisher(request));
+
+        CompletableFuture<HttpResponse<InputStream>> future =
+                client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        HttpRequestBase abortable = request instanceof HttpRequestBase ? (HttpRequestBase) request : null;
+        if (abortable != null) {
+            abortable.setCancellable(() -> future.cancel(true));
+        }
+        try {
+            JdkHttpResponse response = new JdkHttpResponse(future.get());
+            if (abortable != null) {
+                // Ya con cabeceras, abortar corta la lectura del cuerpo
+                abortable.setCancellable(() -> {
+                    response.closeQuietly();
+                    return true;
+                });
+            }
+            return response;
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Petición abortada: " + uri);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Petición interrumpida: " + uri);
+        } catch (ExecutionException e) {
+            throw translate(e.getCause(), uri);
+        }
+    }
+
+    private static IOException translate(Throwable cause, URI uri) {
+        if (cause instanceof HttpConnectTimeoutException) {
+            return new ConnectTimeoutException("Connect to " + uri.getHost() + " timed out: " + cause.getMessage());
+        }
+        if (cause instanceof HttpTimeoutException) {
+            return new SocketTimeoutException("Request to " + uri + " timed out: " + cause.getMessage());
+        }
+        if (cause instanceof ConnectException) {
+            return new HttpHostConnectException((ConnectException) cause, new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme()));
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException("Error en la petición a " + uri + ": " + cause, cause);
+    }
+
+    /**
+     * REQUEST_TIMEOUT, o lo que quede del plazo de la operación si es menos.
+     */
+    private static Duration requestTimeout() {
+        long remaining = OperationDeadline.remainingNanos();
+        if (remaining >= REQUEST_TIMEOUT.toNanos()) {
+            return REQUEST_TIMEOUT;
+        }
+        return Duration.ofNanos(Math.max(Duration.ofMillis(1).toNanos(), remaining));
+    }
+
+    private static HttpRequest.BodyPublisher bodyPublisher(HttpUriRequest request) throws IOException {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                return HttpRequest.BodyPublishers.ofByteArray(EntityUtils.toByteArray(entity));
+            }
+        }
+        return HttpRequest.BodyPublishers.noBody();
+    }
+
+    @Override
+    public void close() {
+        // java.net.http.HttpClient (Java 11) no expone close(): sus recursos se liberan al dejar de referenciarlo.
+        // El pool Apache del autenticador solo lo usa aquí el cliente del token OAuth2.
+        LOG.ok("Cerrando transporte JDK");
+        authenticator.close();
+    }
+
+    /**
+     * Respuesta de java.net.http expuesta como CloseableHttpResponse; el cuerpo se lee en streaming.
+     */
+    private static final class JdkHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        private final InputStream body;
+
+        JdkHttpResponse(HttpResponse<InputStream> response) {
+            super(new BasicStatusLine(
+                    response.version() == HttpClient.Version.HTTP_2 ? HTTP_2 : HttpVersion.HTTP_1_1,
+                    response.statusCode(),
+                    EnglishReasonPhraseCatalog.INSTANCE.getReason(response.statusCode(), Locale.ENGLISH)));
+            this.body = response.body();
+            response.headers().map().forEach((name, values) -> {
+                if (!name.startsWith(":")) {
+                    values.forEach(value -> addHeader(name, value));
+                }
+            });
+            BasicHttpEntity entity = new BasicHttpEntity();
+            entity.setContent(body);
+            entity.setContentLength(response.headers().firstValueAsLong("Content-Length").orElse(-1L));
+            response.headers().firstValue("Content-Type").ifPresent(entity::setContentType);
+            response.headers().firstValue("Content-Encoding").ifPresent(entity::setContentEncoding);
+            setEntity(entity);
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+
+        void closeQuietly() {
+            try {
+                body.close();
+            } catch (IOException e) {
+                LOG.ok("Error cerrando el cuerpo de una petición abortada: {0}", e.getMessage());
+            }
+        }
+    }
+}
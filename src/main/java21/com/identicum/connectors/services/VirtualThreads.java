@@ -0,0 +1,18 @@
+package com.identicum.connectors.services;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Acceso a hilos virtuales (Java 21+).
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /** @return un ejecutor con un hilo virtual por tarea. */
+    static ExecutorService newExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix + "-", 1).factory());
+    }
+}
@@ -0,0 +1,52 @@
+package com.identicum.connectors;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KohaAuthenticatorTest {
+
+    private static KohaConfiguration basicConfig(boolean trustAll) {
+        KohaConfiguration config = new KohaConfiguration();
+        config.setServiceAddress("https://koha.example.com");
+        config.setAuthenticationMethodStrategy("BASIC");
+        config.setUsername("admin");
+        config.setPassword(new GuardedString("secret".toCharArray()));
+        config.setTrustAllCertificates(trustAll);
+        return config;
+    }
+
+    @Test
+    void testSslContextIsBuiltOnceAndTunedForResumption() {
+        KohaAuthenticator authenticator = new KohaAuthenticator(basicConfig(false));
+
+        SSLContext first = authenticator.sharedSslContext();
+        SSLContext second = authenticator.sharedSslContext();
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(1024, first.getClientSessionContext().getSessionCacheSize());
+        assertEquals(24 * 60 * 60, first.getClientSessionContext().getSessionTimeout());
+    }
+
+    @Test
+    void testTrustAllContextIsAlsoShared() {
+        KohaAuthenticator authenticator = new KohaAuthenticator(basicConfig(true));
+
+        assertSame(authenticator.sharedSslContext(), authenticator.sharedSslContext());
+    }
+
+    @Test
+    void testClientCloseAndAuthenticatorCloseAreIdempotent() throws IOException {
+        KohaAuthenticator authenticator = new KohaAuthenticator(basicConfig(false));
+
+        authenticator.createAuthenticatedClient().close();
+        assertDoesNotThrow(authenticator::close);
+        assertEquals(0, authenticator.getTlsFullHandshakes());
+        assertEquals(0, authenticator.getTlsResumedHandshakes());
+    }
+}
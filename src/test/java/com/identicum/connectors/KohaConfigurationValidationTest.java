@@ -60,4 +60,17 @@ class KohaConfigurationValidationTest {
         config.setAuthenticationMethodStrategy("INVALID");
         assertThrows(IllegalArgumentException.class, config::validate);
     }
+
+    @Test
+    void testTransportBackend() {
+        KohaConfiguration config = new KohaConfiguration();
+        config.setServiceAddress("http://koha.example.com");
+        config.setAuthenticationMethodStrategy("BASIC");
+        config.setUsername("admin");
+        config.setPassword(new org.identityconnectors.common.security.GuardedString("secret".toCharArray()));
+        config.setTransportBackend("jdk");
+        assertDoesNotThrow(config::validate);
+        config.setTransportBackend("APACHE5");
+        assertThrows(IllegalArgumentException.class, config::validate);
+    }
 }
@@ -1,6 +1,7 @@
 package com.identicum.connectors;
 
 import com.identicum.connectors.services.CategoryService;
+import com.identicum.connectors.services.PatronIdentityIndex;
 import com.identicum.connectors.services.PatronService;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
@@ -17,6 +18,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.InjectMocks;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
@@ -42,6 +44,9 @@ public class KohaConnectorIntegrationTest {
     @Mock
     private KohaConfiguration configuration;
 
+    @Spy
+    private PatronIdentityIndex identityIndex = PatronIdentityIndex.forInstance("KohaConnectorIntegrationTest", 16);
+
     @InjectMocks
     private KohaConnector connector;
 
@@ -126,6 +131,29 @@ public class KohaConnectorIntegrationTest {
         verify(patronService, times(1)).searchPatrons(any(KohaFilter.class), any(), any());
     }
 
+    @Test
+    void executeQuery_byEmail_returnsEveryOwnerEvenIfOnlyOneIsIndexed() throws Exception {
+        JSONObject indexed = new JSONObject().put("patron_id", 1).put("userid", "ana").put("email", "familia@upeu.edu.pe");
+        JSONObject notIndexed = new JSONObject().put("patron_id", 2).put("userid", "luis").put("email", "familia@upeu.edu.pe");
+        identityIndex.index(indexed);
+        when(patronService.getPatron("1")).thenReturn(indexed);
+        doAnswer(invocation -> {
+            java.util.function.Predicate<JSONObject> consumer = invocation.getArgument(2);
+            consumer.test(indexed);
+            consumer.test(notIndexed);
+            return null;
+        }).when(patronService).searchPatrons(any(KohaFilter.class), any(), any());
+
+        KohaFilter filter = new KohaFilter();
+        filter.setByEmail("familia@upeu.edu.pe");
+        List<String> foundUids = new ArrayList<>();
+        connector.executeQuery(ObjectClass.ACCOUNT, filter, connectorObject -> foundUids.add(connectorObject.getUid().getUidValue()),
+                new OperationOptionsBuilder().build());
+
+        assertEquals(2, foundUids.size(), "La correlación por email debe ver la ambigüedad");
+        verify(patronService, never()).getPatron(any());
+    }
+
     @Test
     void create_patron_success() throws Exception {
         JSONObject createdPatron = new JSONObject().put("patron_id", 99);
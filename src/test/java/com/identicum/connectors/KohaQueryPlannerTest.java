@@ -0,0 +1,117 @@
+package com.identicum.connectors;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KohaQueryPlannerTest {
+
+    private final KohaQueryPlanner planner = new KohaQueryPlanner();
+
+    private static JSONObject patron(String userid, String surname, String email) {
+        return new JSONObject().put("patron_id", 1).put("userid", userid).put("surname", surname)
+                .put("email", email == null ? JSONObject.NULL : email).put("login_attempts", 3)
+                .put("patron_card_lost", false).put("expired", false);
+    }
+
+    private KohaFilter plan(Filter filter) {
+        List<KohaFilter> plan = planner.translate(filter);
+        assertEquals(1, plan.size());
+        return plan.get(0);
+    }
+
+    @Test
+    void testSupportedConjunctsArePushedTogether() {
+        KohaFilter filter = plan(FilterBuilder.and(
+                FilterBuilder.equalTo(new Name("jdoe")),
+                FilterBuilder.equalTo(AttributeBuilder.build("category_id", "ST"))));
+
+        assertEquals("jdoe", filter.getByName());
+        assertEquals("ST", filter.getByCategoryId());
+        assertNull(filter.getResidual());
+    }
+
+    @Test
+    void testUnsupportedConjunctBecomesResidual() {
+        KohaFilter filter = plan(FilterBuilder.and(
+                FilterBuilder.equalTo(AttributeBuilder.build("category_id", "ST")),
+                FilterBuilder.equalTo(AttributeBuilder.build("surname", "Doe"))));
+
+        assertEquals("ST", filter.getByCategoryId());
+        assertNotNull(filter.getResidual());
+        assertTrue(filter.matchesResidual(patron("jdoe", "Doe", null)));
+        assertFalse(filter.matchesResidual(patron("jroe", "Roe", null)));
+    }
+
+    @Test
+    void testNotIsEvaluatedLocally() {
+        KohaFilter filter = plan(FilterBuilder.not(FilterBuilder.equalTo(AttributeBuilder.build("email", "a@x.org"))));
+
+        assertFalse(filter.hasCriteria());
+        assertFalse(filter.matchesResidual(patron("a", "A", "a@x.org")));
+        assertTrue(filter.matchesResidual(patron("b", "B", "b@x.org")));
+        assertTrue(filter.matchesResidual(patron("c", "C", null)));
+    }
+
+    @Test
+    void testOrAndComparisonsAreEvaluatedLocally() {
+        KohaFilter filter = plan(FilterBuilder.or(
+                FilterBuilder.startsWith(AttributeBuilder.build("surname", "Do")),
+                FilterBuilder.greaterThan(AttributeBuilder.build("login_attempts", 5))));
+
+        assertFalse(filter.hasCriteria());
+        assertTrue(filter.matchesResidual(patron("jdoe", "Doe", null)));
+        assertFalse(filter.matchesResidual(patron("jroe", "Roe", null)));
+        assertTrue(filter.matchesResidual(patron("jroe", "Roe", null).put("login_attempts", 9)));
+    }
+
+    @Test
+    void testConflictingMatchTypesKeepOneConjunctResidual() {
+        KohaFilter filter = plan(FilterBuilder.and(
+                FilterBuilder.startsWith(new Name("jd")),
+                FilterBuilder.equalTo(AttributeBuilder.build("email", "jdoe@x.org"))));
+
+        assertEquals("jd", filter.getByName());
+        assertEquals("starts_with", filter.getMatchType());
+        assertNull(filter.getByEmail());
+        assertTrue(filter.matchesResidual(patron("jdoe", "Doe", "jdoe@x.org")));
+        assertFalse(filter.matchesResidual(patron("jdoe", "Doe", "other@x.org")));
+    }
+
+    @Test
+    void testUidIsNotCombinedWithOtherCriteria() {
+        KohaFilter filter = plan(FilterBuilder.and(
+                FilterBuilder.equalTo(new Uid("1")),
+                FilterBuilder.equalTo(new Name("jdoe"))));
+
+        assertEquals("1", filter.getByUid());
+        assertNull(filter.getByName());
+        assertTrue(filter.matchesResidual(patron("jdoe", "Doe", null)));
+        assertFalse(filter.matchesResidual(patron("other", "Doe", null)));
+    }
+
+    @Test
+    void testEnableAttributeIsEvaluatedFromKohaFlags() {
+        KohaFilter filter = plan(FilterBuilder.equalTo(AttributeBuilder.build(OperationalAttributes.ENABLE_NAME, false)));
+
+        assertFalse(filter.matchesResidual(patron("jdoe", "Doe", null)));
+        assertTrue(filter.matchesResidual(patron("jdoe", "Doe", null).put("patron_card_lost", true)));
+    }
+
+    @Test
+    void testFilterThatCannotBeEvaluatedFallsBackToFramework() {
+        List<KohaFilter> plan = planner.translate(FilterBuilder.equalTo(
+                AttributeBuilder.build("extended_attributes", "{\"type\":\"DNI\",\"value\":\"1\"}")));
+
+        assertTrue(plan.isEmpty());
+    }
+}
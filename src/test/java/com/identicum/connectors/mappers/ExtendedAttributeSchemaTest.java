@@ -0,0 +1,125 @@
+package com.identicum.connectors.mappers;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.AttributeInfo;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtendedAttributeSchemaTest {
+
+    private static List<JSONObject> types() {
+        return Arrays.asList(
+                new JSONObject().put("extended_attribute_type_id", "DNI").put("repeatable", false),
+                new JSONObject().put("extended_attribute_type_id", "ORCID").put("repeatable", true));
+    }
+
+    private static PatronMapper mapperWithTypes() {
+        PatronMapper mapper = new PatronMapper();
+        mapper.setExtendedAttributeSchema(new ExtendedAttributeSchema(types()));
+        return mapper;
+    }
+
+    @Test
+    void testAttributeInfosFollowTypeDefinitions() {
+        List<AttributeInfo> infos = new ExtendedAttributeSchema(types()).attributeInfos();
+
+        assertEquals(2, infos.size());
+        assertEquals("ext_DNI", infos.get(0).getName());
+        assertEquals("DNI", infos.get(0).getNativeName());
+        assertFalse(infos.get(0).isMultiValued());
+        assertEquals("ext_ORCID", infos.get(1).getName());
+        assertTrue(infos.get(1).isMultiValued());
+    }
+
+    @Test
+    void testReadGroupsValuesByTypeAndKeepsUnknownTypes() {
+        JSONObject kohaJson = new JSONObject().put("patron_id", 42).put("userid", "jdoe")
+                .put("extended_attributes", new JSONArray()
+                        .put(new JSONObject().put("type", "DNI").put("value", "12345678"))
+                        .put(new JSONObject().put("type", "ORCID").put("value", "0000-0001"))
+                        .put(new JSONObject().put("type", "ORCID").put("value", "0000-0002"))
+                        .put(new JSONObject().put("type", "NEW").put("value", "x")));
+
+        ConnectorObject co = mapperWithTypes().convertJsonToPatronObject(kohaJson);
+
+        assertEquals(Collections.singletonList("12345678"), co.getAttributeByName("ext_DNI").getValue());
+        assertEquals(Arrays.asList("0000-0001", "0000-0002"), co.getAttributeByName("ext_ORCID").getValue());
+        Attribute legacy = co.getAttributeByName("extended_attributes");
+        assertNotNull(legacy);
+        assertEquals(1, legacy.getValue().size());
+        assertEquals("NEW", new JSONObject(legacy.getValue().get(0).toString()).getString("type"));
+    }
+
+    @Test
+    void testCreatePayloadIncludesTypedValues() {
+        Set<Attribute> attrs = new HashSet<>();
+        attrs.add(AttributeBuilder.build("surname", "Doe"));
+        attrs.add(AttributeBuilder.build("ext_ORCID", "0000-0001", "0000-0002"));
+        attrs.add(AttributeBuilder.build("extended_attributes", "{\"type\":\"NEW\",\"value\":\"x\"}"));
+
+        JSONObject json = mapperWithTypes().buildPatronJson(attrs, true);
+
+        JSONArray ext = json.getJSONArray("extended_attributes");
+        assertEquals(3, ext.length());
+        int orcid = 0;
+        for (int i = 0; i < ext.length(); i++) {
+            if ("ORCID".equals(ext.getJSONObject(i).getString("type"))) orcid++;
+        }
+        assertEquals(2, orcid);
+    }
+
+    @Test
+    void testUpdatePayloadLeavesTypedValuesToSubResource() {
+        Set<Attribute> attrs = new HashSet<>();
+        attrs.add(AttributeBuilder.build("ext_DNI", "999"));
+
+        JSONObject json = mapperWithTypes().buildPatronJson(attrs, false);
+
+        assertFalse(json.has("extended_attributes"));
+        assertFalse(json.has("ext_DNI"));
+    }
+
+    @Test
+    void testWithoutSchemaExtAttributesAreIgnored() {
+        Set<Attribute> attrs = new HashSet<>();
+        attrs.add(AttributeBuilder.build("ext_DNI", "999"));
+
+        JSONObject json = new PatronMapper().buildPatronJson(attrs, true);
+
+        assertEquals(0, json.length());
+    }
+
+    @Test
+    void testForInstanceCachesAndFallsBackOnFailure() {
+        AtomicInteger loads = new AtomicInteger();
+        String scope = "http://koha-ext-" + System.nanoTime() + "|svc";
+
+        ExtendedAttributeSchema first = ExtendedAttributeSchema.forInstance(scope, 60, () -> {
+            loads.incrementAndGet();
+            return types();
+        });
+        ExtendedAttributeSchema second = ExtendedAttributeSchema.forInstance(scope, 60, () -> {
+            loads.incrementAndGet();
+            return types();
+        });
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertNull(ExtendedAttributeSchema.forInstance(scope + "-down", 60, () -> {
+            throw new IOException("down");
+        }));
+    }
+}
@@ -0,0 +1,91 @@
+package com.identicum.connectors.mappers;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelPageMapperTest {
+
+    private static List<JSONObject> page(int size) {
+        List<JSONObject> page = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            page.add(new JSONObject().put("patron_id", i).put("userid", "user" + i));
+        }
+        return page;
+    }
+
+    @Test
+    void testItemsAreDeliveredInOriginalOrder() {
+        Set<String> mappingThreads = ConcurrentHashMap.newKeySet();
+        ParallelPageMapper<JSONObject, String> mapper = ParallelPageMapper.forParallelism(4, patron -> {
+            mappingThreads.add(Thread.currentThread().getName());
+            sleepQuietly();
+            return patron.getString("userid");
+        });
+        List<String> delivered = new ArrayList<>();
+
+        int accepted = mapper.mapInOrder(page(500), (patron, userid) -> {
+            assertEquals("user" + patron.getInt("patron_id"), userid);
+            return delivered.add(userid);
+        });
+
+        assertEquals(500, accepted);
+        for (int i = 0; i < 500; i++) {
+            assertEquals("user" + i, delivered.get(i));
+        }
+        assertTrue(mappingThreads.size() > 1, "Las páginas grandes se mapean en varios hilos");
+    }
+
+    private static void sleepQuietly() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void testConsumerStopEndsDeliveryAndSkipsPendingChunks() {
+        AtomicInteger mapped = new AtomicInteger();
+        ParallelPageMapper<JSONObject, String> mapper = ParallelPageMapper.forParallelism(2, patron -> {
+            mapped.incrementAndGet();
+            return patron.getString("userid");
+        });
+        List<String> delivered = new ArrayList<>();
+
+        int accepted = mapper.mapInOrder(page(1000), (patron, userid) -> delivered.size() < 20 && delivered.add(userid));
+
+        assertEquals(20, accepted);
+        assertEquals(20, delivered.size());
+        assertEquals("user19", delivered.get(19));
+    }
+
+    @Test
+    void testSmallPageIsMappedOnTheCallingThread() {
+        String caller = Thread.currentThread().getName();
+        ParallelPageMapper<JSONObject, String> mapper = ParallelPageMapper.forParallelism(4, patron -> Thread.currentThread().getName());
+
+        int accepted = mapper.mapInOrder(page(ParallelPageMapper.MIN_CHUNK), (patron, thread) -> caller.equals(thread));
+
+        assertEquals(ParallelPageMapper.MIN_CHUNK, accepted);
+    }
+
+    @Test
+    void testMappingFailureReachesTheCaller() {
+        ParallelPageMapper<JSONObject, String> mapper = ParallelPageMapper.forParallelism(4, patron -> {
+            if (patron.getInt("patron_id") == 300) {
+                throw new IllegalStateException("patrón inválido");
+            }
+            return patron.getString("userid");
+        });
+
+        assertThrows(IllegalStateException.class, () -> mapper.mapInOrder(page(500), (patron, userid) -> true));
+    }
+}
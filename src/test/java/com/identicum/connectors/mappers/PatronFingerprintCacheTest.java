@@ -0,0 +1,87 @@
+package com.identicum.connectors.mappers;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatronFingerprintCacheTest {
+
+    private final PatronMapper patronMapper = new PatronMapper();
+
+    @Test
+    void testFingerprintIgnoresKeyOrderButNotTypes() {
+        JSONObject a = new JSONObject("{\"patron_id\":1,\"userid\":\"jdoe\",\"extended_attributes\":[{\"type\":\"DNI\",\"value\":\"1\"}]}");
+        JSONObject b = new JSONObject("{\"extended_attributes\":[{\"value\":\"1\",\"type\":\"DNI\"}],\"userid\":\"jdoe\",\"patron_id\":1}");
+        JSONObject c = new JSONObject("{\"patron_id\":\"1\",\"userid\":\"jdoe\",\"extended_attributes\":[{\"type\":\"DNI\",\"value\":\"1\"}]}");
+
+        assertEquals(PatronFingerprintCache.fingerprint(a), PatronFingerprintCache.fingerprint(b));
+        assertNotEquals(PatronFingerprintCache.fingerprint(a), PatronFingerprintCache.fingerprint(c));
+    }
+
+    @Test
+    void testUnchangedPatronReusesConnectorObject() {
+        PatronFingerprintCache cache = new PatronFingerprintCache(10);
+        AtomicInteger conversions = new AtomicInteger();
+        Function<JSONObject, ConnectorObject> mapper = json -> {
+            conversions.incrementAndGet();
+            return patronMapper.convertJsonToPatronObject(json);
+        };
+
+        ConnectorObject first = cache.toConnectorObject(new JSONObject("{\"patron_id\":7,\"userid\":\"ana\",\"surname\":\"Paz\"}"), 0, mapper);
+        ConnectorObject second = cache.toConnectorObject(new JSONObject("{\"surname\":\"Paz\",\"userid\":\"ana\",\"patron_id\":7}"), 0, mapper);
+        ConnectorObject third = cache.toConnectorObject(new JSONObject("{\"patron_id\":7,\"userid\":\"ana\",\"surname\":\"Ruiz\"}"), 0, mapper);
+
+        assertSame(first, second);
+        assertNotSame(second, third);
+        assertEquals(2, conversions.get());
+        PatronFingerprintCache.Stats stats = cache.stats();
+        assertEquals(1, stats.getUnchanged());
+        assertEquals(1, stats.getChanged());
+        assertEquals(1, stats.getAdded());
+    }
+
+    @Test
+    void testTypedExtendedAttributeSchemaIsPartOfTheCacheKey() {
+        PatronFingerprintCache cache = new PatronFingerprintCache(10);
+        JSONObject patron = new JSONObject("{\"patron_id\":7,\"userid\":\"ana\",\"extended_attributes\":[{\"type\":\"DNI\",\"value\":\"1\"}]}");
+        PatronMapper typed = new PatronMapper();
+        typed.setExtendedAttributeSchema(new ExtendedAttributeSchema(Collections.singletonList(
+                new JSONObject().put("extended_attribute_type_id", "DNI").put("repeatable", false))));
+        PatronMapper repeatable = new PatronMapper();
+        repeatable.setExtendedAttributeSchema(new ExtendedAttributeSchema(Collections.singletonList(
+                new JSONObject().put("extended_attribute_type_id", "DNI").put("repeatable", true))));
+        PatronMapper sameTypes = new PatronMapper();
+        sameTypes.setExtendedAttributeSchema(new ExtendedAttributeSchema(Collections.singletonList(
+                new JSONObject().put("extended_attribute_type_id", "DNI").put("repeatable", false))));
+
+        ConnectorObject plain = cache.toConnectorObject(patron, patronMapper.getMappingVersion(), patronMapper::convertJsonToPatronObject);
+        ConnectorObject withTyped = cache.toConnectorObject(patron, typed.getMappingVersion(), typed::convertJsonToPatronObject);
+        ConnectorObject reloaded = cache.toConnectorObject(patron, sameTypes.getMappingVersion(), sameTypes::convertJsonToPatronObject);
+        ConnectorObject changedSchema = cache.toConnectorObject(patron, repeatable.getMappingVersion(), repeatable::convertJsonToPatronObject);
+
+        assertNull(plain.getAttributeByName("ext_DNI"));
+        assertNotNull(withTyped.getAttributeByName("ext_DNI"));
+        assertSame(withTyped, reloaded, "Un esquema recargado con los mismos tipos reutiliza la entrada");
+        assertNotSame(reloaded, changedSchema);
+    }
+
+    @Test
+    void testCacheIsBounded() {
+        PatronFingerprintCache cache = new PatronFingerprintCache(1);
+        cache.toConnectorObject(new JSONObject("{\"patron_id\":1,\"userid\":\"a\"}"), 0, patronMapper::convertJsonToPatronObject);
+        cache.toConnectorObject(new JSONObject("{\"patron_id\":2,\"userid\":\"b\"}"), 0, patronMapper::convertJsonToPatronObject);
+
+        assertEquals(1, cache.size());
+        assertNotNull(cache.getFingerprint("1"));
+        assertNull(cache.getFingerprint("2"));
+
+        cache.invalidate("1");
+        assertEquals(0, cache.size());
+    }
+}
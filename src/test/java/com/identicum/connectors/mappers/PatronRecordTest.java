@@ -0,0 +1,63 @@
+package com.identicum.connectors.mappers;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatronRecordTest {
+
+    private static final String PATRON = "{\"patron_id\": 42, \"userid\": \"jquispe\", \"cardnumber\": \"C042\","
+            + " \"surname\": \"Quispe\", \"firstname\": null, \"email\": \"jquispe@upeu.edu.pe\","
+            + " \"library_id\": \"LIM\", \"category_id\": \"EST\", \"date_of_birth\": \"2001-04-12\","
+            + " \"updated_on\": \"2025-03-01T10:15:30+00:00\", \"patron_card_lost\": false, \"expired\": \"true\","
+            + " \"login_attempts\": 2, \"street_number\": \"120\", \"altcontact_firstname\": null,"
+            + " \"extended_attributes\": [{\"extended_attribute_id\": 7, \"type\": \"DNI\", \"value\": \"70123456\"}]}";
+
+    @Test
+    void testRecordConvertsLikeTheJsonObject() {
+        PatronMapper mapper = new PatronMapper();
+        JSONObject json = new JSONObject(PATRON);
+        PatronRecord record = PatronRecord.read(new JSONTokener(PATRON));
+
+        ConnectorObject fromJson = mapper.convertJsonToPatronObject(json);
+        ConnectorObject fromRecord = mapper.convertRecordToPatronObject(record);
+
+        assertEquals(fromJson.getAttributes(), fromRecord.getAttributes());
+        assertEquals(json.length(), record.length());
+        assertTrue(json.similar(record.toJSONObject()));
+        assertEquals(PatronFingerprintCache.fingerprint(json), PatronFingerprintCache.fingerprint(record),
+                "Ambas representaciones deben compartir las entradas de la caché de huellas");
+    }
+
+    @Test
+    void testFieldsWithoutMetadataAreKept() {
+        PatronRecord record = PatronRecord.read(new JSONTokener(PATRON));
+
+        assertEquals("120", record.opt("street_number"));
+        assertEquals(JSONObject.NULL, record.opt("altcontact_firstname"));
+        assertEquals(JSONObject.NULL, record.opt("firstname"));
+        assertNull(record.opt("phone"), "Un campo ausente no es JSONObject.NULL");
+        assertNull(record.opt("never_sent_by_koha"));
+    }
+
+    @Test
+    void testReadListAcceptsArrayWrapperAndSingleObject() {
+        List<PatronRecord> array = PatronRecord.readList(new JSONTokener("[" + PATRON + ", {\"patron_id\": 43}]"), "patrons");
+        assertEquals(2, array.size());
+        assertEquals(43, array.get(1).opt("patron_id"));
+
+        List<PatronRecord> wrapped = PatronRecord.readList(new JSONTokener("{\"patrons\": [" + PATRON + "]}"), "patrons");
+        assertEquals(1, wrapped.size());
+        assertEquals("jquispe", wrapped.get(0).opt("userid"));
+
+        assertEquals(1, PatronRecord.readList(new JSONTokener(PATRON), "patrons").size());
+        assertTrue(PatronRecord.readList(new JSONTokener("[ ]"), "patrons").isEmpty());
+        assertThrows(JSONException.class, () -> PatronRecord.readList(new JSONTokener("[" + PATRON + " " + PATRON + "]"), "patrons"));
+    }
+}
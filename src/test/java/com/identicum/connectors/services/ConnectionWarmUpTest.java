@@ -0,0 +1,60 @@
+package com.identicum.connectors.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionWarmUpTest {
+
+    @Test
+    void testWarmUpOpensOneRequestPerConnection() {
+        AtomicInteger tokens = new AtomicInteger();
+        AtomicInteger schemas = new AtomicInteger();
+        Set<Integer> indexes = ConcurrentHashMap.newKeySet();
+
+        ConnectionWarmUp warmUp = new ConnectionWarmUp("http://localhost", 3, KohaExecutors.PLATFORM,
+                tokens::incrementAndGet, indexes::add, schemas::incrementAndGet);
+        warmUp.run();
+
+        assertEquals(3, warmUp.getOpenedConnections());
+        assertEquals(3, indexes.size(), "Cada conexión debe usar una petición distinta");
+        assertEquals(1, tokens.get());
+        assertEquals(1, schemas.get());
+    }
+
+    @Test
+    void testFailedStepsDoNotStopTheWarmUp() {
+        AtomicInteger schemas = new AtomicInteger();
+
+        ConnectionWarmUp warmUp = new ConnectionWarmUp("http://localhost", 2, KohaExecutors.PLATFORM,
+                () -> {
+                    throw new IOException("token endpoint down");
+                },
+                index -> {
+                    if (index == 0) throw new IOException("refused");
+                },
+                schemas::incrementAndGet);
+        warmUp.run();
+
+        assertEquals(1, warmUp.getOpenedConnections());
+        assertEquals(1, schemas.get());
+    }
+
+    @Test
+    void testStartRunsInBackground() throws Exception {
+        AtomicInteger schemas = new AtomicInteger();
+        ConnectionWarmUp warmUp = new ConnectionWarmUp("http://localhost", 1, KohaExecutors.PLATFORM,
+                null, index -> { }, schemas::incrementAndGet);
+
+        warmUp.start().get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, warmUp.getOpenedConnections());
+        assertEquals(1, schemas.get());
+    }
+}
@@ -0,0 +1,142 @@
+package com.identicum.connectors.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EndpointBalancerTest {
+
+    private static final long EJECTION_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    private EndpointBalancer balancer(String strategy, String... addresses) {
+        return new EndpointBalancer(Arrays.asList(addresses), strategy, EJECTION_NANOS, clock::get, new Random(42));
+    }
+
+    @Test
+    void testParseAddressesSplitsTrimsAndDeduplicates() {
+        assertEquals(Arrays.asList("https://koha1", "https://koha2"),
+                EndpointBalancer.parseAddresses(" https://koha1/ , https://koha2,https://koha1,"));
+        assertEquals("https://koha1", EndpointBalancer.primaryAddress("https://koha1, https://koha2"));
+    }
+
+    @Test
+    void testLeastOutstandingPicksTheIdleNode() {
+        EndpointBalancer balancer = balancer(EndpointBalancer.LEAST_OUTSTANDING, "http://a", "http://b", "http://c");
+        EndpointBalancer.Node first = balancer.choose();
+        EndpointBalancer.Node second = balancer.choose();
+        EndpointBalancer.Node third = balancer.choose();
+
+        assertEquals(3, Arrays.asList(first, second, third).stream().distinct().count(), "Cada petición en vuelo debe ir a un nodo libre");
+        balancer.release(second, 1_000_000, false);
+        assertSame(second, balancer.choose());
+    }
+
+    @Test
+    void testPowerOfTwoNeverPicksTheBusierOfTwoNodes() {
+        EndpointBalancer balancer = balancer(EndpointBalancer.POWER_OF_TWO, "http://a", "http://b");
+        EndpointBalancer.Node busy = balancer.choose();
+        for (int i = 0; i < 20; i++) {
+            EndpointBalancer.Node chosen = balancer.choose();
+            assertNotSame(busy, chosen);
+            balancer.release(chosen, 1_000_000, false);
+        }
+    }
+
+    @Test
+    void testConsecutiveFailuresEjectUntilProbeSucceeds() {
+        EndpointBalancer balancer = balancer(EndpointBalancer.LEAST_OUTSTANDING, "http://a", "http://b");
+        EndpointBalancer.Node a = balancer.getNodes().get(0);
+        for (int i = 0; i < EndpointBalancer.FAILURE_THRESHOLD; i++) {
+            balancer.release(chooseUntil(balancer, a), 1_000_000, true);
+        }
+        assertTrue(a.isEjected());
+        for (int i = 0; i < 10; i++) {
+            EndpointBalancer.Node chosen = balancer.choose();
+            assertNotSame(a, chosen);
+            balancer.release(chosen, 1_000_000, false);
+        }
+        assertTrue(balancer.dueForProbe().isEmpty(), "La sonda no se lanza antes de que venza la expulsión");
+
+        clock.addAndGet(EJECTION_NANOS);
+        List<EndpointBalancer.Node> due = balancer.dueForProbe();
+        assertEquals(1, due.size());
+        assertTrue(balancer.dueForProbe().isEmpty(), "Sólo un llamador debe sondear el nodo");
+        assertTrue(a.isEjected(), "El nodo no vuelve al reparto hasta que la sonda responde");
+
+        balancer.probeSucceeded(a);
+        assertFalse(a.isEjected());
+    }
+
+    @Test
+    void testFailedProbeDoublesTheEjection() {
+        EndpointBalancer balancer = balancer(EndpointBalancer.LEAST_OUTSTANDING, "http://a", "http://b");
+        EndpointBalancer.Node a = balancer.getNodes().get(0);
+        for (int i = 0; i < EndpointBalancer.FAILURE_THRESHOLD; i++) {
+            balancer.release(chooseUntil(balancer, a), 1_000_000, true);
+        }
+        clock.addAndGet(EJECTION_NANOS);
+        balancer.probeFailed(balancer.dueForProbe().get(0));
+
+        clock.addAndGet(EJECTION_NANOS);
+        assertTrue(balancer.dueForProbe().isEmpty(), "Tras una sonda fallida la expulsión dura el doble");
+        clock.addAndGet(EJECTION_NANOS);
+        assertEquals(1, balancer.dueForProbe().size());
+    }
+
+    @Test
+    void testAllNodesEjectedFallsBackToTheSoonestBack() {
+        EndpointBalancer balancer = balancer(EndpointBalancer.LEAST_OUTSTANDING, "http://a", "http://b");
+        EndpointBalancer.Node a = balancer.getNodes().get(0);
+        EndpointBalancer.Node b = balancer.getNodes().get(1);
+        for (int i = 0; i < EndpointBalancer.FAILURE_THRESHOLD; i++) {
+            balancer.release(chooseUntil(balancer, b), 1_000_000, true);
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        for (int i = 0; i < EndpointBalancer.FAILURE_THRESHOLD; i++) {
+            balancer.release(balancer.choose(), 1_000_000, true);
+        }
+        assertTrue(a.isEjected() && b.isEjected());
+        assertSame(b, balancer.choose());
+    }
+
+    @Test
+    void testSlowResponsesOnlyLoseTiesAndNeverEject() {
+        EndpointBalancer balancer = balancer(EndpointBalancer.LEAST_OUTSTANDING, "http://a", "http://b");
+        EndpointBalancer.Node a = balancer.getNodes().get(0);
+        EndpointBalancer.Node b = balancer.getNodes().get(1);
+        balancer.release(chooseUntil(balancer, b), TimeUnit.MILLISECONDS.toNanos(50), false);
+        balancer.release(chooseUntil(balancer, a), TimeUnit.SECONDS.toNanos(3), false);
+
+        assertFalse(a.isEjected(), "Una página de búsqueda lenta no indica un nodo enfermo");
+        assertFalse(b.isEjected());
+        assertSame(b, balancer.choose(), "A igualdad de peticiones en vuelo gana la menor latencia media");
+    }
+
+    /** Elige hasta obtener {@code target}; los nodos intermedios siguen en vuelo hasta entonces y luego se liberan. */
+    private static EndpointBalancer.Node chooseUntil(EndpointBalancer balancer, EndpointBalancer.Node target) {
+        List<EndpointBalancer.Node> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < 100; i++) {
+                EndpointBalancer.Node chosen = balancer.choose();
+                if (chosen == target) {
+                    return chosen;
+                }
+                held.add(chosen);
+            }
+            throw new AssertionError("No se eligió " + target);
+        } finally {
+            for (EndpointBalancer.Node node : held) {
+                balancer.release(node, 0, false);
+            }
+        }
+    }
+}
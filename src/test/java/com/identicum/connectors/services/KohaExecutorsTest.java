@@ -0,0 +1,42 @@
+package com.identicum.connectors.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KohaExecutorsTest {
+
+    @Test
+    void testVirtualModeRunsTasksOnAnyJvm() throws Exception {
+        ExecutorService executor = KohaExecutors.newExecutor(KohaExecutors.VIRTUAL, "koha-test", 2);
+        try {
+            assertEquals("ok", executor.submit(() -> "ok").get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testPlatformThreadsAreNamedDaemons() throws Exception {
+        ExecutorService executor = KohaExecutors.newExecutor(null, "koha-test", 1);
+        try {
+            Thread worker = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+            assertTrue(worker.isDaemon());
+            assertTrue(worker.getName().startsWith("koha-test-"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testHostPermitsAreSharedPerHostAndLimit() {
+        Semaphore first = KohaExecutors.hostPermits("https://koha-a.example.com", 5);
+        assertSame(first, KohaExecutors.hostPermits("https://koha-a.example.com", 5));
+        assertNotSame(first, KohaExecutors.hostPermits("https://koha-b.example.com", 5));
+        assertEquals(5, first.availablePermits());
+    }
+}
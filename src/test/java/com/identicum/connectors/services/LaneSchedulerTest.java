@@ -0,0 +1,110 @@
+package com.identicum.connectors.services;
+
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LaneSchedulerTest {
+
+    @Test
+    void testBulkLaneCannotTakeTheReservedCapacity() throws Exception {
+        LaneScheduler scheduler = new LaneScheduler(3, 1);
+        scheduler.acquire(RequestLane.BULK);
+        scheduler.acquire(RequestLane.BULK);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> thirdBulk = executor.submit(() -> scheduler.acquire(RequestLane.BULK));
+            assertThrows(TimeoutException.class, () -> thirdBulk.get(200, TimeUnit.MILLISECONDS),
+                    "El carril masivo no debe pasar de capacidad - reservadas");
+
+            scheduler.acquire(RequestLane.INTERACTIVE);
+            scheduler.release(RequestLane.INTERACTIVE);
+            scheduler.release(RequestLane.BULK);
+            thirdBulk.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(3, scheduler.getStats(RequestLane.BULK).getRequests());
+        assertEquals(1, scheduler.getStats(RequestLane.INTERACTIVE).getRequests());
+    }
+
+    @Test
+    void testWaitingInteractiveRequestGoesBeforeBulk() throws Exception {
+        LaneScheduler scheduler = new LaneScheduler(2, 1);
+        scheduler.acquire(RequestLane.BULK);
+        scheduler.acquire(RequestLane.INTERACTIVE);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch interactiveStarted = new CountDownLatch(1);
+            Future<Long> interactive = executor.submit(() -> {
+                interactiveStarted.countDown();
+                return scheduler.acquire(RequestLane.INTERACTIVE);
+            });
+            interactiveStarted.await();
+            Thread.sleep(100);
+            Future<Long> bulk = executor.submit(() -> scheduler.acquire(RequestLane.BULK));
+
+            scheduler.release(RequestLane.BULK);
+            interactive.get(5, TimeUnit.SECONDS);
+            assertThrows(TimeoutException.class, () -> bulk.get(200, TimeUnit.MILLISECONDS),
+                    "La petición interactiva en espera debe tomar el hueco libre");
+
+            scheduler.release(RequestLane.INTERACTIVE);
+            bulk.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testAdapterHoldsTheTurnUntilTheResponseIsClosed() throws Exception {
+        HttpClientAdapter delegate = mock(HttpClientAdapter.class);
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(response.getStatusLine()).thenReturn(statusLine);
+        when(delegate.execute(any(HttpUriRequest.class))).thenReturn(response);
+        LaneScheduler scheduler = new LaneScheduler(2, 1);
+        PriorityHttpClientAdapter adapter = new PriorityHttpClientAdapter(delegate, scheduler);
+
+        CloseableHttpResponse first;
+        try (RequestLane.Scope ignored = RequestLane.enter(RequestLane.BULK)) {
+            first = adapter.execute(new HttpGet("http://koha/api/v1/patrons?_page=1"));
+        }
+        assertEquals(200, first.getStatusLine().getStatusCode());
+        assertEquals(RequestLane.INTERACTIVE, RequestLane.current(), "El ámbito restaura el carril anterior");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<CloseableHttpResponse> second = executor.submit(() -> {
+                try (RequestLane.Scope ignored = RequestLane.enter(RequestLane.BULK)) {
+                    return adapter.execute(new HttpGet("http://koha/api/v1/patrons?_page=2"));
+                }
+            });
+            assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+            first.close();
+            first.close();
+            second.get(5, TimeUnit.SECONDS).close();
+        } finally {
+            executor.shutdownNow();
+        }
+        scheduler.acquire(RequestLane.INTERACTIVE);
+        scheduler.acquire(RequestLane.INTERACTIVE);
+    }
+}
@@ -0,0 +1,176 @@
+package com.identicum.connectors.services;
+
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHeader;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LoadBalancingHttpClientAdapterTest {
+
+    private static final String PRIMARY = "https://koha-primary";
+    private static final String REPLICA = "https://koha-replica";
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final List<String> sentTo = new ArrayList<>();
+
+    private LoadBalancingHttpClientAdapter adapter(HttpClientAdapter delegate) {
+        EndpointBalancer writes = new EndpointBalancer(Collections.singletonList(PRIMARY), EndpointBalancer.POWER_OF_TWO,
+                TimeUnit.SECONDS.toNanos(30), clock::get, new Random(1));
+        EndpointBalancer reads = new EndpointBalancer(Collections.singletonList(REPLICA), EndpointBalancer.POWER_OF_TWO,
+                TimeUnit.SECONDS.toNanos(30), clock::get, new Random(1));
+        RecentWrites recentWrites = new RecentWrites(TimeUnit.SECONDS.toNanos(10), clock::get);
+        return new LoadBalancingHttpClientAdapter(delegate, writes, reads, recentWrites, KohaExecutors.PLATFORM);
+    }
+
+    private HttpClientAdapter recordingDelegate(CloseableHttpResponse response) throws Exception {
+        HttpClientAdapter delegate = mock(HttpClientAdapter.class);
+        when(delegate.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            HttpUriRequest request = invocation.getArgument(0);
+            sentTo.add(request.getMethod() + " " + request.getURI());
+            return response;
+        });
+        return delegate;
+    }
+
+    private static CloseableHttpResponse response(int status) {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(status);
+        when(response.getStatusLine()).thenReturn(statusLine);
+        return response;
+    }
+
+    @Test
+    void testReadsGoToReplicasAndWritesToPrimary() throws Exception {
+        LoadBalancingHttpClientAdapter adapter = adapter(recordingDelegate(response(200)));
+
+        adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons?_per_page=100"));
+        adapter.execute(new HttpPost(PRIMARY + "/api/v1/patrons"));
+        adapter.execute(new HttpGet(PRIMARY + "/api/v1/patron_categories"));
+
+        assertEquals("GET " + REPLICA + "/api/v1/patrons?_per_page=100", sentTo.get(0));
+        assertEquals("POST " + PRIMARY + "/api/v1/patrons", sentTo.get(1));
+        assertEquals("GET " + REPLICA + "/api/v1/patron_categories", sentTo.get(2));
+    }
+
+    @Test
+    void testRecentlyWrittenPatronIsReadFromPrimaryUntilTheWindowExpires() throws Exception {
+        LoadBalancingHttpClientAdapter adapter = adapter(recordingDelegate(response(200)));
+
+        adapter.execute(new HttpPatch(PRIMARY + "/api/v1/patrons/42"));
+        adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons/42"));
+        adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons/43"));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons/42"));
+
+        assertEquals("GET " + PRIMARY + "/api/v1/patrons/42", sentTo.get(1));
+        assertEquals("GET " + REPLICA + "/api/v1/patrons/43", sentTo.get(2));
+        assertEquals("GET " + REPLICA + "/api/v1/patrons/42", sentTo.get(3));
+    }
+
+    @Test
+    void testCreatedPatronIsTakenFromTheLocationHeader() throws Exception {
+        CloseableHttpResponse created = response(201);
+        when(created.getFirstHeader("Location")).thenReturn(new BasicHeader("Location", "/api/v1/patrons/77"));
+        LoadBalancingHttpClientAdapter adapter = adapter(recordingDelegate(created));
+
+        adapter.execute(new HttpPost(PRIMARY + "/api/v1/patrons"));
+        adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons/77/extended_attributes"));
+        adapter.execute(new HttpDelete(PRIMARY + "/api/v1/patrons/77"));
+
+        assertEquals("GET " + PRIMARY + "/api/v1/patrons/77/extended_attributes", sentTo.get(1));
+        assertEquals("DELETE " + PRIMARY + "/api/v1/patrons/77", sentTo.get(2));
+    }
+
+    @Test
+    void testReadsFallBackToPrimaryWhenAllReplicasAreEjected() throws Exception {
+        LoadBalancingHttpClientAdapter adapter = adapter(recordingDelegate(response(503)));
+
+        for (int i = 0; i < EndpointBalancer.FAILURE_THRESHOLD; i++) {
+            adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons?_page=" + i));
+        }
+        adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons?_page=9"));
+
+        assertTrue(sentTo.get(EndpointBalancer.FAILURE_THRESHOLD - 1).startsWith("GET " + REPLICA));
+        assertEquals("GET " + PRIMARY + "/api/v1/patrons?_page=9", sentTo.get(EndpointBalancer.FAILURE_THRESHOLD));
+    }
+
+    @Test
+    void testReadsUnderThePatronWriteLockGoToPrimary() throws Exception {
+        LoadBalancingHttpClientAdapter adapter = adapter(recordingDelegate(response(200)));
+        PatronWriteLocks locks = new PatronWriteLocks(16);
+
+        locks.withLock("42", () -> adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons/42/extended_attributes")));
+        adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons/7/extended_attributes"));
+
+        assertEquals("GET " + PRIMARY + "/api/v1/patrons/42/extended_attributes", sentTo.get(0),
+                "Una lectura-modificación no puede leer de una réplica con retraso");
+        assertEquals("GET " + REPLICA + "/api/v1/patrons/7/extended_attributes", sentTo.get(1));
+        assertFalse(PrimaryReads.isRequired());
+    }
+
+    @Test
+    void testAbortedRequestsDoNotEjectTheNode() throws Exception {
+        HttpClientAdapter delegate = mock(HttpClientAdapter.class);
+        when(delegate.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            HttpUriRequest request = invocation.getArgument(0);
+            sentTo.add(request.getMethod() + " " + request.getURI());
+            request.abort();
+            throw new InterruptedIOException("Petición abortada");
+        });
+        LoadBalancingHttpClientAdapter adapter = adapter(delegate);
+
+        for (int i = 0; i <= EndpointBalancer.FAILURE_THRESHOLD; i++) {
+            assertThrows(InterruptedIOException.class, () -> adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons?_page=1")));
+        }
+
+        assertTrue(sentTo.get(EndpointBalancer.FAILURE_THRESHOLD).startsWith("GET " + REPLICA), "El watchdog no debe expulsar la réplica");
+    }
+
+    @Test
+    void testRequestsCutByTheOperationDeadlineDoNotEjectTheNode() throws Exception {
+        HttpClientAdapter delegate = mock(HttpClientAdapter.class);
+        when(delegate.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            HttpUriRequest request = invocation.getArgument(0);
+            sentTo.add(request.getMethod() + " " + request.getURI());
+            Thread.sleep(20);
+            throw new SocketTimeoutException("Plazo vencido");
+        });
+        LoadBalancingHttpClientAdapter adapter = adapter(delegate);
+
+        try (OperationDeadline.Scope ignored = OperationDeadline.start(1)) {
+            for (int i = 0; i <= EndpointBalancer.FAILURE_THRESHOLD; i++) {
+                assertThrows(SocketTimeoutException.class, () -> adapter.execute(new HttpGet(PRIMARY + "/api/v1/patrons?_page=1")));
+            }
+        }
+
+        assertTrue(sentTo.get(EndpointBalancer.FAILURE_THRESHOLD).startsWith("GET " + REPLICA), "El plazo vencido no debe expulsar la réplica");
+    }
+
+    @Test
+    void testPatronIdIsExtractedFromPatronPathsOnly() {
+        assertEquals("42", LoadBalancingHttpClientAdapter.patronIdOf("/api/v1/patrons/42"));
+        assertEquals("42", LoadBalancingHttpClientAdapter.patronIdOf("/api/v1/patrons/42/extended_attributes/3"));
+        assertNull(LoadBalancingHttpClientAdapter.patronIdOf("/api/v1/patrons?patron_id=42"));
+        assertNull(LoadBalancingHttpClientAdapter.patronIdOf("/api/v1/patron_categories/42"));
+    }
+}
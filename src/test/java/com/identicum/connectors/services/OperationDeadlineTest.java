@@ -0,0 +1,125 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.KohaConfiguration;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OperationDeadlineTest {
+
+    @Test
+    void testNestedOperationKeepsTheCloserOuterDeadline() {
+        assertNull(OperationDeadline.current());
+        try (OperationDeadline.Scope outer = OperationDeadline.start(1_000)) {
+            Long outerDeadline = OperationDeadline.current();
+            try (OperationDeadline.Scope inner = OperationDeadline.start(60_000)) {
+                assertEquals(outerDeadline, OperationDeadline.current());
+            }
+            try (OperationDeadline.Scope inner = OperationDeadline.start(10)) {
+                assertTrue(OperationDeadline.current() - outerDeadline < 0, "Un plazo interior más cercano manda");
+            }
+            try (OperationDeadline.Scope inner = OperationDeadline.start(0)) {
+                assertEquals(outerDeadline, OperationDeadline.current(), "0 no quita el plazo exterior");
+            }
+            assertEquals(outerDeadline, OperationDeadline.current());
+        }
+        assertNull(OperationDeadline.current());
+        assertEquals(Long.MAX_VALUE, OperationDeadline.remainingNanos());
+    }
+
+    @Test
+    void testCheckpointStopsOnExpiryAndOnInterruption() throws Exception {
+        try (OperationDeadline.Scope ignored = OperationDeadline.start(1)) {
+            Thread.sleep(5);
+            assertThrows(OperationTimeoutException.class, () -> OperationDeadline.checkpoint("pedir la página 2"));
+        }
+        OperationDeadline.checkpoint("pedir la página 2");
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(ConnectorIOException.class, () -> OperationDeadline.checkpoint("pedir la página 3"));
+            assertTrue(Thread.currentThread().isInterrupted(), "Se conserva el estado de interrupción");
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void testWatchdogAbortsRequestsOfInterruptedThreadsAndExpiredOperations() throws Exception {
+        HttpGet interrupted = new HttpGet("http://koha/api/v1/patrons?_page=1");
+        Thread.currentThread().interrupt();
+        try (RequestWatchdog.Watch ignored = RequestWatchdog.watch(interrupted)) {
+            RequestWatchdog.scan();
+        } finally {
+            Thread.interrupted();
+        }
+        assertTrue(interrupted.isAborted());
+
+        HttpGet expired = new HttpGet("http://koha/api/v1/patrons?_page=2");
+        HttpGet running = new HttpGet("http://koha/api/v1/patrons?_page=3");
+        try (RequestWatchdog.Watch other = RequestWatchdog.watch(running)) {
+            try (OperationDeadline.Scope ignored = OperationDeadline.start(1);
+                 RequestWatchdog.Watch watch = RequestWatchdog.watch(expired)) {
+                Thread.sleep(5);
+                RequestWatchdog.scan();
+            }
+        }
+        assertTrue(expired.isAborted());
+        assertFalse(running.isAborted(), "Las peticiones sin plazo siguen su curso");
+    }
+
+    @Test
+    void testBlockedRequestIsAbortedWhenTheDeadlinePasses() throws Exception {
+        HttpClientAdapter httpClient = mock(HttpClientAdapter.class);
+        when(httpClient.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            HttpRequestBase request = invocation.getArgument(0);
+            long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!request.isAborted() && System.nanoTime() - giveUp < 0) {
+                Thread.sleep(5);
+            }
+            throw new InterruptedIOException("Request aborted");
+        });
+        PatronService patronService = new PatronService(httpClient, "http://localhost", new KohaConfiguration());
+
+        long start = System.nanoTime();
+        try (OperationDeadline.Scope ignored = OperationDeadline.start(200)) {
+            assertThrows(OperationTimeoutException.class, () -> patronService.getPatron("42"));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 2_000, "La petición debe abortarse al vencer el plazo, no al timeout: " + elapsedMillis + " ms");
+        assertEquals(0, RequestWatchdog.activeCount());
+    }
+
+    @Test
+    void testBackoffThatDoesNotFitTheDeadlineFailsAtOnce() throws Exception {
+        HttpClientAdapter httpClient = mock(HttpClientAdapter.class);
+        CloseableHttpResponse unavailable = mock(CloseableHttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(503);
+        when(unavailable.getStatusLine()).thenReturn(statusLine);
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(unavailable);
+        PatronService patronService = new PatronService(httpClient, "http://localhost", new KohaConfiguration());
+
+        long start = System.nanoTime();
+        try (OperationDeadline.Scope ignored = OperationDeadline.start(500)) {
+            assertThrows(OperationTimeoutException.class, () -> patronService.getPatron("42"));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500, "El backoff de 1 s no cabe en el plazo");
+        verify(httpClient, times(1)).execute(any(HttpUriRequest.class));
+    }
+}
@@ -0,0 +1,82 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.KohaFilter;
+import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class PartitionedPatronSearchTest {
+
+    @SuppressWarnings("unchecked")
+    private PatronService patronServiceReturning(int patronsPerShard) throws Exception {
+        PatronService patronService = mock(PatronService.class);
+        doAnswer(invocation -> {
+            KohaFilter shardFilter = invocation.getArgument(0);
+            Predicate<JSONObject> consumer = invocation.getArgument(2);
+            for (int i = 0; i < patronsPerShard; i++) {
+                JSONObject patron = new JSONObject()
+                        .put("patron_id", shardFilter.getByCategoryId() + "-" + i)
+                        .put("category_id", shardFilter.getByCategoryId());
+                if (!consumer.test(patron)) {
+                    return null;
+                }
+            }
+            return null;
+        }).when(patronService).searchPatrons(any(KohaFilter.class), any(), any());
+        return patronService;
+    }
+
+    @Test
+    void testAllShardsAreMergedIntoSingleConsumer() throws Exception {
+        PatronService patronService = patronServiceReturning(50);
+        PartitionedPatronSearch search = new PartitionedPatronSearch(patronService, 3, 10);
+
+        List<String> received = new ArrayList<>();
+        Set<String> threads = new HashSet<>();
+        search.search("category_id", Arrays.asList("A", "B", "C", "D"), null, null, patron -> {
+            received.add(patron.getString("patron_id"));
+            threads.add(Thread.currentThread().getName());
+            return true;
+        });
+
+        assertEquals(200, received.size());
+        assertEquals(200, new HashSet<>(received).size());
+        assertEquals(1, threads.size(), "Consumer must be invoked from the calling thread only");
+        verify(patronService, times(4)).searchPatrons(any(KohaFilter.class), any(), any());
+    }
+
+    @Test
+    void testConsumerCanStopSearch() throws Exception {
+        PatronService patronService = patronServiceReturning(1000);
+        PartitionedPatronSearch search = new PartitionedPatronSearch(patronService, 2, 5);
+
+        List<String> received = new ArrayList<>();
+        search.search("category_id", Arrays.asList("A", "B"), null, null, patron -> {
+            received.add(patron.getString("patron_id"));
+            return received.size() < 10;
+        });
+
+        assertEquals(10, received.size());
+    }
+
+    @Test
+    void testShardFailureIsPropagated() throws Exception {
+        PatronService patronService = mock(PatronService.class);
+        doThrow(new ConnectionFailedException("down")).when(patronService).searchPatrons(any(KohaFilter.class), any(), any());
+        PartitionedPatronSearch search = new PartitionedPatronSearch(patronService, 2, 5);
+
+        assertThrows(ConnectionFailedException.class,
+                () -> search.search("library_id", Arrays.asList("L1", "L2"), null, null, patron -> true));
+    }
+}
@@ -0,0 +1,86 @@
+package com.identicum.connectors.services;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatronBloomFilterTest {
+
+    @Test
+    void testNoFalseNegatives() {
+        PatronBloomFilter filter = new PatronBloomFilter(20000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add(new JSONObject().put("cardnumber", "C" + i).put("userid", "user" + i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(PatronBloomFilter.CARDNUMBER, "c" + i));
+            assertTrue(filter.mightContain(PatronBloomFilter.USERID, "USER" + i));
+        }
+    }
+
+    @Test
+    void testFalsePositiveRateIsBounded() {
+        PatronBloomFilter filter = new PatronBloomFilter(20000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add(new JSONObject().put("cardnumber", "C" + i).put("userid", "user" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(PatronBloomFilter.CARDNUMBER, "NEW" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "False positives: " + falsePositives);
+        // El campo forma parte de la clave
+        assertFalse(filter.mightContain(PatronBloomFilter.USERID, "C1") && filter.mightContain(PatronBloomFilter.USERID, "C2")
+                && filter.mightContain(PatronBloomFilter.USERID, "C3"));
+    }
+
+    @Test
+    void testCompleteFlag() {
+        PatronBloomFilter filter = new PatronBloomFilter(10, 0.01);
+        assertFalse(filter.isComplete());
+        assertTrue(filter.markComplete(filter.generation()));
+        assertTrue(filter.isComplete());
+    }
+
+    @Test
+    void testSearchStartedBeforeARebuildDoesNotComplete() {
+        PatronBloomFilter filter = new PatronBloomFilter(10, 0.01);
+        long generation = filter.generation();
+        for (int i = 0; i < 1000; i++) {
+            filter.add(PatronBloomFilter.CARDNUMBER, "C" + i);
+        }
+        assertFalse(filter.markComplete(generation));
+        assertFalse(filter.markComplete(generation), "La búsqueda empezó antes de la reconstrucción");
+        assertFalse(filter.isComplete());
+    }
+
+    @Test
+    void testSaturatedFilterIsRebuiltLarger() {
+        PatronBloomFilter filter = new PatronBloomFilter(2000, 0.01);
+        long generation = filter.generation();
+        for (int i = 0; i < 10000; i++) {
+            filter.add(new JSONObject().put("cardnumber", "C" + i).put("userid", "user" + i));
+        }
+
+        assertFalse(filter.markComplete(generation));
+        assertFalse(filter.isComplete());
+        assertNotEquals(generation, filter.generation());
+
+        long rebuilt = filter.generation();
+        for (int i = 0; i < 10000; i++) {
+            filter.add(new JSONObject().put("cardnumber", "C" + i).put("userid", "user" + i));
+        }
+        assertTrue(filter.markComplete(rebuilt));
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(PatronBloomFilter.CARDNUMBER, "NEW" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "False positives: " + falsePositives);
+        assertTrue(filter.mightContain(PatronBloomFilter.USERID, "user9999"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.identicum.connectors.services;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatronIdentityIndexTest {
+
+    @Test
+    void testLookupByEachField() {
+        PatronIdentityIndex index = new PatronIdentityIndex(10);
+        index.index(new JSONObject().put("patron_id", 42).put("userid", "AnaPaz").put("cardnumber", "C42").put("email", "ana@example.com"));
+
+        assertEquals("42", index.lookup(PatronIdentityIndex.USERID, "anapaz"));
+        assertEquals("42", index.lookup(PatronIdentityIndex.CARDNUMBER, "C42"));
+        assertNull(index.lookup(PatronIdentityIndex.USERID, "C42"));
+        assertNull(index.lookup("email", "ana@example.com"), "El email no es único en Koha y no se indexa");
+    }
+
+    @Test
+    void testSharedValueIsAmbiguous() {
+        PatronIdentityIndex index = new PatronIdentityIndex(10);
+        index.index(new JSONObject().put("patron_id", 1).put("cardnumber", "C1"));
+        index.index(new JSONObject().put("patron_id", 2).put("cardnumber", "C1"));
+
+        assertNull(index.lookup(PatronIdentityIndex.CARDNUMBER, "C1"));
+    }
+
+    @Test
+    void testForgetAndMatches() {
+        PatronIdentityIndex index = new PatronIdentityIndex(10);
+        JSONObject patron = new JSONObject().put("patron_id", "7").put("userid", "luis");
+        index.index(patron);
+
+        assertTrue(PatronIdentityIndex.matches(patron, PatronIdentityIndex.USERID, "LUIS"));
+        assertFalse(PatronIdentityIndex.matches(null, PatronIdentityIndex.USERID, "luis"));
+        index.forget(PatronIdentityIndex.USERID, "luis");
+        assertNull(index.lookup(PatronIdentityIndex.USERID, "luis"));
+    }
+
+    @Test
+    void testOffHeapMapAgainstHashMap() {
+        OffHeapLongLongMap map = new OffHeapLongLongMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(5000) - 2500L; // incluye la clave 0 y negativas
+            if (random.nextInt(4) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                map.put(key, i);
+                expected.put(key, (long) i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -2500; key < 2500; key++) {
+            Long value = expected.get(key);
+            assertEquals(value != null ? value : OffHeapLongLongMap.MISSING, map.get(key));
+        }
+    }
+}
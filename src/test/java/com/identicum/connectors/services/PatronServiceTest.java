@@ -9,17 +9,24 @@ import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import com.identicum.connectors.KohaConfiguration;
+import com.identicum.connectors.KohaFilter;
+import com.identicum.connectors.mappers.PatronRecord;
 import com.identicum.connectors.services.HttpClientAdapter;
 import org.apache.http.StatusLine;
 import org.apache.http.HttpEntity;
+import org.apache.http.message.BasicHeader;
 import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
 import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
 import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
 import org.identityconnectors.framework.common.exceptions.PermissionDeniedException;
 import org.identityconnectors.framework.common.exceptions.UnknownUidException;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SortKey;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -28,6 +35,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -121,11 +132,196 @@ public class PatronServiceTest {
         CloseableHttpResponse resp2 = prepareResponse(200, page2.toString());
         when(httpClient.execute(any(HttpGet.class))).thenReturn(resp1, resp2);
 
-        java.util.List<JSONObject> result = new java.util.ArrayList<>();
+        List<JSONObject> result = new ArrayList<>();
         patronService.searchPatrons(null, new OperationOptionsBuilder().setPageSize(2).build(), patron -> { result.add(patron); return true; });
         assertEquals(3, result.size());
     }
 
+    @Test
+    void testAddExtendedAttributePostsToSubResource() throws Exception {
+        CloseableHttpResponse resp = prepareResponse(201, "{\"extended_attribute_id\":7,\"type\":\"DNI\",\"value\":\"123\"}");
+        HttpPost[] captured = new HttpPost[1];
+        when(httpClient.execute(any(HttpPost.class))).thenAnswer(invocation -> {
+            captured[0] = invocation.getArgument(0);
+            return resp;
+        });
+
+        patronService.addExtendedAttribute("1", new JSONObject().put("type", "DNI").put("value", "123"));
+
+        assertEquals("/api/v1/patrons/1/extended_attributes", captured[0].getURI().getPath());
+    }
+
+    @Test
+    void testRemoveExtendedAttributesDeletesOnlyMatchingIds() throws Exception {
+        JSONArray current = new JSONArray()
+                .put(new JSONObject().put("extended_attribute_id", 10).put("type", "DNI").put("value", "123"))
+                .put(new JSONObject().put("extended_attribute_id", 11).put("type", "ORCID").put("value", "0000"));
+        CloseableHttpResponse listResp = prepareResponse(200, current.toString());
+        CloseableHttpResponse deleteResp = prepareResponse(204, null);
+        when(httpClient.execute(any(HttpGet.class))).thenReturn(listResp);
+        List<String> deletedPaths = new ArrayList<>();
+        when(httpClient.execute(any(HttpDelete.class))).thenAnswer(invocation -> {
+            deletedPaths.add(((HttpDelete) invocation.getArgument(0)).getURI().getPath());
+            return deleteResp;
+        });
+
+        int removed = patronService.removeExtendedAttributes("1", Arrays.asList(
+                new JSONObject().put("type", "ORCID").put("value", "0000"),
+                new JSONObject().put("type", "DNI").put("value", "999")));
+
+        assertEquals(1, removed);
+        assertEquals(Collections.singletonList("/api/v1/patrons/1/extended_attributes/11"), deletedPaths);
+    }
+
+    @Test
+    void testReplaceExtendedAttributeValuesTouchesOnlyOneType() throws Exception {
+        JSONArray current = new JSONArray()
+                .put(new JSONObject().put("extended_attribute_id", 10).put("type", "DNI").put("value", "123"))
+                .put(new JSONObject().put("extended_attribute_id", 11).put("type", "ORCID").put("value", "0000"))
+                .put(new JSONObject().put("extended_attribute_id", 12).put("type", "ORCID").put("value", "1111"));
+        CloseableHttpResponse listResp = prepareResponse(200, current.toString());
+        CloseableHttpResponse deleteResp = prepareResponse(204, null);
+        CloseableHttpResponse postResp = prepareResponse(201, "{}");
+        when(httpClient.execute(any(HttpGet.class))).thenReturn(listResp);
+        List<String> deletedPaths = new ArrayList<>();
+        when(httpClient.execute(any(HttpDelete.class))).thenAnswer(invocation -> {
+            deletedPaths.add(((HttpDelete) invocation.getArgument(0)).getURI().getPath());
+            return deleteResp;
+        });
+        List<String> posted = new ArrayList<>();
+        when(httpClient.execute(any(HttpPost.class))).thenAnswer(invocation -> {
+            posted.add(org.apache.http.util.EntityUtils.toString(((HttpPost) invocation.getArgument(0)).getEntity()));
+            return postResp;
+        });
+
+        int changed = patronService.replaceExtendedAttributeValues("1", "ORCID", Arrays.asList("1111", "2222"));
+
+        assertEquals(2, changed);
+        assertEquals(Collections.singletonList("/api/v1/patrons/1/extended_attributes/11"), deletedPaths);
+        assertEquals(1, posted.size());
+        JSONObject added = new JSONObject(posted.get(0));
+        assertEquals("ORCID", added.getString("type"));
+        assertEquals("2222", added.getString("value"));
+    }
+
+    @Test
+    void testSearchPatronsWithOffsetReturnsSinglePageAndCookie() throws Exception {
+        JSONArray page2 = new JSONArray()
+                .put(new JSONObject().put("patron_id", 3))
+                .put(new JSONObject().put("patron_id", 4));
+        CloseableHttpResponse resp = prepareResponse(200, page2.toString());
+        when(resp.getFirstHeader("X-Total-Count")).thenReturn(new BasicHeader("X-Total-Count", "5"));
+        HttpGet[] captured = new HttpGet[1];
+        when(httpClient.execute(any(HttpGet.class))).thenAnswer(invocation -> {
+            captured[0] = invocation.getArgument(0);
+            return resp;
+        });
+
+        List<JSONObject> result = new ArrayList<>();
+        SearchResult searchResult = patronService.searchPatrons(null,
+                new OperationOptionsBuilder().setPageSize(2).setPagedResultsOffset(3).build(),
+                patron -> { result.add(patron); return true; });
+
+        assertEquals(2, result.size());
+        assertTrue(captured[0].getURI().getQuery().contains("_page=2"));
+        assertEquals("5", searchResult.getPagedResultsCookie());
+        assertEquals(1, searchResult.getRemainingPagedResults());
+        verify(httpClient, times(1)).execute(any(HttpGet.class));
+    }
+
+    @Test
+    void testSearchPatronRecordsPagesLikeSearchPatrons() throws Exception {
+        JSONArray page1 = new JSONArray()
+                .put(new JSONObject().put("patron_id", 1).put("userid", "a"))
+                .put(new JSONObject().put("patron_id", 2).put("userid", "b"));
+        JSONArray page2 = new JSONArray().put(new JSONObject().put("patron_id", 3).put("userid", "c"));
+        CloseableHttpResponse resp1 = prepareResponse(200, page1.toString());
+        CloseableHttpResponse resp2 = prepareResponse(200, page2.toString());
+        when(httpClient.execute(any(HttpGet.class))).thenReturn(resp1, resp2);
+
+        List<PatronRecord> result = new ArrayList<>();
+        patronService.searchPatronRecords(null, new OperationOptionsBuilder().setPageSize(2).build(), page -> {
+            result.addAll(page);
+            return page.size();
+        });
+
+        assertEquals(3, result.size());
+        assertEquals("c", result.get(2).opt("userid"));
+        verify(httpClient, times(2)).execute(any(HttpGet.class));
+    }
+
+    @Test
+    void testSearchPatronsTranslatesSortKeysToOrderBy() throws Exception {
+        CloseableHttpResponse resp = prepareResponse(200, new JSONArray().put(new JSONObject().put("patron_id", 1)).toString());
+        HttpGet[] captured = new HttpGet[1];
+        when(httpClient.execute(any(HttpGet.class))).thenAnswer(invocation -> {
+            captured[0] = invocation.getArgument(0);
+            return resp;
+        });
+
+        patronService.searchPatrons(null,
+                new OperationOptionsBuilder().setPageSize(2).setPagedResultsOffset(1)
+                        .setSortKeys(new SortKey("surname", true), new SortKey(Name.NAME, false)).build(),
+                patron -> true);
+
+        assertTrue(captured[0].getURI().getQuery().contains("_order_by=surname,-userid"));
+    }
+
+    @Test
+    void testSortByUnsupportedAttributeIsRejectedBeforeCallingKoha() {
+        assertThrows(InvalidAttributeValueException.class, () -> patronService.searchPatrons(null,
+                new OperationOptionsBuilder().setSortKeys(new SortKey("extended_attributes", true)).build(),
+                patron -> true));
+        verifyNoInteractions(httpClient);
+    }
+
+    @Test
+    void testCountPatronsReadsTotalCountHeader() throws Exception {
+        CloseableHttpResponse resp = prepareResponse(200, new JSONArray().put(new JSONObject().put("patron_id", 1)).toString());
+        when(resp.getFirstHeader("X-Total-Count")).thenReturn(new BasicHeader("X-Total-Count", "60123"));
+        HttpGet[] captured = new HttpGet[1];
+        when(httpClient.execute(any(HttpGet.class))).thenAnswer(invocation -> {
+            captured[0] = invocation.getArgument(0);
+            return resp;
+        });
+
+        assertEquals(60123, patronService.countPatrons(null));
+        assertTrue(captured[0].getURI().getQuery().contains("_per_page=1"));
+    }
+
+    @Test
+    void testExplicitExactMatchIsSentToKoha() throws Exception {
+        CloseableHttpResponse resp = prepareResponse(200, "[]");
+        when(resp.getFirstHeader("X-Total-Count")).thenReturn(new BasicHeader("X-Total-Count", "0"));
+        HttpGet[] captured = new HttpGet[1];
+        when(httpClient.execute(any(HttpGet.class))).thenAnswer(invocation -> {
+            captured[0] = invocation.getArgument(0);
+            return resp;
+        });
+        KohaFilter probe = new KohaFilter();
+        probe.setByLibraryId("LIM");
+        probe.setMatchType("exact");
+
+        assertEquals(0, patronService.countPatrons(probe));
+        assertTrue(captured[0].getURI().getQuery().contains("_match=exact"), "Sin _match Koha compara por subcadena");
+    }
+
+    @Test
+    void testResponseLargerThanLimitIsRejected() throws Exception {
+        KohaConfiguration limited = new KohaConfiguration();
+        limited.setMaxResponseSizeMB(1);
+        PatronService limitedService = new PatronService(httpClient, "http://localhost", limited);
+        StringBuilder big = new StringBuilder("{\"patron_id\":1,\"staff_notes\":\"");
+        for (int i = 0; i < 2 * 1024 * 1024; i++) {
+            big.append('x');
+        }
+        big.append("\"}");
+        CloseableHttpResponse resp = prepareResponse(200, big.toString());
+        when(httpClient.execute(any(HttpGet.class))).thenReturn(resp);
+
+        assertThrows(ConnectorIOException.class, () -> limitedService.getPatron("1"));
+    }
+
     // --- Casos de error HTTP para getPatron ---
 
     @Test
@@ -0,0 +1,116 @@
+package com.identicum.connectors.services;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class PatronStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static JSONObject patron(int id, String userid, String cardnumber) {
+        return new JSONObject().put("patron_id", id).put("userid", userid).put("cardnumber", cardnumber);
+    }
+
+    @Test
+    void testPutReplacesThePreviousVersion() throws Exception {
+        try (PatronStore store = new PatronStore(tempDir.resolve("patrons.kps"))) {
+            store.put(patron(1, "ana", "C1"));
+            store.put(patron(2, "luis", "C2"));
+            store.put(patron(1, "ana.paz", "C1"));
+
+            assertEquals(2, store.size());
+            assertEquals("ana.paz", store.get("1").getString("userid"));
+            assertEquals("C2", store.get("2").getString("cardnumber"));
+        }
+    }
+
+    @Test
+    void testUnchangedPatronIsNotAppended() throws Exception {
+        Path file = tempDir.resolve("patrons.kps");
+        try (PatronStore store = new PatronStore(file)) {
+            store.put(patron(1, "ana", "C1"));
+            long size = Files.size(file);
+            store.put(new JSONObject("{\"cardnumber\":\"C1\",\"userid\":\"ana\",\"patron_id\":1}"));
+            assertEquals(size, Files.size(file));
+        }
+    }
+
+    @Test
+    void testReopenRestoresStateAndDeletes() throws Exception {
+        Path file = tempDir.resolve("patrons.kps");
+        try (PatronStore store = new PatronStore(file)) {
+            store.put(patron(1, "ana", "C1"));
+            store.put(patron(2, "luis", "C2"));
+            store.remove("2");
+        }
+        try (PatronStore store = new PatronStore(file)) {
+            assertEquals(1, store.size());
+            assertNull(store.get("2"));
+            assertEquals("ana", store.get("1").getString("userid"));
+            assertNotNull(store.getFingerprint("1"));
+        }
+    }
+
+    @Test
+    void testTornTailIsTruncated() throws Exception {
+        Path file = tempDir.resolve("patrons.kps");
+        try (PatronStore store = new PatronStore(file)) {
+            store.put(patron(1, "ana", "C1"));
+        }
+        long validSize = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 50, 1, 2}));
+        }
+        try (PatronStore store = new PatronStore(file)) {
+            assertEquals(1, store.size());
+            assertEquals(validSize, Files.size(file));
+        }
+    }
+
+    @Test
+    void testCompactionKeepsOnlyLiveRecords() throws Exception {
+        Path file = tempDir.resolve("patrons.kps");
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            padding.append('x');
+        }
+        try (PatronStore store = new PatronStore(file)) {
+            for (int version = 0; version < 6000; version++) {
+                store.put(patron(1, "ana", "C1").put("note", padding.toString() + version));
+            }
+            long before = Files.size(file);
+            store.flush();
+            assertTrue(Files.size(file) < before);
+            assertEquals(1, store.size());
+            assertTrue(store.get("1").getString("note").endsWith("5999"));
+            assertEquals("ana", store.get("1").getString("userid"));
+        }
+    }
+
+    @Test
+    void testFileIsReadableOnlyByItsOwner() throws Exception {
+        assumeTrue(tempDir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path file = tempDir.resolve("patrons.kps");
+        try (PatronStore store = new PatronStore(file)) {
+            store.put(patron(1, "ana", "C1"));
+        }
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-rw-r--"));
+        try (PatronStore ignored = new PatronStore(file)) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+        }
+    }
+}
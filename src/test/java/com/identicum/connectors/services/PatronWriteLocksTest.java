@@ -0,0 +1,289 @@
+package com.identicum.connectors.services;
+
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatronWriteLocksTest {
+
+    @Test
+    void testWritesToOnePatronAreSerialized() throws Exception {
+        PatronWriteLocks locks = new PatronWriteLocks(16);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> writes = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                writes.add(executor.submit(() -> locks.withLock("42", () -> {
+                    maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                    Thread.sleep(10);
+                    concurrent.decrementAndGet();
+                    return null;
+                })));
+            }
+            for (Future<Object> write : writes) {
+                write.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, maxConcurrent.get());
+    }
+
+    @Test
+    void testOtherPatronsAreNotBlocked() throws Exception {
+        PatronWriteLocks locks = new PatronWriteLocks(1024);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> slow = executor.submit(() -> locks.withLock("1", () -> {
+                holding.countDown();
+                release.await();
+                return null;
+            }));
+            holding.await();
+            Future<String> other = executor.submit(() -> locks.withLock("2", () -> "ok"));
+            assertEquals("ok", other.get(5, TimeUnit.SECONDS));
+
+            Future<String> same = executor.submit(() -> locks.withLock("1", () -> "ok"));
+            assertThrows(TimeoutException.class, () -> same.get(200, TimeUnit.MILLISECONDS));
+            release.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+            assertEquals("ok", same.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testQueuedPatchesAreMergedIntoOneRequest() throws Exception {
+        PatronWriteLocks locks = new PatronWriteLocks(16);
+        List<JSONObject> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch firstSending = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> first = executor.submit(() -> {
+                locks.patch("42", new JSONObject().put("surname", "Quispe"), payload -> {
+                    sent.add(payload);
+                    firstSending.countDown();
+                    awaitQuietly(releaseFirst);
+                });
+                return null;
+            });
+            firstSending.await();
+            Future<?> second = executor.submit(() -> {
+                locks.patch("42", new JSONObject().put("email", "old@upeu.edu.pe").put("phone", "123"), sent::add);
+                return null;
+            });
+            Future<?> third = executor.submit(() -> {
+                locks.patch("42", new JSONObject().put("email", "new@upeu.edu.pe"), sent::add);
+                return null;
+            });
+            Thread.sleep(200);
+            releaseFirst.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            third.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, sent.size(), "Los dos PATCH en espera deben viajar juntos");
+        JSONObject merged = sent.get(1);
+        assertEquals("123", merged.getString("phone"));
+        assertTrue(merged.getString("email").endsWith("@upeu.edu.pe"));
+        assertFalse(merged.has("surname"));
+    }
+
+    @Test
+    void testFailureOfEveryRetriedPatchReachesEveryCaller() throws Exception {
+        PatronWriteLocks locks = new PatronWriteLocks(16);
+        CountDownLatch firstSending = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger requests = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> first = executor.submit(() -> {
+                locks.patch("7", new JSONObject().put("surname", "Mamani"), payload -> {
+                    firstSending.countDown();
+                    awaitQuietly(releaseFirst);
+                });
+                return null;
+            });
+            firstSending.await();
+            List<Future<?>> queued = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                String phone = "99" + i;
+                queued.add(executor.submit(() -> {
+                    locks.patch("7", new JSONObject().put("phone", phone), payload -> {
+                        requests.incrementAndGet();
+                        throw new IOException("Koha no disponible");
+                    });
+                    return null;
+                }));
+            }
+            Thread.sleep(200);
+            releaseFirst.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            for (Future<?> patch : queued) {
+                Exception e = assertThrows(Exception.class, () -> patch.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(IOException.class, e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(3, requests.get(), "El PATCH fusionado y después uno por llamador");
+    }
+
+    @Test
+    void testRejectedMergedPatchIsRetriedPerCaller() throws Exception {
+        PatronWriteLocks locks = new PatronWriteLocks(16);
+        List<JSONObject> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch firstSending = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        PatronWriteLocks.PatchSender koha = payload -> {
+            sent.add(payload);
+            if (payload.has("date_of_birth")) {
+                throw new IOException("400: fecha inválida");
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> first = executor.submit(() -> {
+                locks.patch("9", new JSONObject().put("surname", "Condori"), payload -> {
+                    firstSending.countDown();
+                    awaitQuietly(releaseFirst);
+                });
+                return null;
+            });
+            firstSending.await();
+            Future<?> invalid = executor.submit(() -> {
+                locks.patch("9", new JSONObject().put("date_of_birth", "31/02/2001"), koha);
+                return null;
+            });
+            Future<?> valid = executor.submit(() -> {
+                locks.patch("9", new JSONObject().put("email", "condori@upeu.edu.pe"), koha);
+                return null;
+            });
+            Thread.sleep(200);
+            releaseFirst.countDown();
+            first.get(5, TimeUnit.SECONDS);
+
+            valid.get(5, TimeUnit.SECONDS);
+            Exception e = assertThrows(Exception.class, () -> invalid.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(3, sent.size());
+        assertTrue(sent.get(0).has("email") && sent.get(0).has("date_of_birth"), "Primero se intenta la petición fusionada");
+        assertTrue(sent.stream().skip(1).anyMatch(payload -> payload.has("email") && !payload.has("date_of_birth")));
+    }
+
+    @Test
+    void testTimedOutCallerWaitsForThePatchAlreadyBeingSent() throws Exception {
+        PatronWriteLocks locks = new PatronWriteLocks(16);
+        List<JSONObject> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch firstSending = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch leaderSending = new CountDownLatch(1);
+        CountDownLatch releaseLeader = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> first = executor.submit(() -> {
+                locks.patch("11", new JSONObject().put("surname", "Huanca"), payload -> {
+                    firstSending.countDown();
+                    awaitQuietly(releaseFirst);
+                });
+                return null;
+            });
+            firstSending.await();
+            Future<?> leader = executor.submit(() -> {
+                locks.patch("11", new JSONObject().put("phone", "555"), payload -> {
+                    sent.add(payload);
+                    leaderSending.countDown();
+                    awaitQuietly(releaseLeader);
+                });
+                return null;
+            });
+            Thread.sleep(100);
+            Future<?> waiter = executor.submit(() -> {
+                try (OperationDeadline.Scope ignored = OperationDeadline.start(300)) {
+                    locks.patch("11", new JSONObject().put("email", "huanca@upeu.edu.pe"), sent::add);
+                }
+                return null;
+            });
+            Thread.sleep(100);
+            releaseFirst.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            leaderSending.await();
+
+            Thread.sleep(500);
+            assertFalse(waiter.isDone(), "Con su PATCH en vuelo, el llamador vencido espera el resultado");
+            releaseLeader.countDown();
+            leader.get(5, TimeUnit.SECONDS);
+            waiter.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0).has("phone") && sent.get(0).has("email"));
+    }
+
+    @Test
+    void testTimedOutCallerIsLeftOutOfLaterRequests() throws Exception {
+        PatronWriteLocks locks = new PatronWriteLocks(16);
+        List<JSONObject> sent = new CopyOnWriteArrayList<>();
+        CountDownLatch firstSending = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> {
+                locks.patch("12", new JSONObject().put("surname", "Ccori"), payload -> {
+                    firstSending.countDown();
+                    awaitQuietly(releaseFirst);
+                });
+                return null;
+            });
+            firstSending.await();
+            Future<?> waiter = executor.submit(() -> {
+                try (OperationDeadline.Scope ignored = OperationDeadline.start(100)) {
+                    locks.patch("12", new JSONObject().put("email", "ccori@upeu.edu.pe"), sent::add);
+                }
+                return null;
+            });
+            Exception e = assertThrows(Exception.class, () -> waiter.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(OperationTimeoutException.class, e.getCause());
+            releaseFirst.countDown();
+            first.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        locks.patch("12", new JSONObject().put("phone", "777"), sent::add);
+        assertEquals(1, sent.size());
+        assertFalse(sent.get(0).has("email"), "El PATCH abandonado no debe enviarse");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
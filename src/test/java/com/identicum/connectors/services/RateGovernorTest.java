@@ -0,0 +1,91 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.services.RateLimitSchedule.EndpointClass;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.message.BasicHeader;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RateGovernorTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testScheduleSelectsDayAndNightProfiles() {
+        RateLimitSchedule schedule = RateLimitSchedule.parse("06:00-22:00=search:2,read:10,write:5; 22:00-06:00=search:50");
+
+        RateLimitSchedule.Window day = schedule.windowAt(LocalTime.of(12, 0));
+        assertEquals(2.0, day.rate(EndpointClass.SEARCH));
+        assertEquals(5.0, day.rate(EndpointClass.WRITE));
+
+        RateLimitSchedule.Window night = schedule.windowAt(LocalTime.of(23, 30));
+        assertSame(night, schedule.windowAt(LocalTime.of(5, 59)), "La franja nocturna cruza la medianoche");
+        assertEquals(50.0, night.rate(EndpointClass.SEARCH));
+        assertEquals(0.0, night.rate(EndpointClass.READ), "Una clase omitida no tiene límite");
+        assertSame(day, schedule.windowAt(LocalTime.of(6, 0)));
+    }
+
+    @Test
+    void testInvalidScheduleIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> RateLimitSchedule.parse("06:00-22:00=scan:2"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimitSchedule.parse("6-22=search:2"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimitSchedule.parse("06:00-22:00=search:-1"));
+        assertTrue(RateLimitSchedule.parse("  ").isEmpty());
+    }
+
+    @Test
+    void testBucketSpacesRequestsAfterTheBurst() {
+        RateGovernor.TokenBucket bucket = new RateGovernor.TokenBucket();
+        long now = TimeUnit.HOURS.toNanos(1);
+
+        assertEquals(0, bucket.reserve(2, now));
+        assertEquals(0, bucket.reserve(2, now), "La capacidad es de un segundo de tasa");
+        assertEquals(SECOND / 2, bucket.reserve(2, now));
+        assertEquals(SECOND, bucket.reserve(2, now), "Cada llamador reserva el siguiente hueco");
+        assertEquals(0, bucket.reserve(2, now + 2 * SECOND));
+        assertEquals(0, bucket.reserve(0, now), "Una tasa de 0 no limita");
+    }
+
+    @Test
+    void testTooManyRequestsPausesAndHalvesTheRate() {
+        RateGovernor.TokenBucket bucket = new RateGovernor.TokenBucket();
+        long now = TimeUnit.HOURS.toNanos(1);
+        bucket.reserve(10, now);
+
+        assertEquals(0.5, bucket.penalize(now, 3 * SECOND));
+        assertEquals(3 * SECOND + SECOND / 5, bucket.reserve(10, now),
+                "Tras la pausa, a la mitad de tasa (5/s)");
+        assertEquals(3 * SECOND, bucket.reserve(0, now), "La pausa también frena las clases sin límite");
+
+        for (int i = 0; i < 30; i++) {
+            bucket.reward();
+        }
+        assertEquals(1.0, bucket.getFactor());
+    }
+
+    @Test
+    void testRetryAfterInSecondsIsParsed() {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getFirstHeader("Retry-After")).thenReturn(new BasicHeader("Retry-After", "7"));
+        assertEquals(7 * SECOND, RateLimitingHttpClientAdapter.retryAfterNanos(response));
+
+        CloseableHttpResponse withoutHeader = mock(CloseableHttpResponse.class);
+        assertEquals(-1, RateLimitingHttpClientAdapter.retryAfterNanos(withoutHeader));
+    }
+
+    @Test
+    void testBulkLaneReadsAreClassifiedAsSearch() {
+        assertEquals(EndpointClass.READ, RateLimitingHttpClientAdapter.classify("GET"));
+        assertEquals(EndpointClass.WRITE, RateLimitingHttpClientAdapter.classify("PATCH"));
+        try (RequestLane.Scope ignored = RequestLane.enter(RequestLane.BULK)) {
+            assertEquals(EndpointClass.SEARCH, RateLimitingHttpClientAdapter.classify("GET"));
+            assertEquals(EndpointClass.WRITE, RateLimitingHttpClientAdapter.classify("DELETE"));
+        }
+    }
+}
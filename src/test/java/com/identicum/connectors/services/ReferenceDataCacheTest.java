@@ -0,0 +1,64 @@
+package com.identicum.connectors.services;
+
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReferenceDataCacheTest {
+
+    private final AtomicInteger libraryLoads = new AtomicInteger();
+
+    private final ReferenceDataCache.Loader libraries = () -> {
+        libraryLoads.incrementAndGet();
+        return Arrays.asList("MAIN", "NORTH");
+    };
+    private final ReferenceDataCache.Loader categories = () -> Arrays.asList("ST", "PT");
+
+    @Test
+    void testKnownValuesPassAndTablesAreCached() {
+        ReferenceDataCache cache = new ReferenceDataCache(60_000L);
+        JSONObject payload = new JSONObject().put("library_id", "MAIN").put("category_id", "ST");
+
+        cache.validate(payload, libraries, categories, false);
+        cache.validate(new JSONObject().put("library_id", "NORTH"), libraries, categories, false);
+
+        assertEquals(1, libraryLoads.get());
+    }
+
+    @Test
+    void testUnknownValueIsRejectedLocally() {
+        ReferenceDataCache cache = new ReferenceDataCache(60_000L);
+        JSONObject payload = new JSONObject().put("library_id", "MAIN").put("category_id", "XX");
+
+        InvalidAttributeValueException e = assertThrows(InvalidAttributeValueException.class,
+                () -> cache.validate(payload, libraries, categories, false));
+        assertTrue(e.getMessage().contains("category_id"));
+    }
+
+    @Test
+    void testCaseNormalization() {
+        ReferenceDataCache cache = new ReferenceDataCache(60_000L);
+        JSONObject payload = new JSONObject().put("library_id", "main").put("category_id", "pt");
+
+        assertThrows(InvalidAttributeValueException.class, () -> cache.validate(new JSONObject(payload.toString()), libraries, categories, false));
+        cache.validate(payload, libraries, categories, true);
+        assertEquals("MAIN", payload.getString("library_id"));
+        assertEquals("PT", payload.getString("category_id"));
+    }
+
+    @Test
+    void testLoaderFailureSkipsValidation() {
+        ReferenceDataCache cache = new ReferenceDataCache(60_000L);
+        ReferenceDataCache.Loader failing = () -> {
+            throw new IOException("Koha down");
+        };
+
+        assertDoesNotThrow(() -> cache.validate(new JSONObject().put("library_id", "ANY"), failing, failing, false));
+    }
+}
@@ -0,0 +1,137 @@
+package com.identicum.connectors.services;
+
+import org.identityconnectors.framework.common.exceptions.ConnectionFailedException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestCoalescerTest {
+
+    @Test
+    void testConcurrentIdenticalCallsShareOneExecution() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> coalescer.execute("GET /patrons/1", () -> {
+                    executions.incrementAndGet();
+                    release.await(5, TimeUnit.SECONDS);
+                    return "patron-1";
+                })));
+            }
+            // Esperar a que los cuatro hilos estén dentro (uno ejecutando, el resto esperando)
+            long deadline = System.currentTimeMillis() + 2000;
+            while (executions.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("patron-1", future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, executions.get());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    @Test
+    void testSequentialCallsAreNotCached() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        AtomicInteger executions = new AtomicInteger();
+
+        coalescer.execute("GET /patron_categories/ST", executions::incrementAndGet);
+        coalescer.execute("GET /patron_categories/ST", executions::incrementAndGet);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void testFailureIsPropagatedAndKeyReleased() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+
+        assertThrows(ConnectionFailedException.class, () -> coalescer.execute("GET /patrons/2", () -> {
+            throw new ConnectionFailedException("down");
+        }));
+        assertEquals(0, coalescer.inFlightCount());
+        assertEquals("ok", coalescer.execute("GET /patrons/2", () -> "ok"));
+    }
+
+    @Test
+    void testFollowerRunsTheRequestWhenTheLeaderIsCancelled() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        CountDownLatch leading = new CountDownLatch(1);
+        CountDownLatch cancelLeader = new CountDownLatch(1);
+        AtomicInteger followerExecutions = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> coalescer.execute("GET /patrons/3", () -> {
+                leading.countDown();
+                cancelLeader.await(5, TimeUnit.SECONDS);
+                Thread.currentThread().interrupt(); // Tarea del líder cancelada: el vigilante aborta su petición
+                throw new ConnectorIOException("Request aborted");
+            }));
+            leading.await();
+            Future<String> follower = executor.submit(() -> coalescer.execute("GET /patrons/3", () -> {
+                followerExecutions.incrementAndGet();
+                return "patron-3";
+            }));
+            Thread.sleep(100);
+            cancelLeader.countDown();
+
+            Exception e = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(ConnectorIOException.class, e.getCause());
+            assertEquals("patron-3", follower.get(5, TimeUnit.SECONDS), "El seguidor no hereda la cancelación del líder");
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, followerExecutions.get());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    @Test
+    void testFollowersGetTheirOwnCopyOfTheParsedResult() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        JSONObject shared = new JSONObject().put("patron_id", 4)
+                .put("extended_attributes", new JSONArray().put(new JSONObject().put("type", "DNI")));
+        CountDownLatch leading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> leader = executor.submit(() -> coalescer.execute("GET /patrons/4", () -> {
+                leading.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return (Object) shared;
+            }, AbstractKohaService::copyParsed));
+            leading.await();
+            Future<Object> follower = executor.submit(() -> coalescer.execute("GET /patrons/4", () -> (Object) shared, AbstractKohaService::copyParsed));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertSame(shared, leader.get(5, TimeUnit.SECONDS));
+            JSONObject copy = (JSONObject) follower.get(5, TimeUnit.SECONDS);
+            assertNotSame(shared, copy);
+            assertTrue(shared.similar(copy));
+            copy.getJSONArray("extended_attributes").getJSONObject(0).put("type", "ORCID");
+            assertEquals("DNI", shared.getJSONArray("extended_attributes").getJSONObject(0).getString("type"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.identicum.connectors.services;
+
+import com.identicum.connectors.KohaAuthenticator;
+import com.identicum.connectors.KohaConfiguration;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.identityconnectors.common.security.GuardedString;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del transporte java.net.http real (META-INF/versions/11) contra un servidor HTTP local.
+ */
+public class JdkHttpClientAdapterJdk11Test {
+
+    private HttpServer server;
+    private JdkHttpClientAdapter adapter;
+    private String baseUrl;
+    private final CountDownLatch releaseSlow = new CountDownLatch(1);
+    private final AtomicReference<String> lastAuthorization = new AtomicReference<>();
+    private final AtomicReference<String> lastBody = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/v1/patrons", exchange -> {
+            lastAuthorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+            lastBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] body = "[{\"patron_id\":1}]".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("X-Total-Count", "1");
+            exchange.sendResponseHeaders("POST".equals(exchange.getRequestMethod()) ? 201 : 200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/api/v1/slow", exchange -> {
+            try {
+                releaseSlow.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1";
+
+        KohaConfiguration configuration = new KohaConfiguration();
+        configuration.setServiceAddress("http://127.0.0.1:" + server.getAddress().getPort());
+        configuration.setAuthenticationMethodStrategy("BASIC");
+        configuration.setUsername("admin");
+        configuration.setPassword(new GuardedString("secret".toCharArray()));
+        adapter = new JdkHttpClientAdapter(new KohaAuthenticator(configuration), configuration, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseSlow.countDown();
+        adapter.close();
+        server.stop(0);
+    }
+
+    @Test
+    void testGetIsAdaptedToApacheResponse() throws Exception {
+        try (CloseableHttpResponse response = adapter.execute(new HttpGet(baseUrl + "/patrons?_page=1"))) {
+            assertEquals(200, response.getStatusLine().getStatusCode());
+            assertEquals("1", response.getFirstHeader("X-Total-Count").getValue());
+            assertEquals("[{\"patron_id\":1}]", EntityUtils.toString(response.getEntity()));
+        }
+        assertNotNull(lastAuthorization.get());
+        assertTrue(lastAuthorization.get().startsWith("Basic "));
+    }
+
+    @Test
+    void testPostSendsTheEntity() throws Exception {
+        HttpPost post = new HttpPost(baseUrl + "/patrons");
+        post.setEntity(new StringEntity("{\"userid\":\"jquispe\"}", ContentType.APPLICATION_JSON));
+
+        try (CloseableHttpResponse response = adapter.execute(post)) {
+            assertEquals(201, response.getStatusLine().getStatusCode());
+        }
+        assertEquals("{\"userid\":\"jquispe\"}", lastBody.get());
+    }
+
+    @Test
+    void testAbortCancelsAWaitingRequest() throws Exception {
+        HttpGet request = new HttpGet(baseUrl + "/slow");
+        Thread aborter = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            request.abort();
+        });
+        aborter.start();
+
+        long start = System.nanoTime();
+        assertThrows(InterruptedIOException.class, () -> adapter.execute(request));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000, "abort() no debe esperar al servidor");
+        aborter.join();
+    }
+
+    @Test
+    void testRequestTimeoutFollowsTheOperationDeadline() {
+        long start = System.nanoTime();
+        try (OperationDeadline.Scope ignored = OperationDeadline.start(300)) {
+            assertThrows(SocketTimeoutException.class, () -> adapter.execute(new HttpGet(baseUrl + "/slow")));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000, "El timeout no pasa del plazo de la operación");
+    }
+
+    @Test
+    void testRefusedConnectionIsTranslatedForRetries() throws Exception {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        assertThrows(HttpHostConnectException.class, () -> adapter.execute(new HttpGet("http://127.0.0.1:" + closedPort + "/api/v1/patrons")));
+    }
+}